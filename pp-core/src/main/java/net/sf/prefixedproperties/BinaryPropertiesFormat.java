@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import net.sf.prefixedproperties.config.DefaultPrefixConfig;
+import net.sf.prefixedproperties.config.DynamicPrefixConfig;
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * The binary format written by {@link PrefixedProperties#storeToBinary(OutputStream)}.<br>
+ * The format starts with a magic number, the version and the length of the
+ * body followed by the body itself and the CRC32 checksum of the body. The
+ * body consists of three sections, all counts, lengths and indexes within
+ * them are stored as variable length integers:
+ * <ul>
+ * <li>the string table holding every key, value and prefix once</li>
+ * <li>the prefix configs of the cascade, innermost level first, each with
+ * its prefixes, its default prefix and whether it is dynamic</li>
+ * <li>the entries of the backing store as indexes into the string table</li>
+ * </ul>
+ * All strings are stored as UTF-8.
+ */
+final class BinaryPropertiesFormat {
+
+	/**
+	 * One level of the stored cascade.
+	 */
+	static final class Level {
+
+		private final boolean dynamic;
+
+		private final String defaultPrefix;
+
+		private final List<String> prefixes;
+
+		private Level(final boolean dynamic, final String defaultPrefix, final List<String> prefixes) {
+			this.dynamic = dynamic;
+			this.defaultPrefix = defaultPrefix;
+			this.prefixes = prefixes;
+		}
+
+		/**
+		 * Creates a prefix config with the stored prefixes and default prefix.
+		 * 
+		 * @return the prefix config
+		 */
+		PrefixConfig createPrefixConfig() {
+			if (dynamic) {
+				final DynamicPrefixConfig config = new DynamicPrefixConfig();
+				for (final String prefix : prefixes) {
+					// a dynamic config learns a prefix by using it
+					config.setDefaultPrefix(prefix);
+				}
+				config.setDefaultPrefix(defaultPrefix);
+				return config;
+			}
+			final DefaultPrefixConfig config = new DefaultPrefixConfig(prefixes);
+			config.setDefaultPrefix(defaultPrefix);
+			return config;
+		}
+	}
+
+	/** The magic number "PPBF" each binary file starts with. */
+	static final int MAGIC = 0x50504246;
+
+	/** The current version of the format. */
+	static final int VERSION = 1;
+
+	private static final int READ_CHUNK = 64 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<Level> levels;
+
+	private final Map<Object, Object> entries;
+
+	private BinaryPropertiesFormat(final List<Level> levels, final Map<Object, Object> entries) {
+		this.levels = levels;
+		this.entries = entries;
+	}
+
+	/**
+	 * Creates the prefix configs of the stored cascade.
+	 * 
+	 * @return the prefix configs, innermost level first
+	 */
+	List<PrefixConfig> createPrefixConfigs() {
+		final List<PrefixConfig> configs = new ArrayList<PrefixConfig>(levels.size());
+		for (final Level level : levels) {
+			configs.add(level.createPrefixConfig());
+		}
+		return configs;
+	}
+
+	/**
+	 * Gets the stored entries of the backing store.
+	 * 
+	 * @return the entries
+	 */
+	Map<Object, Object> getEntries() {
+		return entries;
+	}
+
+	private static int index(final Map<String, Integer> strings, final String string) {
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.put(string, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Reads the binary format from the given InputStream. The stream will not
+	 * be closed.
+	 * 
+	 * @param is
+	 *            the InputStream
+	 * @return the read format
+	 * @throws IOException
+	 *             if the stream can't be read, is no binary properties file,
+	 *             has an unsupported version or a wrong checksum
+	 */
+	static BinaryPropertiesFormat read(final InputStream is) throws IOException {
+		final DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a binary properties file.");
+		}
+		final int version = in.readInt();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported binary properties version: " + version);
+		}
+		final int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Corrupted binary properties file.");
+		}
+		final byte[] body = readFully(in, length);
+		final CRC32 crc = new CRC32();
+		crc.update(body);
+		if (crc.getValue() != in.readLong()) {
+			throw new IOException("Corrupted binary properties file: checksum mismatch.");
+		}
+		try {
+			return readBody(ByteBuffer.wrap(body));
+		} catch (final RuntimeException e) {
+			// the checksum matched, but the body doesn't fit the format
+			throw new IOException("Corrupted binary properties file.", e);
+		}
+	}
+
+	/*
+	 * Reads the given number of bytes. The length is taken from the file
+	 * before its checksum is known, so the buffer only grows with the bytes
+	 * actually read instead of being allocated for the whole length at once.
+	 */
+	private static byte[] readFully(final DataInputStream in, final int length) throws IOException {
+		byte[] bytes = new byte[Math.min(length, READ_CHUNK)];
+		int read = 0;
+		while (read < length) {
+			if (read == bytes.length) {
+				final byte[] grown = new byte[(int) Math.min(length, 2L * bytes.length)];
+				System.arraycopy(bytes, 0, grown, 0, read);
+				bytes = grown;
+			}
+			final int count = in.read(bytes, read, bytes.length - read);
+			if (count < 0) {
+				throw new IOException("Corrupted binary properties file: unexpected end.");
+			}
+			read += count;
+		}
+		return bytes;
+	}
+
+	static int readVarInt(final ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private static BinaryPropertiesFormat readBody(final ByteBuffer body) {
+		final byte[] bytes = body.array();
+		final String[] strings = new String[readVarInt(body)];
+		for (int i = 0; i < strings.length; i++) {
+			final int length = readVarInt(body);
+			strings[i] = new String(bytes, body.position(), length, UTF_8);
+			body.position(body.position() + length);
+		}
+		final int levelCount = readVarInt(body);
+		final List<Level> levels = new ArrayList<Level>(levelCount);
+		for (int i = 0; i < levelCount; i++) {
+			final boolean dynamic = body.get() != 0;
+			final int defaultPrefix = readVarInt(body) - 1;
+			final int prefixCount = readVarInt(body);
+			final List<String> prefixes = new ArrayList<String>(prefixCount);
+			for (int j = 0; j < prefixCount; j++) {
+				prefixes.add(strings[readVarInt(body)]);
+			}
+			levels.add(new Level(dynamic, defaultPrefix < 0 ? null : strings[defaultPrefix], prefixes));
+		}
+		final int entryCount = readVarInt(body);
+		final Map<Object, Object> entries = new HashMap<Object, Object>(entryCount * 4 / 3 + 1);
+		for (int i = 0; i < entryCount; i++) {
+			final String key = strings[readVarInt(body)];
+			entries.put(key, strings[readVarInt(body)]);
+		}
+		return new BinaryPropertiesFormat(levels, entries);
+	}
+
+	static void writeVarInt(final DataOutputStream out, final int value) throws IOException {
+		int remaining = value;
+		while ((remaining & ~0x7F) != 0) {
+			out.writeByte(remaining & 0x7F | 0x80);
+			remaining >>>= 7;
+		}
+		out.writeByte(remaining);
+	}
+
+	/**
+	 * Writes the prefix configs and the entries in the binary format to the
+	 * given OutputStream. The stream will not be closed.
+	 * 
+	 * @param os
+	 *            the OutputStream
+	 * @param configs
+	 *            the prefix configs of the cascade, innermost level first
+	 * @param entries
+	 *            the entries of the backing store, entries with a key or
+	 *            value which is no String are skipped
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	static void write(final OutputStream os, final Collection<PrefixConfig> configs,
+			final Map<Object, Object> entries) throws IOException {
+		final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		final int[][] levelIndexes = new int[configs.size()][];
+		int level = 0;
+		for (final PrefixConfig config : configs) {
+			final String defaultPrefix = PrefixedProperties.getDefaultPrefix(config);
+			final Collection<String> prefixes = config.getPrefixes();
+			final int[] indexes = new int[prefixes.size() + 1];
+			indexes[0] = defaultPrefix == null ? -1 : index(strings, defaultPrefix);
+			int i = 1;
+			for (final String prefix : prefixes) {
+				indexes[i++] = index(strings, prefix);
+			}
+			levelIndexes[level++] = indexes;
+		}
+		final int[] entryIndexes = new int[entries.size() * 2];
+		int i = 0;
+		for (final Entry<Object, Object> entry : entries.entrySet()) {
+			// like storeToJSON only String entries are stored
+			if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+				entryIndexes[i++] = index(strings, (String) entry.getKey());
+				entryIndexes[i++] = index(strings, (String) entry.getValue());
+			}
+		}
+
+		final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+		final DataOutputStream body = new DataOutputStream(bodyBytes);
+		writeVarInt(body, strings.size());
+		for (final String string : strings.keySet()) {
+			final byte[] bytes = string.getBytes(UTF_8);
+			writeVarInt(body, bytes.length);
+			body.write(bytes);
+		}
+		writeVarInt(body, levelIndexes.length);
+		level = 0;
+		for (final PrefixConfig config : configs) {
+			final int[] indexes = levelIndexes[level++];
+			body.writeBoolean(config.isDynamic());
+			writeVarInt(body, indexes[0] + 1);
+			writeVarInt(body, indexes.length - 1);
+			for (int j = 1; j < indexes.length; j++) {
+				writeVarInt(body, indexes[j]);
+			}
+		}
+		writeVarInt(body, i / 2);
+		for (int j = 0; j < i; j++) {
+			writeVarInt(body, entryIndexes[j]);
+		}
+		body.flush();
+
+		final CRC32 crc = new CRC32();
+		final byte[] content = bodyBytes.toByteArray();
+		crc.update(content);
+		final DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(content.length);
+		out.write(content);
+		out.writeLong(crc.getValue());
+		out.flush();
+	}
+}
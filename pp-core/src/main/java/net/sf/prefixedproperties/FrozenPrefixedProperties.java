@@ -0,0 +1,867 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * A read-only snapshot of a {@link PrefixedProperties} created by
+ * {@link PrefixedProperties#snapshot()}.<br>
+ * All prefixes are resolved once while the snapshot is taken, using the
+ * default and local prefixes of the thread creating it. Every key which could
+ * be answered by the source is stored with its resolved value, so a lookup is a
+ * single hash probe without any lock.<br>
+ * All mutating methods throw an {@link UnsupportedOperationException}.
+ */
+final class FrozenPrefixedProperties extends PrefixedProperties {
+
+	/*
+	 * Enumeration over the immutable collections of the snapshot.
+	 */
+	private static final class FrozenEnumeration<E> implements PrefixedPropertiesEnumeration<E> {
+
+		private final Iterator<E> it;
+
+		private FrozenEnumeration(final Iterator<E> iterator) {
+			it = iterator;
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			return it.hasNext();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return this;
+		}
+
+		@Override
+		public E next() {
+			return it.next();
+		}
+
+		@Override
+		public E nextElement() {
+			return it.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String READ_ONLY_MESSAGE = "This PrefixedProperties is a read-only snapshot.";
+
+	/* every key the source could answer mapped to its resolved value. */
+	private final Map<Object, Object> resolved;
+
+	/* every key the source reported by containsKey. */
+	private final Set<Object> containedKeys;
+
+	/* the visible (unprefixed) entries of the source. */
+	private final Map<Object, Object> entries;
+
+	private final String effectivePrefix;
+
+	/* a detached copy of the source, used to store and list the snapshot. */
+	private final PrefixedProperties source;
+
+	/**
+	 * Instantiates a new snapshot of the given properties. The caller has to
+	 * hold the read lock of the given properties.
+	 *
+	 * @param properties
+	 *            the properties to take the snapshot of
+	 */
+	FrozenPrefixedProperties(final PrefixedProperties properties) {
+		final boolean useLocalPrefixes = properties.useLocalPrefixes();
+		final Map<Object, Object> resolvedMap = new HashMap<Object, Object>();
+		final Set<Object> containedSet = new HashSet<Object>();
+		for (final Object key : properties.getCompleteProperties().keySet()) {
+			if (String.class == key.getClass()) {
+				// a key can be asked for with any number of its leading
+				// prefixes left out, so each of these suffixes is resolved.
+				final String stringKey = (String) key;
+				int index = 0;
+				do {
+					resolve(properties, index == 0 ? stringKey : stringKey.substring(index), useLocalPrefixes,
+							resolvedMap, containedSet);
+					index = stringKey.indexOf(PrefixConfig.PREFIXDELIMITER, index) + 1;
+				} while (index > 0);
+			} else {
+				resolve(properties, key, useLocalPrefixes, resolvedMap, containedSet);
+			}
+		}
+		final Map<Object, Object> entryMap = new HashMap<Object, Object>();
+		for (final Map.Entry<Object, Object> entry : properties.entrySet()) {
+			entryMap.put(entry.getKey(), entry.getValue());
+		}
+		resolved = resolvedMap;
+		containedKeys = containedSet;
+		entries = Collections.unmodifiableMap(entryMap);
+		effectivePrefix = properties.getEffectivePrefix();
+		source = properties.clone();
+	}
+
+	private static void resolve(final PrefixedProperties properties, final Object key,
+			final boolean useLocalPrefixes, final Map<Object, Object> resolvedMap, final Set<Object> containedSet) {
+		if (!resolvedMap.containsKey(key)) {
+			resolvedMap.put(key, properties.get(key, useLocalPrefixes));
+			if (properties.containsKey(key)) {
+				containedSet.add(key);
+			}
+		}
+	}
+
+	private static void checkKey(final Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("A null key is not allowed.");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#clear()
+	 */
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#clearDefaultPrefixes()
+	 */
+	@Override
+	public void clearDefaultPrefixes() {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#clearLocalPrefixes()
+	 */
+	@Override
+	public void clearLocalPrefixes() {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * The snapshot is immutable so it can be shared instead of being copied.
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#clone()
+	 */
+	@Override
+	public PrefixedProperties clone() {
+		return this;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(final Object value) {
+		return value != null && entries.containsValue(value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) {
+		checkKey(key);
+		return containedKeys.contains(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#containsValue(java.lang.Object)
+	 */
+	@Override
+	public boolean containsValue(final Object value) {
+		return contains(value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#createPrefixSelector(java.lang.String)
+	 */
+	@Override
+	public PrefixSelector createPrefixSelector(final String configuredPrefix) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#elements()
+	 */
+	@Override
+	public PrefixedPropertiesEnumeration<Object> elements() {
+		return new FrozenEnumeration<Object>(entries.values().iterator());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#entrySet()
+	 */
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		final Set<Entry<Object, Object>> entrySet = new HashSet<Entry<Object, Object>>();
+		for (final Map.Entry<Object, Object> entry : entries.entrySet()) {
+			entrySet.add(new SimpleImmutableEntry<Object, Object>(entry));
+		}
+		return Collections.unmodifiableSet(entrySet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		final FrozenPrefixedProperties other = (FrozenPrefixedProperties) obj;
+		return resolved.equals(other.resolved) && entries.equals(other.entries);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#get(java.lang.Object)
+	 */
+	@Override
+	public Object get(final Object key) {
+		checkKey(key);
+		return resolved.get(key);
+	}
+
+	/*
+	 * The prefixes have been resolved during the creation of the snapshot.
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#get(java.lang.Object,
+	 * boolean)
+	 */
+	@Override
+	protected Object get(final Object key, final boolean useLocalPrefixes) {
+		return get(key);
+	}
+
+	/*
+	 * A snapshot is consistent anyway, so the keys are simply looked up one
+	 * after another.
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#getAll(java.lang.String[],
+	 * java.lang.String[])
+	 */
+	@Override
+	public String[] getAll(final String[] keys, final String[] values) {
+		final String[] result = values != null && values.length >= keys.length ? values : new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			result[i] = getProperty(keys[i]);
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#getCompleteProperties()
+	 */
+	@Override
+	protected Properties getCompleteProperties() {
+		return source.getCompleteProperties();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#getEffectivePrefix()
+	 */
+	@Override
+	public String getEffectivePrefix() {
+		return effectivePrefix;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#getPrefixConfig()
+	 */
+	@Override
+	public PrefixConfig getPrefixConfig() {
+		return source.getPrefixConfig();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#getProperty(java.lang.String)
+	 */
+	@Override
+	public String getProperty(final String key) {
+		final Object object = get(key);
+		if (object == null || object instanceof String) {
+			return (String) object;
+		}
+		throw new IllegalStateException("The value of " + key + " is of type: " + object.getClass().getName());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * resolved.hashCode() + entries.hashCode();
+	}
+
+	/*
+	 * A snapshot does not depend on thread bound prefixes.
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#hasLocalPrefixConfigurations()
+	 */
+	@Override
+	public boolean hasLocalPrefixConfigurations() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#keys()
+	 */
+	@Override
+	public PrefixedPropertiesEnumeration<Object> keys() {
+		return new FrozenEnumeration<Object>(entries.keySet().iterator());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#keySet()
+	 */
+	@Override
+	public Set<Object> keySet() {
+		return entries.keySet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#list(java.io.PrintStream)
+	 */
+	@Override
+	public void list(final PrintStream out) {
+		source.list(out);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#list(java.io.PrintWriter)
+	 */
+	@Override
+	public void list(final PrintWriter out) {
+		source.list(out);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#load(java.io.InputStream)
+	 */
+	@Override
+	public void load(final InputStream inStream) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#load(java.io.Reader)
+	 */
+	@Override
+	public void load(final Reader reader) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#loadFromBinary(java.io.InputStream)
+	 */
+	@Override
+	public void loadFromBinary(final InputStream is) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#loadFromFile(java.io.File)
+	 */
+	@Override
+	public void loadFromFile(final File file) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#loadFromFile(java.io.File,
+	 * java.lang.String)
+	 */
+	@Override
+	public void loadFromFile(final File file, final String encoding) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#loadFromJSON(java.io.InputStream)
+	 */
+	@Override
+	public void loadFromJSON(final InputStream is) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#loadFromJSON(java.io.Reader)
+	 */
+	@Override
+	public void loadFromJSON(final Reader reader) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#loadFromXML(java.io.InputStream)
+	 */
+	@Override
+	public void loadFromXML(final InputStream in) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#loadFromYAML(java.io.InputStream)
+	 */
+	@Override
+	public void loadFromYAML(final InputStream is) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#loadFromYAML(java.io.Reader)
+	 */
+	@Override
+	public void loadFromYAML(final Reader reader) throws IOException {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#propertyNames()
+	 */
+	@Override
+	public PrefixedPropertiesEnumeration<?> propertyNames() {
+		return keys();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#put(java.lang.Object,
+	 * java.lang.Object)
+	 */
+	@Override
+	public Object put(final Object key, final Object value) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#putAll(java.util.Map)
+	 */
+	@Override
+	public void putAll(final Map<? extends Object, ? extends Object> t) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#reloadFrom(net.sf.prefixedproperties.PrefixedProperties)
+	 */
+	@Override
+	public PropertiesDelta reloadFrom(final PrefixedProperties loaded) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#remove(java.lang.Object)
+	 */
+	@Override
+	public Object remove(final Object key) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#removeAll(java.lang.Object)
+	 */
+	@Override
+	public Map<Object, Object> removeAll(final Object key) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#replaceWith(net.sf.prefixedproperties.PrefixedProperties)
+	 */
+	@Override
+	public void replaceWith(final PrefixedProperties loaded) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#save(java.io.OutputStream,
+	 * java.lang.String)
+	 */
+	@SuppressWarnings("deprecation")
+	@Override
+	public void save(final OutputStream out, final String comments) {
+		source.save(out, comments);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#setDefaultPrefix(java.lang.String)
+	 */
+	@Override
+	public void setDefaultPrefix(final String prefix) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#setLocalPrefix(java.lang.String)
+	 */
+	@Override
+	public void setLocalPrefix(final String configuredPrefix) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#
+	 * setMixDefaultAndLocalPrefixSettings(boolean)
+	 */
+	@Override
+	public void setMixDefaultAndLocalPrefixSettings(final boolean value) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#setPrefixConfig(net.sf.
+	 * prefixedproperties.config.PrefixConfig)
+	 */
+	@Override
+	public void setPrefixConfig(final PrefixConfig config) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#setProperty(java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public Object setProperty(final String key, final String value) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#size()
+	 */
+	@Override
+	public int size() {
+		return entries.size();
+	}
+
+	/*
+	 * The snapshot itself is already read-only.
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#snapshot()
+	 */
+	@Override
+	public PrefixedProperties snapshot() {
+		return this;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#store(java.io.OutputStream,
+	 * java.lang.String)
+	 */
+	@Override
+	public void store(final OutputStream out, final String comments) throws IOException {
+		source.store(out, comments);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#store(java.io.OutputStream,
+	 * java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void store(final OutputStream out, final String comments, final String encoding) throws IOException {
+		source.store(out, comments, encoding);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#store(java.io.Writer,
+	 * java.lang.String)
+	 */
+	@Override
+	public void store(final Writer writer, final String comments) throws IOException {
+		source.store(writer, comments);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#storeToBinary(java.io.OutputStream)
+	 */
+	@Override
+	public void storeToBinary(final OutputStream os) throws IOException {
+		source.storeToBinary(os);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#storeToJSON(java.io.OutputStream)
+	 */
+	@Override
+	public void storeToJSON(final OutputStream os) throws IOException {
+		source.storeToJSON(os);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#storeToJSON(java.io.OutputStream,
+	 * java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void storeToJSON(final OutputStream os, final String header, final String encoding) throws IOException {
+		source.storeToJSON(os, header, encoding);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#storeToXML(java.io.OutputStream,
+	 * java.lang.String)
+	 */
+	@Override
+	public void storeToXML(final OutputStream os, final String comment) throws IOException {
+		source.storeToXML(os, comment);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#storeToXML(java.io.OutputStream,
+	 * java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void storeToXML(final OutputStream os, final String comment, final String encoding) throws IOException {
+		source.storeToXML(os, comment, encoding);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#storeToYAML(java.io.OutputStream)
+	 */
+	@Override
+	public void storeToYAML(final OutputStream os) throws IOException {
+		source.storeToYAML(os);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.prefixedproperties.PrefixedProperties#storeToYAML(java.io.OutputStream,
+	 * java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void storeToYAML(final OutputStream os, final String header, final String encoding) throws IOException {
+		source.storeToYAML(os, header, encoding);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#stringPropertyNames()
+	 */
+	@Override
+	public Set<String> stringPropertyNames() {
+		final Set<String> result = new HashSet<String>();
+		for (final Object key : entries.keySet()) {
+			if (String.class == key.getClass()) {
+				result.add((String) key);
+			}
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#toString()
+	 */
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.prefixedproperties.PrefixedProperties#values()
+	 */
+	@Override
+	public Collection<Object> values() {
+		return entries.values();
+	}
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * The local prefixes of all levels of a cascade as they were set on the thread
+ * which created this propagation. Tasks wrapped by it set these prefixes on
+ * the thread running them and restore the prefixes that thread had before
+ * afterwards.
+ */
+final class LocalPrefixPropagation {
+
+	/**
+	 * Captures the local prefixes of the current thread for every task passed
+	 * to the wrapped executor.
+	 */
+	static class PropagatingExecutor implements Executor {
+
+		protected final PrefixedProperties properties;
+
+		private final Executor executor;
+
+		PropagatingExecutor(final PrefixedProperties properties, final Executor executor) {
+			this.properties = properties;
+			this.executor = executor;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+		 */
+		@Override
+		public void execute(final Runnable command) {
+			executor.execute(properties.wrapTask(command));
+		}
+	}
+
+	/**
+	 * Captures the local prefixes of the current thread for every task passed
+	 * to the wrapped executor service.
+	 */
+	static final class PropagatingExecutorService extends PropagatingExecutor implements ExecutorService {
+
+		private final ExecutorService executorService;
+
+		PropagatingExecutorService(final PrefixedProperties properties, final ExecutorService executorService) {
+			super(properties, executorService);
+			this.executorService = executorService;
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+			return executorService.awaitTermination(timeout, unit);
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks)
+				throws InterruptedException {
+			return executorService.invokeAll(wrapAll(tasks));
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout,
+				final TimeUnit unit) throws InterruptedException {
+			return executorService.invokeAll(wrapAll(tasks), timeout, unit);
+		}
+
+		@Override
+		public <T> T invokeAny(final Collection<? extends Callable<T>> tasks)
+				throws InterruptedException, ExecutionException {
+			return executorService.invokeAny(wrapAll(tasks));
+		}
+
+		@Override
+		public <T> T invokeAny(final Collection<? extends Callable<T>> tasks, final long timeout,
+				final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			return executorService.invokeAny(wrapAll(tasks), timeout, unit);
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executorService.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executorService.isTerminated();
+		}
+
+		@Override
+		public void shutdown() {
+			executorService.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return executorService.shutdownNow();
+		}
+
+		@Override
+		public <T> Future<T> submit(final Callable<T> task) {
+			return executorService.submit(properties.wrapTask(task));
+		}
+
+		@Override
+		public Future<?> submit(final Runnable task) {
+			return executorService.submit(properties.wrapTask(task));
+		}
+
+		@Override
+		public <T> Future<T> submit(final Runnable task, final T result) {
+			return executorService.submit(properties.wrapTask(task), result);
+		}
+
+		private <T> List<Callable<T>> wrapAll(final Collection<? extends Callable<T>> tasks) {
+			// all tasks share the prefixes captured once
+			final LocalPrefixPropagation propagation = properties.captureLocalPrefixes();
+			final List<Callable<T>> result = new ArrayList<Callable<T>>(tasks.size());
+			for (final Callable<T> task : tasks) {
+				result.add(propagation.wrap(task));
+			}
+			return result;
+		}
+	}
+
+	private final PrefixConfig[] configs;
+
+	private final String[] localPrefixes;
+
+	/**
+	 * Instantiates a new local prefix propagation.
+	 * 
+	 * @param configs
+	 *            the prefix configs of all levels
+	 * @param localPrefixes
+	 *            the local prefixes of the current thread for each config
+	 */
+	LocalPrefixPropagation(final PrefixConfig[] configs, final String[] localPrefixes) {
+		this.configs = configs;
+		this.localPrefixes = localPrefixes;
+	}
+
+	/**
+	 * Sets the captured local prefixes on the current thread. If a prefix
+	 * can't be set, the prefixes set so far are restored, so the thread is
+	 * left as it was.
+	 * 
+	 * @return the local prefixes the current thread had before
+	 * @throws IllegalArgumentException
+	 *             if a captured prefix has been removed from its config since
+	 */
+	String[] apply() {
+		final String[] previous = new String[configs.length];
+		int applied = 0;
+		try {
+			for (; applied < configs.length; applied++) {
+				previous[applied] = configs[applied].getLocalPrefix();
+				if (previous[applied] != localPrefixes[applied]) {
+					configs[applied].setPrefix(localPrefixes[applied]);
+				}
+			}
+		} catch (final RuntimeException e) {
+			restore(previous, applied);
+			throw e;
+		}
+		return previous;
+	}
+
+	/**
+	 * Restores the local prefixes of the current thread.
+	 * 
+	 * @param previous
+	 *            the local prefixes returned by {@link #apply()}
+	 */
+	void restore(final String[] previous) {
+		restore(previous, configs.length);
+	}
+
+	private void restore(final String[] previous, final int levels) {
+		for (int i = 0; i < levels; i++) {
+			if (previous[i] != localPrefixes[i]) {
+				configs[i].setPrefix(previous[i]);
+			}
+		}
+	}
+
+	/**
+	 * Wraps the given task to run with the captured local prefixes.
+	 * 
+	 * @param <V>
+	 *            the result type
+	 * @param task
+	 *            the task
+	 * @return the wrapped task
+	 */
+	<V> Callable<V> wrap(final Callable<V> task) {
+		return new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				final String[] previous = apply();
+				try {
+					return task.call();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Wraps the given task to run with the captured local prefixes.
+	 * 
+	 * @param task
+	 *            the task
+	 * @return the wrapped task
+	 */
+	Runnable wrap(final Runnable task) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				final String[] previous = apply();
+				try {
+					task.run();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+}
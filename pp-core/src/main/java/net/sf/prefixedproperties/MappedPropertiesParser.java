@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Parser of the properties file format reading directly from a (memory mapped)
+ * {@link ByteBuffer}. It follows the rules of {@link java.util.Properties#load(java.io.Reader)}
+ * but decodes ISO-8859-1 or UTF-8 from the bytes itself and converts the
+ * escapes in place within one line buffer, so no reader or temporary buffer
+ * per entry is needed. Every parsed entry is put straight into the target
+ * map.<br>
+ * Malformed UTF-8 sequences are replaced by U+FFFD.<br>
+ * The parser is not thread safe.
+ */
+final class MappedPropertiesParser {
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final char REPLACEMENT = '\uFFFD';
+
+	private final ByteBuffer buffer;
+
+	private final boolean utf8;
+
+	private final int limit;
+
+	private int position;
+
+	/* the low surrogate of a decoded supplementary character */
+	private char pendingLowSurrogate;
+
+	private char[] line = new char[256];
+
+	private MappedPropertiesParser(final ByteBuffer buffer, final boolean utf8) {
+		this.buffer = buffer;
+		this.utf8 = utf8;
+		position = buffer.position();
+		limit = buffer.limit();
+	}
+
+	/**
+	 * Checks if the given charset can be decoded by the parser.
+	 * 
+	 * @param charset
+	 *            the charset
+	 * @return true if the charset is ISO-8859-1 or UTF-8
+	 */
+	static boolean isSupported(final Charset charset) {
+		return ISO_8859_1.equals(charset) || UTF_8.equals(charset);
+	}
+
+	/**
+	 * Parses the remaining bytes of the given buffer and puts the entries into
+	 * the target.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @param charset
+	 *            the charset of the bytes, see {@link #isSupported(Charset)}
+	 * @param target
+	 *            the map the entries are put into
+	 * @throws IllegalArgumentException
+	 *             if the buffer contains a malformed \\uxxxx encoding
+	 */
+	static void parse(final ByteBuffer buffer, final Charset charset, final Map<Object, Object> target) {
+		if (!isSupported(charset)) {
+			throw new IllegalArgumentException("Unsupported charset: " + charset);
+		}
+		new MappedPropertiesParser(buffer, UTF_8.equals(charset)).parse(target);
+	}
+
+	/*
+	 * Converts the escapes of the given range of the line in place.
+	 */
+	private String convert(final int offset, final int length) {
+		final char[] chars = line;
+		final int end = offset + length;
+		int in = offset;
+		int out = offset;
+		while (in < end) {
+			char c = chars[in++];
+			if (c == '\\' && in < end) {
+				c = chars[in++];
+				if (c == 'u') {
+					if (in > end - 4) {
+						throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+					}
+					int value = 0;
+					for (int i = 0; i < 4; i++) {
+						final int digit = Character.digit(chars[in++], 16);
+						if (digit < 0) {
+							throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+						}
+						value = (value << 4) + digit;
+					}
+					c = (char) value;
+				} else if (c == 't') {
+					c = '\t';
+				} else if (c == 'r') {
+					c = '\r';
+				} else if (c == 'n') {
+					c = '\n';
+				} else if (c == 'f') {
+					c = '\f';
+				}
+			}
+			chars[out++] = c;
+		}
+		return new String(chars, offset, out - offset);
+	}
+
+	/*
+	 * Decodes the UTF-8 sequence starting with the given lead byte. Like the
+	 * decoder of the JDK a malformed sequence is replaced by one U+FFFD, which
+	 * consumes the bytes up to the first invalid one and a truncated sequence
+	 * at the end of the buffer.
+	 */
+	private int decode(final int lead) {
+		final int remaining = limit - position;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			if (remaining < 1 || !isContinuation(buffer.get(position))) {
+				return REPLACEMENT;
+			}
+			return (lead & 0x1F) << 6 | buffer.get(position++) & 0x3F;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			if (remaining >= 1) {
+				final int second = buffer.get(position) & 0xFF;
+				if (lead == 0xE0 && (second & 0xE0) == 0x80 || !isContinuation(second)) {
+					return REPLACEMENT;
+				}
+			}
+			if (remaining < 2) {
+				position = limit;
+				return REPLACEMENT;
+			}
+			if (!isContinuation(buffer.get(position + 1))) {
+				position++;
+				return REPLACEMENT;
+			}
+			final int codePoint = (lead & 0x0F) << 12 | (buffer.get(position) & 0x3F) << 6
+					| buffer.get(position + 1) & 0x3F;
+			position += 2;
+			return codePoint >= 0xD800 && codePoint <= 0xDFFF ? REPLACEMENT : codePoint;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			if (remaining >= 1) {
+				final int second = buffer.get(position) & 0xFF;
+				if (lead == 0xF0 && (second < 0x90 || second > 0xBF) || lead == 0xF4 && (second & 0xF0) != 0x80
+						|| !isContinuation(second)) {
+					return REPLACEMENT;
+				}
+			}
+			if (remaining >= 2 && !isContinuation(buffer.get(position + 1))) {
+				position++;
+				return REPLACEMENT;
+			}
+			if (remaining < 3) {
+				position = limit;
+				return REPLACEMENT;
+			}
+			if (!isContinuation(buffer.get(position + 2))) {
+				position += 2;
+				return REPLACEMENT;
+			}
+			final int offset = ((lead & 0x07) << 18 | (buffer.get(position) & 0x3F) << 12
+					| (buffer.get(position + 1) & 0x3F) << 6 | buffer.get(position + 2) & 0x3F) - 0x10000;
+			position += 3;
+			pendingLowSurrogate = (char) ((offset & 0x3FF) + 0xDC00);
+			return (offset >>> 10) + 0xD800;
+		}
+		return REPLACEMENT;
+	}
+
+	private static boolean isContinuation(final int b) {
+		return (b & 0xC0) == 0x80;
+	}
+
+	private void parse(final Map<Object, Object> target) {
+		int length;
+		while ((length = readLine()) >= 0) {
+			final char[] chars = line;
+			int keyLength = 0;
+			int valueStart = length;
+			boolean hasSeparator = false;
+			boolean precedingBackslash = false;
+			while (keyLength < length) {
+				final char c = chars[keyLength];
+				if ((c == '=' || c == ':') && !precedingBackslash) {
+					valueStart = keyLength + 1;
+					hasSeparator = true;
+					break;
+				} else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+					valueStart = keyLength + 1;
+					break;
+				}
+				precedingBackslash = c == '\\' ? !precedingBackslash : false;
+				keyLength++;
+			}
+			while (valueStart < length) {
+				final char c = chars[valueStart];
+				if (c != ' ' && c != '\t' && c != '\f') {
+					if (!hasSeparator && (c == '=' || c == ':')) {
+						hasSeparator = true;
+					} else {
+						break;
+					}
+				}
+				valueStart++;
+			}
+			final String key = convert(0, keyLength);
+			target.put(key, convert(valueStart, length - valueStart));
+		}
+	}
+
+	private int read() {
+		if (pendingLowSurrogate != 0) {
+			final char c = pendingLowSurrogate;
+			pendingLowSurrogate = 0;
+			return c;
+		}
+		if (position >= limit) {
+			return -1;
+		}
+		final int b = buffer.get(position++);
+		if (b >= 0) {
+			return b;
+		}
+		return utf8 ? decode(b & 0xFF) : b & 0xFF;
+	}
+
+	/*
+	 * Reads the next logical line into the line buffer. Comment and blank
+	 * lines are skipped, continued lines are joined without their leading
+	 * whitespace.
+	 */
+	private int readLine() {
+		int length = 0;
+		boolean skipWhiteSpace = true;
+		boolean appendedLineBegin = false;
+		boolean precedingBackslash = false;
+		while (true) {
+			int c = read();
+			if (c < 0) {
+				if (length == 0) {
+					return -1;
+				}
+				return precedingBackslash ? length - 1 : length;
+			}
+			if (skipWhiteSpace) {
+				if (c == ' ' || c == '\t' || c == '\f') {
+					continue;
+				}
+				if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+					continue;
+				}
+				skipWhiteSpace = false;
+				appendedLineBegin = false;
+			}
+			if (length == 0 && (c == '#' || c == '!')) {
+				// skips the comment up to the end of the line
+				do {
+					c = read();
+					if (c < 0) {
+						return -1;
+					}
+				} while (c != '\r' && c != '\n');
+				skipWhiteSpace = true;
+				continue;
+			}
+			if (c != '\n' && c != '\r') {
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = (char) c;
+				precedingBackslash = c == '\\' ? !precedingBackslash : false;
+			} else if (length == 0) {
+				skipWhiteSpace = true;
+			} else if (position >= limit) {
+				return precedingBackslash ? length - 1 : length;
+			} else if (precedingBackslash) {
+				// the backslash at the end of the line is not part of it
+				length--;
+				skipWhiteSpace = true;
+				appendedLineBegin = true;
+				precedingBackslash = false;
+				if (c == '\r' && position < limit && buffer.get(position) == '\n') {
+					position++;
+				}
+			} else {
+				return length;
+			}
+		}
+	}
+}
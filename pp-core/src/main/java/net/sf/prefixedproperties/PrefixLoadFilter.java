@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * Decides while loading which keys can never be selected by the active
+ * prefixes of a cascade.<br>
+ * A key is walked part by part. Each part which is an active prefix of a
+ * level moves on to the following levels. A part which is only a known
+ * prefix of a level, but not its active one, rejects the key. The first
+ * part which is no prefix at all ends the walk, everything below it is
+ * accepted. The last part is the name of the key and never a prefix. The
+ * walk state is the index of the next level to check, so it can be kept per
+ * depth while traversing a tree of keys.
+ */
+final class PrefixLoadFilter {
+
+	/** The state of a rejected key. */
+	static final int REJECTED = -1;
+
+	/**
+	 * Creates the filter for the active prefixes of the given prefix configs
+	 * of the current thread. The default prefix and the local prefix of each
+	 * level are active.
+	 * 
+	 * @param configs
+	 *            the prefix configs of the cascade, innermost level first
+	 * @return the filter
+	 */
+	static PrefixLoadFilter create(final Collection<PrefixConfig> configs) {
+		final List<Set<String>> active = new ArrayList<Set<String>>(configs.size());
+		final List<Set<String>> known = new ArrayList<Set<String>>(configs.size());
+		for (final PrefixConfig config : configs) {
+			final Set<String> levelActive = new HashSet<String>();
+			final String defaultPrefix = PrefixedProperties.getDefaultPrefix(config);
+			if (defaultPrefix != null) {
+				levelActive.add(defaultPrefix);
+			}
+			if (config.getPrefix() != null) {
+				levelActive.add(config.getPrefix());
+			}
+			// a level without an active prefix can't tell what to skip
+			if (!levelActive.isEmpty()) {
+				active.add(levelActive);
+				known.add(new HashSet<String>(config.getPrefixes()));
+			}
+		}
+		return new PrefixLoadFilter(active, known);
+	}
+
+	private final List<Set<String>> active;
+
+	private final List<Set<String>> known;
+
+	private PrefixLoadFilter(final List<Set<String>> active, final List<Set<String>> known) {
+		this.active = active;
+		this.known = known;
+	}
+
+	/**
+	 * Checks if the given key can be selected by the active prefixes.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return true, if the key can be selected
+	 */
+	boolean accepts(final Object key) {
+		return !(key instanceof String) || next(0, (String) key, true) != REJECTED;
+	}
+
+	/**
+	 * Gets the state after the given part of a key.
+	 * 
+	 * @param state
+	 *            the state before the part, 0 at the beginning of a key
+	 * @param part
+	 *            the next part of the key, it may consist of several
+	 *            delimited parts itself
+	 * @param last
+	 *            true, if the part ends the key. The last delimited part is
+	 *            the name of the key and never a prefix.
+	 * @return the state after the part or {@link #REJECTED}
+	 */
+	int next(final int state, final String part, final boolean last) {
+		int level = state;
+		int start = 0;
+		while (level >= 0 && level < active.size()) {
+			final int end = part.indexOf(PrefixConfig.PREFIXDELIMITER, start);
+			if (end < 0) {
+				if (!last) {
+					level = nextLevel(level, part.substring(start));
+				}
+				break;
+			}
+			level = nextLevel(level, part.substring(start, end));
+			start = end + 1;
+		}
+		return level;
+	}
+
+	private int nextLevel(final int level, final String prefix) {
+		for (int i = level; i < active.size(); i++) {
+			if (active.get(i).contains(prefix)) {
+				return i + 1;
+			}
+		}
+		for (int i = level; i < known.size(); i++) {
+			if (known.get(i).contains(prefix)) {
+				return REJECTED;
+			}
+		}
+		// no prefix, nothing below can be rejected
+		return active.size();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * A prefix string compiled against the cascade of a {@link PrefixedProperties}
+ * by {@link PrefixedProperties#createPrefixSelector(String)}.<br>
+ * The prefix string is parsed and validated once. Applying the selector only
+ * sets the local prefix of each level, so switching between a few known
+ * prefix combinations costs no parsing and no allocation.<br>
+ * A selector can also be passed to the lookups like
+ * {@link PrefixedProperties#getProperty(String, PrefixSelector)}. These don't
+ * read the local prefixes of the current thread at all, so the selector can be
+ * handed along with a request which is processed by different threads.
+ */
+public final class PrefixSelector {
+
+	private final PrefixedProperties properties;
+
+	private final String prefix;
+
+	private final PrefixConfig[] configs;
+
+	private final String[] localPrefixes;
+
+	private final boolean hasLocalPrefixes;
+
+	PrefixSelector(final PrefixedProperties properties, final String prefix, final PrefixConfig[] configs,
+			final String[] localPrefixes) {
+		this.properties = properties;
+		this.prefix = prefix;
+		this.configs = configs;
+		this.localPrefixes = localPrefixes;
+		boolean found = false;
+		for (final String localPrefix : localPrefixes) {
+			found |= localPrefix != null;
+		}
+		hasLocalPrefixes = found;
+	}
+
+	/**
+	 * Sets the local prefixes of this selector for the current thread. This
+	 * has the same effect as {@link PrefixedProperties#setLocalPrefix(String)}
+	 * with the compiled prefix string. If the {@link PrefixConfig}s of the
+	 * cascade have been replaced since this selector was created the prefix
+	 * string is resolved again.
+	 */
+	public void apply() {
+		properties.applyPrefixSelector(this);
+	}
+
+	/**
+	 * Gets the prefix which is active on the given level if this selector is
+	 * applied. This is the same prefix {@link PrefixConfig#getLocalPrefix()}
+	 * or {@link PrefixConfig#getPrefix()} would return, but without reading
+	 * any {@link ThreadLocal}.
+	 * 
+	 * @param index
+	 *            the index of the level, the innermost level first
+	 * @param useLocalPrefixes
+	 *            true if only the local prefixes are used
+	 * @return the active prefix or null
+	 */
+	String getActivePrefix(final int index, final boolean useLocalPrefixes) {
+		final String localPrefix = localPrefixes[index];
+		if (localPrefix != null || useLocalPrefixes || configs[index] == null) {
+			return localPrefix;
+		}
+		return PrefixedProperties.getDefaultPrefix(configs[index]);
+	}
+
+	/**
+	 * Gets the {@link PrefixConfig}s of the cascade in the order of
+	 * {@link #getLocalPrefixes()}, the innermost level first.
+	 * 
+	 * @return the prefix configs
+	 */
+	PrefixConfig[] getConfigs() {
+		return configs;
+	}
+
+	/**
+	 * Gets the local prefix for each level of the cascade, the innermost level
+	 * first. A level without a prefix is null.
+	 * 
+	 * @return the local prefixes
+	 */
+	String[] getLocalPrefixes() {
+		return localPrefixes;
+	}
+
+	/**
+	 * Gets the prefix string this selector has been created for.
+	 * 
+	 * @return the prefix
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Gets the {@link PrefixedProperties} this selector is bound to.
+	 * 
+	 * @return the prefixed properties
+	 */
+	public PrefixedProperties getPrefixedProperties() {
+		return properties;
+	}
+
+	/**
+	 * Checks if at least one level gets a local prefix by this selector.
+	 * 
+	 * @return true, if successful
+	 */
+	boolean hasLocalPrefixes() {
+		return hasLocalPrefixes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PrefixSelector [" + prefix + "]";
+	}
+}
@@ -25,8 +25,11 @@
  */
 package net.sf.prefixedproperties;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
@@ -36,7 +39,13 @@ import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -45,13 +54,21 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.lang.StringUtils;
@@ -68,6 +85,7 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLParser;
 import net.sf.prefixedproperties.config.DefaultPrefixConfig;
 import net.sf.prefixedproperties.config.DynamicPrefixConfig;
 import net.sf.prefixedproperties.config.PrefixConfig;
+import net.sf.prefixedproperties.config.PrefixTrie;
 import net.sf.triemap.TrieMap;
 import net.sf.triemap.TrieMap.TrieMapBackedProperties;
 
@@ -83,6 +101,433 @@ import net.sf.triemap.TrieMap.TrieMapBackedProperties;
  */
 public class PrefixedProperties extends Properties implements Serializable {
 
+	/*
+	 * The flattened form of a cascade of PrefixedProperties. The levels are
+	 * ordered from the outermost to the innermost one. A lookup walks the
+	 * arrays instead of recursing through the nested instances, so no lock
+	 * and no instanceof check is needed per level.
+	 */
+	private static final class CascadeResolver {
+
+		/*
+		 * One node per prefix of a level. The leafs hold the compiled table
+		 * of all resolvable keys for one combination of prefixes.
+		 */
+		private static final class Combination {
+
+			private final ConcurrentMap<Object, Combination> children = new ConcurrentHashMap<Object, Combination>(4);
+
+			private String[] activePrefixes;
+
+			private volatile ConcurrentMap<Object, Object> table;
+
+			private Combination getChild(final String prefix) {
+				final Object childKey = prefix == null ? NO_PREFIX : prefix;
+				Combination child = children.get(childKey);
+				if (child == null) {
+					final Combination newChild = new Combination();
+					child = children.putIfAbsent(childKey, newChild);
+					if (child == null) {
+						child = newChild;
+					}
+				}
+				return child;
+			}
+		}
+
+		/*
+		 * The local prefix of each level for one prefix string passed to
+		 * setLocalPrefix, together with the prefixes of the levels it has
+		 * been recorded with.
+		 */
+		private static final class LocalPrefixes {
+
+			private final String[] prefixes;
+
+			private final PrefixTrie[] tries;
+
+			private LocalPrefixes(final String[] prefixes, final PrefixTrie[] tries) {
+				this.prefixes = prefixes;
+				this.tries = tries;
+			}
+		}
+
+		private static final Object NO_PREFIX = new Object();
+
+		private static final int MAX_LOCAL_PREFIXES = 1024;
+
+		/* each compiled combination holds a table of all resolvable keys */
+		private static final int MAX_COMPILED_COMBINATIONS = 16;
+
+		private final PrefixedProperties[] levels;
+
+		private final PrefixConfig[] configs;
+
+		private final Properties store;
+
+		private final boolean compiled;
+
+		private volatile Combination compiledRoot = new Combination();
+
+		/* the compiled combinations in the order they have been compiled */
+		private final List<Combination> compiledCombinations = new CopyOnWriteArrayList<Combination>();
+
+		private final ConcurrentMap<String, LocalPrefixes> localPrefixes = new ConcurrentHashMap<String, LocalPrefixes>();
+
+		private CascadeResolver(final PrefixedProperties top, final boolean compile) {
+			final List<PrefixedProperties> levelList = new ArrayList<PrefixedProperties>();
+			levelList.add(top);
+			Properties level = top.properties;
+			while (level != null && level.getClass() == PrefixedProperties.class) {
+				levelList.add((PrefixedProperties) level);
+				level = ((PrefixedProperties) level).properties;
+			}
+			levels = levelList.toArray(new PrefixedProperties[levelList.size()]);
+			configs = new PrefixConfig[levels.length];
+			for (int i = 0; i < levels.length; i++) {
+				configs[i] = levels[i].prefixes;
+			}
+			store = level;
+			// the prefixes of a wrapped subclass are not known to the
+			// combinations, so such a cascade is never compiled.
+			compiled = compile && !(store instanceof PrefixedProperties);
+		}
+
+		private void afterClear() {
+			if (compiled) {
+				compiledCombinations.clear();
+				compiledRoot = new Combination();
+			}
+		}
+
+		/*
+		 * Updates the compiled keys which can be resolved by the given put or
+		 * removed key of the backing store. These are the key itself and
+		 * every part of it following a delimiter, as the stored key is one of
+		 * them prefixed by some levels.
+		 */
+		private void afterChange(final Object storedKey) {
+			if (compiled) {
+				for (final Combination combination : compiledCombinations) {
+					if (String.class == storedKey.getClass()) {
+						final String stringKey = (String) storedKey;
+						int index = 0;
+						do {
+							update(combination, index == 0 ? stringKey : stringKey.substring(index));
+							index = stringKey.indexOf(PrefixConfig.PREFIXDELIMITER, index) + 1;
+						} while (index > 0);
+					} else {
+						update(combination, storedKey);
+					}
+				}
+			}
+		}
+
+		private boolean applyLocalPrefix(final String prefix) {
+			final LocalPrefixes recorded = localPrefixes.get(prefix);
+			if (recorded == null) {
+				return false;
+			}
+			for (int i = 0; i < configs.length; i++) {
+				if (((DefaultPrefixConfig) configs[i]).getPrefixTrie() != recorded.tries[i]) {
+					localPrefixes.remove(prefix, recorded);
+					return false;
+				}
+			}
+			for (int i = 0; i < configs.length; i++) {
+				configs[i].setPrefix(recorded.prefixes[i]);
+			}
+			return true;
+		}
+
+		private ConcurrentMap<Object, Object> compile(final Combination combination, final String[] activePrefixes) {
+			final ConcurrentMap<Object, Object> table = new ConcurrentHashMap<Object, Object>();
+			for (final Object storedKey : store.keySet()) {
+				if (String.class == storedKey.getClass()) {
+					final String stringKey = (String) storedKey;
+					int index = 0;
+					do {
+						final String key = index == 0 ? stringKey : stringKey.substring(index);
+						if (!table.containsKey(key)) {
+							final Object value = get(key, 0, activePrefixes);
+							if (value != null) {
+								table.put(key, value);
+							}
+						}
+						index = stringKey.indexOf(PrefixConfig.PREFIXDELIMITER, index) + 1;
+					} while (index > 0);
+				} else {
+					final Object value = get(storedKey, 0, activePrefixes);
+					if (value != null) {
+						table.put(storedKey, value);
+					}
+				}
+			}
+			return table;
+		}
+
+		private Object get(final Object key, final boolean useLocalPrefixes) {
+			if (!compiled) {
+				return get(key, 0, useLocalPrefixes);
+			}
+			if (key == null) {
+				throw new NullPointerException();
+			}
+			return getTable(useLocalPrefixes).get(key);
+		}
+
+		private Object get(final Object key, final int level, final boolean useLocalPrefixes) {
+			if (level == configs.length) {
+				return store instanceof PrefixedProperties
+						? ((PrefixedProperties) store).get(key, useLocalPrefixes) : store.get(key);
+			}
+			Object prefixedKey = key;
+			final PrefixConfig config = configs[level];
+			if (String.class == key.getClass() && config != null && !config.containsValidPrefix((String) key)) {
+				prefixedKey = config.getPrefixedKey((String) key, useLocalPrefixes);
+			}
+			Object result = get(prefixedKey, level + 1, useLocalPrefixes);
+			// fall back by getting the property without the prefix of this
+			// level
+			if (result == null && prefixedKey != key) {
+				result = get(key, level + 1, useLocalPrefixes);
+			}
+			return result;
+		}
+
+		private Object get(final Object key, final int level, final String[] activePrefixes) {
+			if (level == configs.length) {
+				return store.get(key);
+			}
+			Object prefixedKey = key;
+			final PrefixConfig config = configs[level];
+			final String prefix = activePrefixes[level];
+			if (prefix != null && String.class == key.getClass() && config != null
+					&& !config.containsValidPrefix((String) key)) {
+				prefixedKey = config.getPrefixedKey(prefix, (String) key);
+			}
+			Object result = get(prefixedKey, level + 1, activePrefixes);
+			if (result == null && prefixedKey != key) {
+				result = get(key, level + 1, activePrefixes);
+			}
+			return result;
+		}
+
+		private Object get(final Object key, final int level, final PrefixSelector selector,
+				final boolean useLocalPrefixes) {
+			if (level == configs.length) {
+				return store.get(key);
+			}
+			Object prefixedKey = key;
+			final PrefixConfig config = configs[level];
+			final String prefix = selector.getActivePrefix(configs.length - 1 - level, useLocalPrefixes);
+			if (prefix != null && String.class == key.getClass() && config != null
+					&& !config.containsValidPrefix((String) key)) {
+				prefixedKey = config.getPrefixedKey(prefix, (String) key);
+			}
+			Object result = get(prefixedKey, level + 1, selector, useLocalPrefixes);
+			if (result == null && prefixedKey != key) {
+				result = get(key, level + 1, selector, useLocalPrefixes);
+			}
+			return result;
+		}
+
+		/*
+		 * Gets the value with the prefixes of the given selector, which has
+		 * been created for the configs of this cascade.
+		 */
+		private Object get(final Object key, final PrefixSelector selector, final boolean useLocalPrefixes) {
+			if (!compiled) {
+				return get(key, 0, selector, useLocalPrefixes);
+			}
+			if (key == null) {
+				throw new NullPointerException();
+			}
+			Combination combination = compiledRoot;
+			for (int i = 0; i < configs.length; i++) {
+				combination = combination.getChild(selector.getActivePrefix(configs.length - 1 - i, useLocalPrefixes));
+			}
+			ConcurrentMap<Object, Object> table = combination.table;
+			if (table == null) {
+				final String[] activePrefixes = new String[configs.length];
+				for (int i = 0; i < configs.length; i++) {
+					activePrefixes[i] = selector.getActivePrefix(configs.length - 1 - i, useLocalPrefixes);
+				}
+				table = getTable(combination, activePrefixes);
+			}
+			return table.get(key);
+		}
+
+		private String getActivePrefix(final PrefixConfig config, final boolean useLocalPrefixes) {
+			if (config == null) {
+				return null;
+			}
+			return useLocalPrefixes ? config.getLocalPrefix() : config.getPrefix();
+		}
+
+		private String[] getActivePrefixes(final boolean useLocalPrefixes) {
+			final String[] activePrefixes = new String[configs.length];
+			for (int i = 0; i < configs.length; i++) {
+				activePrefixes[i] = getActivePrefix(configs[i], useLocalPrefixes);
+			}
+			return activePrefixes;
+		}
+
+		private void getAll(final Object[] keys, final Object[] values, final boolean useLocalPrefixes) {
+			if (compiled) {
+				final ConcurrentMap<Object, Object> table = getTable(useLocalPrefixes);
+				for (int i = 0; i < keys.length; i++) {
+					values[i] = table.get(keys[i]);
+				}
+			} else if (store instanceof PrefixedProperties) {
+				for (int i = 0; i < keys.length; i++) {
+					values[i] = get(keys[i], 0, useLocalPrefixes);
+				}
+			} else {
+				// the prefixes are only looked up once for all keys
+				final String[] activePrefixes = getActivePrefixes(useLocalPrefixes);
+				for (int i = 0; i < keys.length; i++) {
+					values[i] = get(keys[i], 0, activePrefixes);
+				}
+			}
+		}
+
+		private StringBuilder getPrefix(final StringBuilder sb, final boolean useLocalPrefixConfigurations) {
+			if (store instanceof PrefixedProperties) {
+				((PrefixedProperties) store).getPrefix(sb, useLocalPrefixConfigurations);
+			}
+			for (int i = configs.length - 1; i >= 0; i--) {
+				if (configs[i] != null) {
+					final String prefix = useLocalPrefixConfigurations ? configs[i].getLocalPrefix()
+							: configs[i].getPrefix();
+					if (prefix != null) {
+						if (sb.length() > 0) {
+							sb.append(PrefixConfig.PREFIXDELIMITER);
+						}
+						sb.append(prefix);
+					}
+				}
+			}
+			return sb;
+		}
+
+		/*
+		 * Gets the prefixes of all levels or null if the local prefixes of
+		 * this cascade can't be recorded.
+		 */
+		private PrefixTrie[] getPrefixTries() {
+			if (store instanceof PrefixedProperties) {
+				return null;
+			}
+			final PrefixTrie[] tries = new PrefixTrie[configs.length];
+			for (int i = 0; i < configs.length; i++) {
+				if (!(configs[i] instanceof DefaultPrefixConfig)) {
+					return null;
+				}
+				tries[i] = ((DefaultPrefixConfig) configs[i]).getPrefixTrie();
+			}
+			return tries;
+		}
+
+		private ConcurrentMap<Object, Object> getTable(final boolean useLocalPrefixes) {
+			Combination combination = compiledRoot;
+			for (final PrefixConfig config : configs) {
+				combination = combination.getChild(getActivePrefix(config, useLocalPrefixes));
+			}
+			final ConcurrentMap<Object, Object> table = combination.table;
+			return table != null ? table : getTable(combination, getActivePrefixes(useLocalPrefixes));
+		}
+
+		private ConcurrentMap<Object, Object> getTable(final Combination combination, final String[] activePrefixes) {
+			synchronized (combination) {
+				ConcurrentMap<Object, Object> table = combination.table;
+				if (table == null) {
+					table = compile(combination, activePrefixes);
+					combination.activePrefixes = activePrefixes;
+					combination.table = table;
+					synchronized (compiledCombinations) {
+						compiledCombinations.add(combination);
+						if (compiledCombinations.size() > MAX_COMPILED_COMBINATIONS) {
+							// the oldest one is compiled again on its next use
+							compiledCombinations.remove(0).table = null;
+						}
+					}
+				}
+				return table;
+			}
+		}
+
+		private String getUnprefixedKey(final String key) {
+			String newKey = key;
+			if (store instanceof PrefixedProperties) {
+				newKey = ((PrefixedProperties) store).getUnprefixedKey(newKey);
+			}
+			for (int i = configs.length - 1; i >= 0; i--) {
+				newKey = configs[i].getUnprefixedKey(newKey);
+			}
+			return newKey;
+		}
+
+		private boolean hasLocalPrefixConfigurations() {
+			for (final PrefixConfig config : configs) {
+				if (config.containsLocalPrefix()) {
+					return true;
+				}
+			}
+			return store instanceof PrefixedProperties
+					&& ((PrefixedProperties) store).hasLocalPrefixConfigurations();
+		}
+
+		private boolean isCurrent(final boolean compile) {
+			if (compile != compiled && !(compile && store instanceof PrefixedProperties)) {
+				return false;
+			}
+			for (int i = 0; i < levels.length; i++) {
+				if (levels[i].prefixes != configs[i]
+						|| levels[i].properties != (i + 1 < levels.length ? levels[i + 1] : store)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/*
+		 * Records the local prefixes the current thread has got for the given
+		 * prefix string, unless the prefixes of a level have changed since the
+		 * given tries were taken.
+		 */
+		private void recordLocalPrefix(final String prefix, final PrefixTrie[] tries) {
+			if (tries == null) {
+				return;
+			}
+			final String[] prefixes = new String[configs.length];
+			for (int i = 0; i < configs.length; i++) {
+				if (((DefaultPrefixConfig) configs[i]).getPrefixTrie() != tries[i]) {
+					return;
+				}
+				prefixes[i] = configs[i].getLocalPrefix();
+			}
+			if (localPrefixes.size() >= MAX_LOCAL_PREFIXES) {
+				localPrefixes.clear();
+			}
+			localPrefixes.put(prefix, new LocalPrefixes(prefixes, tries));
+		}
+
+		private void update(final Combination combination, final Object key) {
+			final ConcurrentMap<Object, Object> table = combination.table;
+			if (table == null) {
+				// evicted
+				return;
+			}
+			final Object value = get(key, 0, combination.activePrefixes);
+			if (value == null) {
+				table.remove(key);
+			} else {
+				table.put(key, value);
+			}
+		}
+	}
+
 	private class DoubleEntry<T, P> {
 		private final T one;
 		private final P two;
@@ -130,6 +575,337 @@ public class PrefixedProperties extends Properties implements Serializable {
 		}
 	}
 
+	/*
+	 * A stored key split into its prefix groups. Ordered like the nested
+	 * objects are written: at each level the plain values come first, then
+	 * the groups, both sorted by their names.
+	 */
+	private static final class GroupedEntry implements Comparable<GroupedEntry> {
+		private final String[] path;
+		private final int pathLength;
+		private final String name;
+		private final String value;
+
+		private GroupedEntry(final String[] path, final int pathLength, final String name, final String value) {
+			this.path = path;
+			this.pathLength = pathLength;
+			this.name = name;
+			this.value = value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(final GroupedEntry other) {
+			for (int i = 0; i < pathLength || i < other.pathLength; i++) {
+				if (i == pathLength) {
+					return -1;
+				}
+				if (i == other.pathLength) {
+					return 1;
+				}
+				final int result = path[i].compareTo(other.path[i]);
+				if (result != 0) {
+					return result;
+				}
+			}
+			return name.compareTo(other.name);
+		}
+	}
+
+	/*
+	 * The live view of the entries.
+	 */
+	private final class EntrySetView extends AbstractSet<Entry<Object, Object>> {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#clear()
+		 */
+		@Override
+		public void clear() {
+			PrefixedProperties.this.clear();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#contains(java.lang.Object)
+		 */
+		@Override
+		public boolean contains(final Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+			final Object value = entry.getKey() != null ? get(entry.getKey()) : null;
+			return value != null && value.equals(entry.getValue());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#isEmpty()
+		 */
+		@Override
+		public boolean isEmpty() {
+			return PrefixedProperties.this.isEmpty();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#iterator()
+		 */
+		@Override
+		public Iterator<Entry<Object, Object>> iterator() {
+			return new LiveIterator<Entry<Object, Object>>(true) {
+				@Override
+				Entry<Object, Object> create(final Object key, final Object value) {
+					return new PPEntry(key, value);
+				}
+			};
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#remove(java.lang.Object)
+		 */
+		@Override
+		public boolean remove(final Object o) {
+			lock.writeLock().lock();
+			try {
+				if (contains(o)) {
+					PrefixedProperties.this.remove(((Map.Entry<?, ?>) o).getKey());
+					return true;
+				}
+				return false;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#size()
+		 */
+		@Override
+		public int size() {
+			return PrefixedProperties.this.size();
+		}
+	}
+
+	/*
+	 * The live view of the keys.
+	 */
+	private final class KeySetView extends AbstractSet<Object> {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#clear()
+		 */
+		@Override
+		public void clear() {
+			PrefixedProperties.this.clear();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#contains(java.lang.Object)
+		 */
+		@Override
+		public boolean contains(final Object o) {
+			return o != null && containsKey(o);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#isEmpty()
+		 */
+		@Override
+		public boolean isEmpty() {
+			return PrefixedProperties.this.isEmpty();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#iterator()
+		 */
+		@Override
+		public Iterator<Object> iterator() {
+			return new LiveIterator<Object>(false) {
+				@Override
+				Object create(final Object key, final Object value) {
+					return key;
+				}
+			};
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#remove(java.lang.Object)
+		 */
+		@Override
+		public boolean remove(final Object o) {
+			return o != null && PrefixedProperties.this.remove(o) != null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#size()
+		 */
+		@Override
+		public int size() {
+			return PrefixedProperties.this.size();
+		}
+	}
+
+	/*
+	 * A weakly consistent iterator over the visible keys. It walks the keys
+	 * the backing properties had when it was created and resolves each of them
+	 * under the read lock when it is reached. Keys removed in the meantime are
+	 * skipped, keys added in the meantime are not returned and a
+	 * ConcurrentModificationException is never thrown.
+	 *
+	 * @param <E> the element type
+	 */
+	private abstract class LiveIterator<E> implements Iterator<E> {
+
+		/* The visible keys or the keys of the backing properties. */
+		private final Object[] keys;
+
+		/* True if the keys are taken from the key index and already visible. */
+		private final boolean indexed;
+
+		/* Resolve the values or only check the keys. */
+		private final boolean resolveValues;
+
+		/* The position within the keys. */
+		private int position;
+
+		/* The next key to return, null if not resolved yet. */
+		private Object nextKey;
+
+		/* The value of the next key. */
+		private Object nextValue;
+
+		/* The last returned key. */
+		private Object lastKey;
+
+		/*
+		 * Instantiates a new live iterator.
+		 *
+		 * @param resolveValuesParam true if the values are needed
+		 */
+		private LiveIterator(final boolean resolveValuesParam) {
+			resolveValues = resolveValuesParam;
+			lock.readLock().lock();
+			try {
+				final UnprefixedKeyIndex index = getKeyIndex();
+				indexed = index != null;
+				keys = indexed ? index.getKeys(prefixes.getPrefix()) : properties.keySet().toArray();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/*
+		 * Resolves the next visible key.
+		 *
+		 * @return true if there is one
+		 */
+		private boolean advance() {
+			lock.readLock().lock();
+			try {
+				final boolean useLocalPrefixes = useLocalPrefixes();
+				while (position < keys.length) {
+					final Object storedKey = keys[position++];
+					final Object key = indexed ? storedKey : getVisibleKey(storedKey);
+					if (key != null) {
+						if (resolveValues) {
+							final Object value = get(storedKey, useLocalPrefixes);
+							if (value != null) {
+								nextKey = key;
+								nextValue = value;
+								return true;
+							}
+						} else if (indexed ? containsKey(key) : properties.containsKey(storedKey)) {
+							nextKey = key;
+							return true;
+						}
+					}
+				}
+				return false;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/*
+		 * Creates the element for the given key and value.
+		 *
+		 * @param key the unprefixed key
+		 * 
+		 * @param value the value or null if the values are not resolved
+		 * 
+		 * @return the element
+		 */
+		abstract E create(Object key, Object value);
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return nextKey != null || advance();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final E result = create(nextKey, nextValue);
+			lastKey = nextKey;
+			nextKey = null;
+			nextValue = null;
+			return result;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			PrefixedProperties.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
 	/*
 	 * The Class PPEntry.
 	 */
@@ -299,6 +1075,67 @@ public class PrefixedProperties extends Properties implements Serializable {
 
 	}
 
+	/*
+	 * The live view of the values.
+	 */
+	private final class ValuesView extends AbstractCollection<Object> {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#clear()
+		 */
+		@Override
+		public void clear() {
+			PrefixedProperties.this.clear();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#contains(java.lang.Object)
+		 */
+		@Override
+		public boolean contains(final Object o) {
+			return PrefixedProperties.this.contains(o);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#isEmpty()
+		 */
+		@Override
+		public boolean isEmpty() {
+			return PrefixedProperties.this.isEmpty();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#iterator()
+		 */
+		@Override
+		public Iterator<Object> iterator() {
+			return new LiveIterator<Object>(true) {
+				@Override
+				Object create(final Object key, final Object value) {
+					return value;
+				}
+			};
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#size()
+		 */
+		@Override
+		public int size() {
+			return PrefixedProperties.this.size();
+		}
+	}
+
 	/**
 	 * Creates the cascading prefix properties.
 	 * 
@@ -368,11 +1205,57 @@ public class PrefixedProperties extends Properties implements Serializable {
 				properties = new PrefixedProperties(properties, aPrefix);
 			}
 		}
-		return properties;
+		return properties;
+	}
+
+	/**
+	 * Creates prefixed properties from a file written by
+	 * {@link #storeToBinary(OutputStream)}. The cascade is rebuilt with the
+	 * stored prefixes and default prefixes of each level and the stored
+	 * entries are put at once. The InputStream will not be closed.
+	 * 
+	 * @param is
+	 *            the InputStream
+	 * @return the prefixed properties
+	 * @throws IOException
+	 *             if the stream can't be read or is no valid binary file
+	 */
+	public static PrefixedProperties createFromBinary(final InputStream is) throws IOException {
+		final BinaryPropertiesFormat binary = BinaryPropertiesFormat.read(is);
+		final PrefixedProperties properties = createCascadingPrefixProperties(binary.createPrefixConfigs());
+		properties.putAll(binary.getEntries());
+		return properties;
+	}
+
+	/**
+	 * Gets the default prefix of the given config. Configs which are no
+	 * {@link DefaultPrefixConfig} only tell their default prefix while no
+	 * local prefix is set for the current thread.
+	 * 
+	 * @param config
+	 *            the config
+	 * @return the default prefix or null
+	 */
+	static String getDefaultPrefix(final PrefixConfig config) {
+		if (config instanceof DefaultPrefixConfig) {
+			return ((DefaultPrefixConfig) config).getDefaultPrefix();
+		}
+		return config.getLocalPrefix() == null ? config.getPrefix() : null;
 	}
 
 	private static final long serialVersionUID = 1L;
 
+	/* the factories are thread-safe and expensive to create. */
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private static final YAMLFactory YAML_FACTORY = new YAMLFactory();
+
+	/*
+	 * more keys than this are put by invalidating all resolved values at once
+	 * instead of key by key.
+	 */
+	private static final int BULK_PUT_THRESHOLD = 64;
+
 	private transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
 	private PrefixConfig prefixes = new DynamicPrefixConfig();
@@ -381,6 +1264,26 @@ public class PrefixedProperties extends Properties implements Serializable {
 
 	private boolean mixDefaultAndLocalPrefixes = true;
 
+	private transient volatile ResolvedValueCache resolvedValueCache;
+
+	private transient volatile CascadeResolver cascadeResolver;
+
+	private transient volatile boolean compiledCascade;
+
+	private transient volatile boolean prefixFilteredLoading;
+
+	private transient volatile UnprefixedKeyIndex keyIndex;
+
+	private transient TypedValueCache typedValueCache = new TypedValueCache();
+
+	private transient volatile List<WeakReference<PrefixedPropertiesView>> views;
+
+	private transient volatile PropertiesJournal journal;
+
+	private transient volatile PropertiesChangeDispatcher changeDispatcher;
+
+	private transient volatile Executor changeListenerExecutor;
+
 	/**
 	 * Instantiates a new prefixed properties.
 	 */
@@ -454,6 +1357,253 @@ public class PrefixedProperties extends Properties implements Serializable {
 		setDefaultPrefix(defaultPrefix);
 	}
 
+	/**
+	 * Adds a listener for the changes of all keys.<br>
+	 * The changes are collected while they are written and delivered in
+	 * batches by the executor set by
+	 * {@link #setChangeListenerExecutor(Executor)}, so writing doesn't wait
+	 * for the listeners and a burst of writes leads to few calls only. Changes
+	 * made directly to an inner level of a cascade aren't delivered.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void addChangeListener(final PropertiesChangeListener listener) {
+		addChangeListener(null, false, listener);
+	}
+
+	/**
+	 * Adds a listener for the changes of the given key. The key matches the
+	 * stored key with or without its prefixes, e.g. <code>db.url</code>
+	 * matches <code>db.url</code> and <code>liv.db.url</code>.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param listener
+	 *            the listener
+	 * @see #addChangeListener(PropertiesChangeListener)
+	 */
+	public void addChangeListener(final String key, final PropertiesChangeListener listener) {
+		if (key == null) {
+			throw new IllegalArgumentException("The key must not be null.");
+		}
+		addChangeListener(key, false, listener);
+	}
+
+	private void addChangeListener(final String pattern, final boolean prefix, final PropertiesChangeListener listener) {
+		lock.writeLock().lock();
+		try {
+			PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher == null) {
+				dispatcher = new PropertiesChangeDispatcher(new ArrayList<PrefixConfig>(getPrefixConfigs().values()),
+						changeListenerExecutor);
+			}
+			dispatcher.addListener(pattern, prefix, listener);
+			changeDispatcher = dispatcher;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a listener for the changes of all keys starting with the given key
+	 * prefix. The key prefix matches the stored keys with or without their
+	 * prefixes, e.g. <code>db.pool.</code> matches <code>db.pool.size</code>
+	 * and <code>liv.db.pool.size</code>.
+	 * 
+	 * @param keyPrefix
+	 *            the key prefix
+	 * @param listener
+	 *            the listener
+	 * @see #addChangeListener(PropertiesChangeListener)
+	 */
+	public void addPrefixChangeListener(final String keyPrefix, final PropertiesChangeListener listener) {
+		if (keyPrefix == null) {
+			throw new IllegalArgumentException("The key prefix must not be null.");
+		}
+		addChangeListener(keyPrefix, true, listener);
+	}
+
+	private void afterClear() {
+		invalidateResolvedValues();
+		final UnprefixedKeyIndex index = keyIndex;
+		if (index != null) {
+			index.clear();
+		}
+		final PropertiesJournal changes = journal;
+		if (changes != null) {
+			changes.clear();
+		}
+	}
+
+	private void afterPut(final Object key) {
+		final ResolvedValueCache cache = resolvedValueCache;
+		if (cache != null) {
+			cache.invalidate(key);
+		}
+		typedValueCache.invalidate(key);
+		final CascadeResolver resolver = cascadeResolver;
+		if (resolver != null) {
+			resolver.afterChange(key);
+		}
+		final UnprefixedKeyIndex index = keyIndex;
+		if (index != null) {
+			index.add(key);
+		}
+		updateViews(key);
+	}
+
+	private void afterPutAll(final Collection<? extends Object> keys) {
+		// dropping everything resolved at once is cheaper than invalidating
+		// key by key.
+		invalidateResolvedValues();
+		final UnprefixedKeyIndex index = keyIndex;
+		if (index != null) {
+			for (final Object key : keys) {
+				index.add(key);
+			}
+		}
+	}
+
+	private void afterRemove(final Object key, final Collection<Object> storedKeys) {
+		final ResolvedValueCache cache = resolvedValueCache;
+		if (cache != null) {
+			for (final Object storedKey : storedKeys) {
+				cache.invalidate(storedKey);
+			}
+		}
+		final CascadeResolver resolver = cascadeResolver;
+		for (final Object storedKey : storedKeys) {
+			typedValueCache.invalidate(storedKey);
+			if (resolver != null) {
+				resolver.afterChange(storedKey);
+			}
+		}
+		final UnprefixedKeyIndex index = keyIndex;
+		if (index != null) {
+			for (final Object storedKey : storedKeys) {
+				index.remove(storedKey);
+			}
+		}
+		for (final Object storedKey : storedKeys) {
+			updateViews(storedKey);
+		}
+		final PropertiesJournal changes = journal;
+		if (changes != null) {
+			for (final Object storedKey : storedKeys) {
+				changes.remove(storedKey);
+			}
+		}
+		final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+		if (dispatcher != null) {
+			dispatcher.removeAll(storedKeys);
+		}
+	}
+
+	private void applyDelta(final PropertiesDelta delta) {
+		properties.putAll(delta.getAdded());
+		properties.putAll(delta.getChanged());
+		for (final Object key : delta.getRemoved().keySet()) {
+			removeStoredKey(key);
+		}
+		final PropertiesJournal changes = journal;
+		final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+		if (delta.size() > BULK_PUT_THRESHOLD) {
+			afterPutAll(delta.getAdded().keySet());
+			final UnprefixedKeyIndex index = keyIndex;
+			for (final Object key : delta.getRemoved().keySet()) {
+				if (index != null) {
+					index.remove(key);
+				}
+				if (changes != null) {
+					changes.remove(key);
+				}
+			}
+			if (dispatcher != null) {
+				dispatcher.removeAll(delta.getRemoved().keySet());
+			}
+		} else {
+			for (final Object key : delta.getAdded().keySet()) {
+				afterPut(key);
+			}
+			for (final Object key : delta.getChanged().keySet()) {
+				afterPut(key);
+			}
+			for (final Object key : delta.getRemoved().keySet()) {
+				afterRemove(key, Collections.singleton(key));
+			}
+		}
+		if (changes != null) {
+			changes.putAll(delta.getAdded());
+			changes.putAll(delta.getChanged());
+		}
+		if (dispatcher != null) {
+			dispatcher.putAll(delta.getAdded());
+			dispatcher.putAll(delta.getChanged());
+		}
+	}
+
+	/**
+	 * Sets the local prefixes of the given selector for the current thread.
+	 * 
+	 * @param selector
+	 *            the selector
+	 */
+	void applyPrefixSelector(final PrefixSelector selector) {
+		final PrefixConfig[] configs = selector.getConfigs();
+		if (hasPrefixConfigs(configs)) {
+			final String[] localPrefixes = selector.getLocalPrefixes();
+			for (int i = 0; i < configs.length; i++) {
+				configs[i].setPrefix(localPrefixes[i]);
+			}
+		} else {
+			setLocalPrefix(selector.getPrefix());
+		}
+	}
+
+	/**
+	 * Attaches the given journal which records all further modifications.
+	 * 
+	 * @param changes
+	 *            the journal
+	 * @throws IllegalStateException
+	 *             if a journal is already attached
+	 */
+	void attachJournal(final PropertiesJournal changes) {
+		lock.writeLock().lock();
+		try {
+			if (journal != null) {
+				throw new IllegalStateException("The properties are already journaled in "
+						+ journal.getDirectory());
+			}
+			journal = changes;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Captures the local prefixes the current thread has on all levels of this
+	 * cascade.
+	 * 
+	 * @return the captured prefixes
+	 */
+	LocalPrefixPropagation captureLocalPrefixes() {
+		int depth = 0;
+		for (Properties level = this; level instanceof PrefixedProperties; level = ((PrefixedProperties) level).properties) {
+			depth++;
+		}
+		final PrefixConfig[] configs = new PrefixConfig[depth];
+		final String[] localPrefixes = new String[depth];
+		Properties level = this;
+		for (int i = 0; i < depth; i++) {
+			configs[i] = ((PrefixedProperties) level).prefixes;
+			localPrefixes[i] = configs[i].getLocalPrefix();
+			level = ((PrefixedProperties) level).properties;
+		}
+		return new LocalPrefixPropagation(configs, localPrefixes);
+	}
+
 	private String checkAndConvertPrefix(final String prefix) {
 		if (prefix == null) {
 			throw new IllegalArgumentException("The prefix has to be set and is not allowed to be null.");
@@ -474,7 +1624,12 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void clear() {
 		lock.writeLock().lock();
 		try {
+			final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher != null) {
+				dispatcher.removeAll(getCompleteProperties().keySet());
+			}
 			properties.clear();
+			afterClear();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -514,6 +1669,15 @@ public class PrefixedProperties extends Properties implements Serializable {
 			if (prefixes != null) {
 				clone.prefixes = prefixes.clone();
 			}
+			if (resolvedValueCache != null) {
+				clone.resolvedValueCache = new ResolvedValueCache();
+			}
+			clone.cascadeResolver = null;
+			clone.keyIndex = null;
+			clone.typedValueCache = new TypedValueCache();
+			clone.views = null;
+			clone.journal = null;
+			clone.changeDispatcher = null;
 			if (properties instanceof PrefixedProperties) {
 				clone.properties = (Properties) properties.clone();
 			} else if (properties instanceof TrieMapBackedProperties) {
@@ -605,22 +1769,89 @@ public class PrefixedProperties extends Properties implements Serializable {
 		}
 	}
 
+	private PrefixLoadFilter createLoadFilter() {
+		if (!prefixFilteredLoading) {
+			return null;
+		}
+		return PrefixLoadFilter.create(getPrefixConfigs().values());
+	}
+
+	/**
+	 * Compiles the given prefix string into a {@link PrefixSelector} for this
+	 * cascade. The prefix string is split and validated against the
+	 * {@link PrefixConfig}s only once. Applying the selector has the same
+	 * effect as {@link #setLocalPrefix(String)} with the prefix string.
+	 * 
+	 * @param configuredPrefix
+	 *            the prefix string
+	 * @return the prefix selector
+	 * @throws IllegalArgumentException
+	 *             if the prefix string doesn't match the prefix configs
+	 */
+	public PrefixSelector createPrefixSelector(final String configuredPrefix) {
+		final String myPrefix = checkAndConvertPrefix(configuredPrefix);
+		final List<String> prefixList = split(myPrefix);
+		lock.writeLock().lock();
+		try {
+			final Map<Integer, PrefixConfig> configs = getPrefixConfigs();
+			final List<DoubleEntry<PrefixConfig, String>> prefixesToSet;
+			try {
+				prefixesToSet = getToSetPrefixMap(prefixList, configs);
+			} catch (final IllegalArgumentException iae) {
+				throw new IllegalArgumentException("The given prefixes are not part of the PrefixConfig: " + prefixList);
+			}
+			final PrefixConfig[] levelConfigs = configs.values().toArray(new PrefixConfig[configs.size()]);
+			final String[] localPrefixes = new String[levelConfigs.length];
+			for (final DoubleEntry<PrefixConfig, String> entry : prefixesToSet) {
+				final PrefixConfig config = entry.getOne();
+				if (config.isDynamic() && !config.containsValidPrefix(entry.getTwo())) {
+					// let the config learn the prefix now, applying the
+					// selector must not change which keys are prefixed.
+					invalidateResolvedValues();
+					final String localPrefix = config.getLocalPrefix();
+					config.setPrefix(entry.getTwo());
+					config.setPrefix(localPrefix);
+				}
+				for (int i = 0; i < levelConfigs.length; i++) {
+					if (levelConfigs[i] == config) {
+						localPrefixes[i] = entry.getTwo();
+					}
+				}
+			}
+			return new PrefixSelector(this, myPrefix, levelConfigs, localPrefixes);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Detaches the given journal.
+	 * 
+	 * @param changes
+	 *            the journal
+	 * @return true, if the journal was attached
+	 */
+	boolean detachJournal(final PropertiesJournal changes) {
+		lock.writeLock().lock();
+		try {
+			if (journal != changes) {
+				return false;
+			}
+			journal = null;
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see java.util.Hashtable#elements()
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public PrefixedPropertiesEnumeration<Object> elements() {
-		lock.readLock().lock();
-		try {
-			final Collection values = values();
-			final Iterator it = values.iterator();
-			return new PrefixedPropertiesEnumerationImpl(it);
-		} finally {
-			lock.readLock().unlock();
-		}
+		return new PrefixedPropertiesEnumerationImpl<Object>(values().iterator());
 	}
 
 	/*
@@ -630,22 +1861,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 */
 	@Override
 	public Set<Entry<Object, Object>> entrySet() {
-		final Set<Entry<Object, Object>> entrySet = new HashSet<Entry<Object, Object>>();
-		lock.readLock().lock();
-		try {
-			final boolean useLocalPrefixes = !mixDefaultAndLocalPrefixes && hasLocalPrefixConfigurations();
-			for (final Map.Entry<Object, Object> keyEntry : getKeyMap(false).entrySet()) {
-				final Object value = get(keyEntry.getValue(), useLocalPrefixes);
-				if (String.class == keyEntry.getKey().getClass()) {
-					entrySet.add(new PPEntry(keyEntry.getKey(), value));
-				} else {
-					entrySet.add(new PPEntry(keyEntry.getKey(), value));
-				}
-			}
-			return entrySet;
-		} finally {
-			lock.readLock().unlock();
-		}
+		return new EntrySetView();
 	}
 
 	/*
@@ -690,7 +1906,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 	@Override
 	public Object get(final Object key) {
 		final boolean useLocalPrefixes = !mixDefaultAndLocalPrefixes && hasLocalPrefixConfigurations();
-		return get(key, useLocalPrefixes);
+		return getResolved(key, useLocalPrefixes);
 	}
 
 	/*
@@ -699,22 +1915,116 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @see java.util.Hashtable#get(java.lang.Object)
 	 */
 	protected Object get(final Object key, final boolean useLocalPrefixes) {
-		Object result = null;
 		lock.readLock().lock();
 		try {
-			final Object prefixedKey = getPrefixedKey(key, useLocalPrefixes);
-			result = (properties instanceof PrefixedProperties)
-					? ((PrefixedProperties) properties).get(prefixedKey, useLocalPrefixes)
-					: properties.get(prefixedKey);
-			// fall back by getting the property without any prefixed keys
-			if (result == null) {
-				result = (properties instanceof PrefixedProperties)
-						? ((PrefixedProperties) properties).get(key, useLocalPrefixes) : properties.get(key);
+			return getCascadeResolver().get(key, useLocalPrefixes);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the value for the given key with the local prefixes of the given
+	 * {@link PrefixSelector} instead of the ones of the current thread. No
+	 * {@link ThreadLocal} is read or changed, so the selector can be handed
+	 * along with a request which is processed by different threads.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param selector
+	 *            the selector created by {@link #createPrefixSelector(String)}
+	 * @return the value or null
+	 * @throws IllegalArgumentException
+	 *             if the selector has been created by other properties
+	 */
+	public Object get(final Object key, final PrefixSelector selector) {
+		if (selector.getPrefixedProperties() != this) {
+			throw new IllegalArgumentException("The PrefixSelector has been created by other PrefixedProperties.");
+		}
+		PrefixSelector current = selector;
+		while (true) {
+			lock.readLock().lock();
+			try {
+				if (hasPrefixConfigs(current.getConfigs())) {
+					return getSelected(key, current);
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			// the prefix configs have been replaced since the selector was
+			// created
+			current = createPrefixSelector(selector.getPrefix());
+		}
+	}
+
+	/**
+	 * Gets the values of all given keys at once. The keys are resolved within
+	 * one read lock and with the prefixes being looked up only once, so the
+	 * values are consistent with each other even if the properties are
+	 * changed concurrently.
+	 * 
+	 * @param keys
+	 *            the keys
+	 * @return the found keys mapped to their values in the order of the given
+	 *         keys. Keys which couldn't get found are not contained.
+	 */
+	public Map<String, String> getAll(final Collection<String> keys) {
+		final String[] values = getAll(keys.toArray(new String[keys.size()]), null);
+		final Map<String, String> result = new LinkedHashMap<String, String>();
+		int i = 0;
+		for (final String key : keys) {
+			if (values[i] != null) {
+				result.put(key, values[i]);
+			}
+			i++;
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the values of all given keys at once and fills them into the given
+	 * array. The keys are resolved within one read lock and with the prefixes
+	 * being looked up only once, so the values are consistent with each other
+	 * even if the properties are changed concurrently.
+	 * 
+	 * @param keys
+	 *            the keys
+	 * @param values
+	 *            the array to fill. If it is null or shorter than the keys, a
+	 *            new array is created. The value of a key which couldn't get
+	 *            found is null.
+	 * @return the array holding the values
+	 */
+	public String[] getAll(final String[] keys, final String[] values) {
+		final String[] result = values != null && values.length >= keys.length ? values : new String[keys.length];
+		final Object[] objects = new Object[keys.length];
+		lock.readLock().lock();
+		try {
+			final boolean useLocalPrefixes = useLocalPrefixes();
+			final ResolvedValueCache cache = resolvedValueCache;
+			if (cache == null) {
+				getCascadeResolver().getAll(keys, objects, useLocalPrefixes);
+			} else {
+				final ResolvedValueCache.Node node = getCacheNode(cache, useLocalPrefixes);
+				for (int i = 0; i < keys.length; i++) {
+					objects[i] = cache.get(node, keys[i]);
+					if (objects[i] == ResolvedValueCache.MISSING) {
+						objects[i] = get(keys[i], useLocalPrefixes);
+						cache.put(node, keys[i], objects[i]);
+					}
+				}
 			}
-			return result;
 		} finally {
 			lock.readLock().unlock();
 		}
+		for (int i = 0; i < keys.length; i++) {
+			if (objects[i] != null && !(objects[i] instanceof String)) {
+				throw new IllegalStateException("The value of " + keys[i] + " is of type: "
+						+ objects[i].getClass().getName());
+			}
+			result[i] = (String) objects[i];
+		}
+		return result;
 	}
 
 	/**
@@ -727,12 +2037,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return String[] or null if the key couldn't get found.
 	 */
 	public String[] getArray(final String key) {
-		final String value = getProperty(key);
-		if (value != null) {
-			final String[] strings = value.split(",[\\s]*|[\\s]*$");
-			return strings;
-		}
-		return null;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.STRING_ARRAY, key);
+		return value != null ? ((String[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -749,10 +2055,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 */
 	public String[] getArray(final String key, final String[] def) {
 		final String[] value = getArray(key);
-		if (value != null) {
-			return value;
-		}
-		return def;
+		return value != null ? value : def;
 	}
 
 	/**
@@ -792,15 +2095,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return boolean[] or null if the key couldn't get found.
 	 */
 	public boolean[] getBooleanArray(final String key) {
-		final String[] value = getArray(key);
-		if (value != null) {
-			final boolean[] result = new boolean[value.length];
-			for (int i = 0; i < value.length; i++) {
-				result[i] = Boolean.valueOf(value[i]).booleanValue();
-			}
-			return result;
-		}
-		return null;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.BOOLEAN_ARRAY, key);
+		return value != null ? ((boolean[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -816,8 +2112,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return boolean[]
 	 */
 	public boolean[] getBooleanArray(final String key, final boolean[] def) {
-		final boolean[] result = getBooleanArray(key);
-		return result == null ? def : result;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.BOOLEAN_ARRAY, key);
+		return value != null && value.isValid() ? ((boolean[]) value.getArray()).clone() : def;
 	}
 
 	/**
@@ -828,11 +2124,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return byte-representation of value
 	 */
 	public byte getByte(final String key) {
-		final String value = getProperty(key);
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.BYTE, key);
 		if (value == null) {
 			throw new NumberFormatException("Couldn't parse property to byte.");
 		}
-		return Byte.parseByte(value);
+		return (byte) value.getLong();
 	}
 
 	/**
@@ -846,11 +2142,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return byte-representation of value
 	 */
 	public byte getByte(final String key, final byte def) {
-		try {
-			return getByte(key);
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.BYTE, key);
+		return value != null && value.isValid() ? (byte) value.getLong() : def;
 	}
 
 	/**
@@ -861,15 +2154,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return the byte array
 	 */
 	public byte[] getByteArray(final String key) {
-		final String[] value = getArray(key);
-		if (value != null) {
-			final byte[] result = new byte[value.length];
-			for (int i = 0; i < value.length; i++) {
-				result[i] = Byte.parseByte(value[i]);
-			}
-			return result;
-		}
-		return null;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.BYTE_ARRAY, key);
+		return value != null ? ((byte[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -882,12 +2168,37 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return the byte array
 	 */
 	public byte[] getByteArray(final String key, final byte[] def) {
-		try {
-			final byte[] result = getByteArray(key);
-			return result != null ? result : def;
-		} catch (final NumberFormatException nfe) {
-			return def;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.BYTE_ARRAY, key);
+		return value != null && value.isValid() ? ((byte[]) value.getArray()).clone() : def;
+	}
+
+	private ResolvedValueCache.Node getCacheNode(final ResolvedValueCache cache, final boolean useLocalPrefixes) {
+		ResolvedValueCache.Node node = cache.getRoot();
+		Properties level = this;
+		while (level instanceof PrefixedProperties) {
+			final PrefixConfig config = ((PrefixedProperties) level).prefixes;
+			node = node.getChild(useLocalPrefixes ? config.getLocalPrefix() : config.getPrefix());
+			level = ((PrefixedProperties) level).properties;
 		}
+		return node;
+	}
+
+	private ResolvedValueCache.Node getCacheNode(final ResolvedValueCache cache, final PrefixSelector selector,
+			final boolean useLocalPrefixes) {
+		ResolvedValueCache.Node node = cache.getRoot();
+		for (int i = selector.getConfigs().length - 1; i >= 0; i--) {
+			node = node.getChild(selector.getActivePrefix(i, useLocalPrefixes));
+		}
+		return node;
+	}
+
+	private CascadeResolver getCascadeResolver() {
+		CascadeResolver resolver = cascadeResolver;
+		if (resolver == null || !resolver.isCurrent(compiledCascade)) {
+			resolver = new CascadeResolver(this, compiledCascade);
+			cascadeResolver = resolver;
+		}
+		return resolver;
 	}
 
 	/**
@@ -911,11 +2222,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return double-representation of value
 	 */
 	public double getDouble(final String key) {
-		final String value = getProperty(key);
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.DOUBLE, key);
 		if (value == null) {
 			throw new NumberFormatException("Couldn't parse property to double.");
 		}
-		return Double.parseDouble(value);
+		return value.getDouble();
 	}
 
 	/**
@@ -929,11 +2240,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return double-representation of value
 	 */
 	public double getDouble(final String key, final double def) {
-		try {
-			return getDouble(key);
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.DOUBLE, key);
+		return value != null && value.isValid() ? value.getDouble() : def;
 	}
 
 	/**
@@ -945,15 +2253,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return double[] or null if the key couldn't get found.
 	 */
 	public double[] getDoubleArray(final String key) {
-		final String[] value = getArray(key);
-		if (value != null) {
-			final double[] result = new double[value.length];
-			for (int i = 0; i < value.length; i++) {
-				result[i] = Double.parseDouble(value[i]);
-			}
-			return result;
-		}
-		return null;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.DOUBLE_ARRAY, key);
+		return value != null ? ((double[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -969,12 +2270,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return double[]
 	 */
 	public double[] getDoubleArray(final String key, final double[] def) {
-		try {
-			final double[] result = getDoubleArray(key);
-			return result != null ? result : def;
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.DOUBLE_ARRAY, key);
+		return value != null && value.isValid() ? ((double[]) value.getArray()).clone() : def;
 	}
 
 	/**
@@ -1000,11 +2297,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return float-representation of value
 	 */
 	public float getFloat(final String key) {
-		final String value = getProperty(key);
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.FLOAT, key);
 		if (value == null) {
 			throw new NumberFormatException("Couldn't parse property to float.");
 		}
-		return Float.parseFloat(value);
+		return (float) value.getDouble();
 	}
 
 	/**
@@ -1018,11 +2315,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return float-representation of value
 	 */
 	public float getFloat(final String key, final float def) {
-		try {
-			return getFloat(key);
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.FLOAT, key);
+		return value != null && value.isValid() ? (float) value.getDouble() : def;
 	}
 
 	/**
@@ -1034,15 +2328,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return float[] or null if the key couldn't get found.
 	 */
 	public float[] getFloatArray(final String key) {
-		final String[] value = getArray(key);
-		if (value != null) {
-			final float[] result = new float[value.length];
-			for (int i = 0; i < value.length; i++) {
-				result[i] = Float.parseFloat(value[i]);
-			}
-			return result;
-		}
-		return null;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.FLOAT_ARRAY, key);
+		return value != null ? ((float[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -1058,12 +2345,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return float[]
 	 */
 	public float[] getFloatArray(final String key, final float[] def) {
-		try {
-			final float[] result = getFloatArray(key);
-			return result != null ? result : def;
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.FLOAT_ARRAY, key);
+		return value != null && value.isValid() ? ((float[]) value.getArray()).clone() : def;
 	}
 
 	/**
@@ -1074,11 +2357,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return int-representation of value
 	 */
 	public int getInt(final String key) {
-		final String value = getProperty(key);
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.INT, key);
 		if (value == null) {
 			throw new NumberFormatException("Couldn't parse property to int.");
 		}
-		return Integer.parseInt(value);
+		return (int) value.getLong();
 	}
 
 	/**
@@ -1093,11 +2376,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return int-representation of value
 	 */
 	public int getInt(final String key, final int def) {
-		try {
-			return getInt(key);
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.INT, key);
+		return value != null && value.isValid() ? (int) value.getLong() : def;
 	}
 
 	/**
@@ -1108,16 +2388,9 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 *            the key
 	 * @return String[] or null if the key couldn't get found.
 	 */
-	public int[] getIntArray(final String key) {
-		final String[] value = getArray(key);
-		if (value != null) {
-			final int[] result = new int[value.length];
-			for (int i = 0; i < value.length; i++) {
-				result[i] = Integer.parseInt(value[i]);
-			}
-			return result;
-		}
-		return null;
+	public int[] getIntArray(final String key) {
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.INT_ARRAY, key);
+		return value != null ? ((int[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -1133,31 +2406,46 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return int[]
 	 */
 	public int[] getIntArray(final String key, final int[] def) {
-		try {
-			final int[] result = getIntArray(key);
-			return result != null ? result : def;
-		} catch (final NumberFormatException nfe) {
-			return def;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.INT_ARRAY, key);
+		return value != null && value.isValid() ? ((int[]) value.getArray()).clone() : def;
+	}
+
+	private UnprefixedKeyIndex getKeyIndex() {
+		if (properties instanceof PrefixedProperties || !(prefixes instanceof DefaultPrefixConfig)) {
+			return null;
 		}
+		final DefaultPrefixConfig config = (DefaultPrefixConfig) prefixes;
+		final PrefixTrie trie = config.getPrefixTrie();
+		UnprefixedKeyIndex index = keyIndex;
+		if (index == null || index.getTrie() != trie) {
+			// built by readers, so more than one reader might build it at
+			// the same time. Each of them builds the same index.
+			index = UnprefixedKeyIndex.create(properties.keySet(), config.getPrefixes(), trie);
+			keyIndex = index;
+		}
+		return index;
 	}
 
 	private Map<Object, Object> getKeyMap(final boolean onlyStrings) {
 		final Map<Object, Object> result = new HashMap<Object, Object>();
-		for (@SuppressWarnings("rawtypes")
-		final Map.Entry entry : properties.entrySet()) {
-			if (String.class == entry.getKey().getClass()) {
-				if (isKeyValid(entry.getKey())) {
-					final Object unprefixedKey = getUnprefixedKey(entry.getKey());
+		final UnprefixedKeyIndex index = getKeyIndex();
+		if (index != null) {
+			return index.getKeyMap(prefixes.getPrefix(), onlyStrings, result);
+		}
+		for (final Object key : properties.keySet()) {
+			if (String.class == key.getClass()) {
+				if (isKeyValid(key)) {
+					final Object unprefixedKey = getUnprefixedKey(key);
 					if (result.containsKey(unprefixedKey)) {
-						if (!unprefixedKey.equals(entry.getKey())) {
-							result.put(unprefixedKey, entry.getKey());
+						if (!unprefixedKey.equals(key)) {
+							result.put(unprefixedKey, key);
 						}
 					} else {
-						result.put(unprefixedKey, entry.getKey());
+						result.put(unprefixedKey, key);
 					}
 				}
 			} else if (!onlyStrings) {
-				result.put(entry.getKey(), entry.getKey());
+				result.put(key, key);
 			}
 		}
 		return result;
@@ -1171,11 +2459,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return long-representation of value
 	 */
 	public long getLong(final String key) {
-		final String value = getProperty(key);
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.LONG, key);
 		if (value == null) {
 			throw new NumberFormatException("Couldn't parse property to long.");
 		}
-		return Long.parseLong(value);
+		return value.getLong();
 	}
 
 	/**
@@ -1189,11 +2477,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return long-representation of value
 	 */
 	public long getLong(final String key, final long def) {
-		try {
-			return getLong(key);
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.LONG, key);
+		return value != null && value.isValid() ? value.getLong() : def;
 	}
 
 	/**
@@ -1205,15 +2490,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return long[] or null if the key couldn't get found.
 	 */
 	public long[] getLongArray(final String key) {
-		final String[] value = getArray(key);
-		if (value != null) {
-			final long[] result = new long[value.length];
-			for (int i = 0; i < value.length; i++) {
-				result[i] = Long.parseLong(value[i]);
-			}
-			return result;
-		}
-		return null;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.LONG_ARRAY, key);
+		return value != null ? ((long[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -1229,37 +2507,12 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return long[]
 	 */
 	public long[] getLongArray(final String key, final long[] def) {
-		try {
-			final long[] result = getLongArray(key);
-			return result != null ? result : def;
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.LONG_ARRAY, key);
+		return value != null && value.isValid() ? ((long[]) value.getArray()).clone() : def;
 	}
 
 	private StringBuilder getPrefix(final StringBuilder sb, final boolean useLocalPrefixConfigurations) {
-		if (properties instanceof PrefixedProperties) {
-			((PrefixedProperties) properties).getPrefix(sb, useLocalPrefixConfigurations);
-		}
-
-		if (prefixes != null) {
-			if (!useLocalPrefixConfigurations) {
-				if (prefixes.getPrefix() != null) {
-					if (sb.length() > 0) {
-						sb.append(PrefixConfig.PREFIXDELIMITER);
-					}
-					sb.append(prefixes.getPrefix());
-				}
-			} else {
-				if (prefixes.getLocalPrefix() != null) {
-					if (sb.length() > 0) {
-						sb.append(PrefixConfig.PREFIXDELIMITER);
-					}
-					sb.append(prefixes.getLocalPrefix());
-				}
-			}
-		}
-		return sb;
+		return getCascadeResolver().getPrefix(sb, useLocalPrefixConfigurations);
 	}
 
 	/**
@@ -1323,7 +2576,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 		lock.readLock().lock();
 		try {
 			final boolean useLocalPrefixes = !mixDefaultAndLocalPrefixes && hasLocalPrefixConfigurations();
-			final Object object = get(key, useLocalPrefixes);
+			final Object object = getResolved(key, useLocalPrefixes);
 			if (object instanceof String) {
 				return (String) object;
 			} else {
@@ -1354,6 +2607,112 @@ public class PrefixedProperties extends Properties implements Serializable {
 		return result == null ? def : result;
 	}
 
+	/**
+	 * Gets the property with the local prefixes of the given
+	 * {@link PrefixSelector} instead of the ones of the current thread.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param selector
+	 *            the selector created by {@link #createPrefixSelector(String)}
+	 * @return the property
+	 * @see #get(Object, PrefixSelector)
+	 */
+	public String getProperty(final String key, final PrefixSelector selector) {
+		final Object object = get(key, selector);
+		if (object instanceof String) {
+			return (String) object;
+		} else {
+			if (object == null) {
+				return null;
+			}
+			throw new IllegalStateException("The value of " + key + " is of type: " + object.getClass().getName());
+		}
+	}
+
+	private Object getResolved(final Object key, final boolean useLocalPrefixes) {
+		final ResolvedValueCache cache = resolvedValueCache;
+		if (cache == null) {
+			return get(key, useLocalPrefixes);
+		}
+		final ResolvedValueCache.Node node = getCacheNode(cache, useLocalPrefixes);
+		Object result = cache.get(node, key);
+		if (result == ResolvedValueCache.MISSING) {
+			// the value is resolved and cached within the read lock, so it
+			// can't be cached after a concurrent modification has invalidated
+			// it.
+			lock.readLock().lock();
+			try {
+				result = get(key, useLocalPrefixes);
+				cache.put(node, key, result);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the number of lookups answered by the resolved value cache.
+	 * 
+	 * @return the number of cache hits or 0 if the cache is disabled
+	 * @see #setResolvedValueCacheEnabled(boolean)
+	 */
+	public long getResolvedValueCacheHits() {
+		final ResolvedValueCache cache = resolvedValueCache;
+		return cache != null ? cache.getHits() : 0;
+	}
+
+	/**
+	 * Gets the number of lookups which couldn't be answered by the resolved
+	 * value cache and had to resolve the prefixed key.
+	 * 
+	 * @return the number of cache misses or 0 if the cache is disabled
+	 * @see #setResolvedValueCacheEnabled(boolean)
+	 */
+	public long getResolvedValueCacheMisses() {
+		final ResolvedValueCache cache = resolvedValueCache;
+		return cache != null ? cache.getMisses() : 0;
+	}
+
+	private Object getSelected(final Object key, final PrefixSelector selector) {
+		final boolean useLocalPrefixes = !mixDefaultAndLocalPrefixes && selector.hasLocalPrefixes();
+		final CascadeResolver resolver = getCascadeResolver();
+		if (resolver.store instanceof PrefixedProperties) {
+			// the innermost properties resolve with their own local prefixes
+			return getSelectedByThread(key, selector, useLocalPrefixes);
+		}
+		final ResolvedValueCache cache = resolvedValueCache;
+		if (cache == null) {
+			return resolver.get(key, selector, useLocalPrefixes);
+		}
+		final ResolvedValueCache.Node node = getCacheNode(cache, selector, useLocalPrefixes);
+		Object result = cache.get(node, key);
+		if (result == ResolvedValueCache.MISSING) {
+			result = resolver.get(key, selector, useLocalPrefixes);
+			cache.put(node, key, result);
+		}
+		return result;
+	}
+
+	private Object getSelectedByThread(final Object key, final PrefixSelector selector,
+			final boolean useLocalPrefixes) {
+		final PrefixConfig[] configs = selector.getConfigs();
+		final String[] localPrefixes = selector.getLocalPrefixes();
+		final String[] previous = new String[configs.length];
+		for (int i = 0; i < configs.length; i++) {
+			previous[i] = configs[i].getLocalPrefix();
+			configs[i].setPrefix(localPrefixes[i]);
+		}
+		try {
+			return get(key, useLocalPrefixes);
+		} finally {
+			for (int i = 0; i < configs.length; i++) {
+				configs[i].setPrefix(previous[i]);
+			}
+		}
+	}
+
 	/**
 	 * Gets the prefixed key and parse it to an byte-value.
 	 * 
@@ -1362,11 +2721,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return byte-representation of value
 	 */
 	public short getShort(final String key) {
-		final String value = getProperty(key);
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.SHORT, key);
 		if (value == null) {
 			throw new NumberFormatException("Couldn't parse property to short.");
 		}
-		return Short.parseShort(value);
+		return (short) value.getLong();
 	}
 
 	/**
@@ -1380,11 +2739,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return short-representation of value
 	 */
 	public short getShort(final String key, final short def) {
-		try {
-			return getShort(key);
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.SHORT, key);
+		return value != null && value.isValid() ? (short) value.getLong() : def;
 	}
 
 	/**
@@ -1396,15 +2752,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return short[] or null if the key couldn't get found.
 	 */
 	public short[] getShortArray(final String key) {
-		final String[] value = getArray(key);
-		if (value != null) {
-			final short[] result = new short[value.length];
-			for (int i = 0; i < value.length; i++) {
-				result[i] = Short.parseShort(value[i]);
-			}
-			return result;
-		}
-		return null;
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.SHORT_ARRAY, key);
+		return value != null ? ((short[]) value.getArray()).clone() : null;
 	}
 
 	/**
@@ -1420,12 +2769,8 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return short[]
 	 */
 	public short[] getShortArray(final String key, final short[] def) {
-		try {
-			final short[] result = getShortArray(key);
-			return result != null ? result : def;
-		} catch (final NumberFormatException nfe) {
-			return def;
-		}
+		final TypedValueCache.Value value = getTypedValue(TypedValueCache.SHORT_ARRAY, key);
+		return value != null && value.isValid() ? ((short[]) value.getArray()).clone() : def;
 	}
 
 	private List<DoubleEntry<PrefixConfig, String>> getToSetPrefixMap(final List<String> prefixesList,
@@ -1460,42 +2805,24 @@ public class PrefixedProperties extends Properties implements Serializable {
 		return result;
 	}
 
-	@SuppressWarnings("unchecked")
-	private Map<String, Object> getTreeMap() {
-		final Map<Integer, PrefixConfig> configs = getPrefixConfigs();
-		final Map<String, Object> treeMap = new TreeMap<String, Object>();
-		final Properties props = getCompleteProperties();
-		String keyName = "";
-		String plainProperty = "";
-		for (final Enumeration<?> completition = props.propertyNames(); completition.hasMoreElements();) {
-			keyName = (String) completition.nextElement();
-			plainProperty = keyName;
-			Map<String, Object> propertyMap = treeMap;
-			for (int i = 0; i < configs.size(); i++) {
-				final PrefixConfig config = configs.get(i);
-				boolean found = false;
-				for (final Iterator<String> prefixIterator = config.getPrefixes().iterator(); prefixIterator.hasNext()
-						&& !found;) {
-					final String prefix = prefixIterator.next();
-					if (plainProperty.startsWith(prefix + PrefixConfig.PREFIXDELIMITER)) {
-						Object subMap = propertyMap.get(prefix);
-						if (subMap == null) {
-							subMap = new TreeMap<String, Object>();
-							propertyMap.put(prefix, subMap);
-						}
-						plainProperty = plainProperty.replaceFirst(prefix + PrefixConfig.PREFIXDELIMITER, "");
-						found = true;
-						if (subMap instanceof Map<?, ?>) {
-							propertyMap = (Map<String, Object>) subMap;
-						} else {
-							throw new IllegalStateException("Failed to render JSON-File.");
-						}
-					}
-				}
-			}
-			propertyMap.put((char) 1 + plainProperty, props.getProperty(keyName));
+	private TypedValueCache.Node getTypedCacheNode(final TypedValueCache cache, final boolean useLocalPrefixes) {
+		TypedValueCache.Node node = cache.getRoot();
+		Properties level = this;
+		while (level instanceof PrefixedProperties) {
+			final PrefixConfig config = ((PrefixedProperties) level).prefixes;
+			node = node.getChild(useLocalPrefixes ? config.getLocalPrefix() : config.getPrefix());
+			level = ((PrefixedProperties) level).properties;
+		}
+		return node;
+	}
+
+	private TypedValueCache.Value getTypedValue(final int type, final String key) {
+		final String value = getProperty(key);
+		if (value == null) {
+			return null;
 		}
-		return treeMap;
+		final TypedValueCache cache = typedValueCache;
+		return cache.get(getTypedCacheNode(cache, useLocalPrefixes()), type, key, value);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -1504,12 +2831,31 @@ public class PrefixedProperties extends Properties implements Serializable {
 			throw new IllegalArgumentException("A null key is not allowed.");
 		}
 		if (String.class == key.getClass()) {
-			String newKey = (String) key;
-			if (properties instanceof PrefixedProperties) {
-				newKey = (String) ((PrefixedProperties) properties).getUnprefixedKey(key);
+			return (T) getCascadeResolver().getUnprefixedKey((String) key);
+		}
+		return key;
+	}
+
+	/*
+	 * Gets the key under which the given key of the backing properties is
+	 * visible or null if it is hidden by the current prefix. A key stored
+	 * with and without the current prefix is only visible through the
+	 * prefixed one. The prefixed key must have a value; containsKey of the
+	 * backing properties is also true for a part of a longer key.
+	 */
+	private Object getVisibleKey(final Object storedKey) {
+		if (String.class != storedKey.getClass()) {
+			return storedKey;
+		}
+		if (!isKeyValid(storedKey)) {
+			return null;
+		}
+		final String key = getUnprefixedKey((String) storedKey);
+		if (key.equals(storedKey)) {
+			final String prefix = prefixes.getPrefix();
+			if (prefix != null && properties.get(prefix + PrefixConfig.PREFIXDELIMITER + key) != null) {
+				return null;
 			}
-			newKey = prefixes.getUnprefixedKey(newKey);
-			return (T) newKey;
 		}
 		return key;
 	}
@@ -1534,8 +2880,24 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * @return true/false
 	 */
 	public boolean hasLocalPrefixConfigurations() {
-		return prefixes.containsLocalPrefix() || ((properties instanceof PrefixedProperties)
-				&& ((PrefixedProperties) properties).hasLocalPrefixConfigurations());
+		return getCascadeResolver().hasLocalPrefixConfigurations();
+	}
+
+	/*
+	 * Checks if the given configs, innermost level first, are still the
+	 * prefix configs of this cascade.
+	 */
+	private boolean hasPrefixConfigs(final PrefixConfig[] configs) {
+		int i = configs.length - 1;
+		Properties level = this;
+		while (level instanceof PrefixedProperties) {
+			if (i < 0 || ((PrefixedProperties) level).prefixes != configs[i]) {
+				return false;
+			}
+			level = ((PrefixedProperties) level).properties;
+			i--;
+		}
+		return i == -1;
 	}
 
 	/*
@@ -1547,7 +2909,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public boolean isEmpty() {
 		lock.readLock().lock();
 		try {
-			return entrySet().isEmpty();
+			final UnprefixedKeyIndex index = getKeyIndex();
+			if (index != null) {
+				return index.size(prefixes.getPrefix()) == 0;
+			}
+			return !keySet().iterator().hasNext();
 		} finally {
 			lock.readLock().unlock();
 		}
@@ -1563,24 +2929,71 @@ public class PrefixedProperties extends Properties implements Serializable {
 		return true;
 	}
 
+	private void invalidateResolvedValues() {
+		final ResolvedValueCache cache = resolvedValueCache;
+		if (cache != null) {
+			cache.clear();
+		}
+		typedValueCache.clear();
+		final CascadeResolver resolver = cascadeResolver;
+		if (resolver != null) {
+			resolver.afterClear();
+		}
+		invalidateViews();
+	}
+
+	private void invalidateViews() {
+		final List<WeakReference<PrefixedPropertiesView>> list = views;
+		if (list != null) {
+			for (final WeakReference<PrefixedPropertiesView> reference : list) {
+				final PrefixedPropertiesView view = reference.get();
+				if (view == null) {
+					list.remove(reference);
+				} else {
+					view.invalidate();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the lookups of the cascade are compiled.
+	 * 
+	 * @return true/false
+	 * @see #setCompiledCascadeEnabled(boolean)
+	 */
+	public boolean isCompiledCascadeEnabled() {
+		return compiledCascade;
+	}
+
+	/**
+	 * Checks if loading skips the keys of inactive prefixes.
+	 * 
+	 * @return true/false
+	 * @see #setPrefixFilteredLoadingEnabled(boolean)
+	 */
+	public boolean isPrefixFilteredLoadingEnabled() {
+		return prefixFilteredLoading;
+	}
+
+	/**
+	 * Checks if the resolved value cache is enabled.
+	 * 
+	 * @return true/false
+	 * @see #setResolvedValueCacheEnabled(boolean)
+	 */
+	public boolean isResolvedValueCacheEnabled() {
+		return resolvedValueCache != null;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see java.util.Hashtable#keys()
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public PrefixedPropertiesEnumeration<Object> keys() {
-		lock.readLock().lock();
-		try {
-			@SuppressWarnings("rawtypes")
-			final Set keys = keySet();
-			@SuppressWarnings("rawtypes")
-			final Iterator it = keys.iterator();
-			return new PrefixedPropertiesEnumerationImpl<Object>(it, true);
-		} finally {
-			lock.readLock().unlock();
-		}
+		return new PrefixedPropertiesEnumerationImpl<Object>(keySet().iterator(), true);
 	}
 
 	/*
@@ -1588,10 +3001,9 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 * 
 	 * @see java.util.Hashtable#keySet()
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public Set<Object> keySet() {
-		return new HashSet(getKeyMap(false).keySet());
+		return new KeySetView();
 	}
 
 	/*
@@ -1633,7 +3045,14 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void load(final InputStream inStream) throws IOException {
 		lock.writeLock().lock();
 		try {
-			properties.load(inStream);
+			if (needsLoadBuffer()) {
+				final Properties loaded = new Properties();
+				loaded.load(inStream);
+				putLoaded(loaded);
+			} else {
+				properties.load(inStream);
+			}
+			invalidateResolvedValues();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -1648,12 +3067,92 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void load(final Reader reader) throws IOException {
 		lock.writeLock().lock();
 		try {
-			properties.load(reader);
+			if (needsLoadBuffer()) {
+				final Properties loaded = new Properties();
+				loaded.load(reader);
+				putLoaded(loaded);
+			} else {
+				properties.load(reader);
+			}
+			invalidateResolvedValues();
 		} finally {
 			lock.writeLock().unlock();
 		}
 	}
 
+	/**
+	 * Loads the entries of a file written by
+	 * {@link #storeToBinary(OutputStream)}. The stored prefix configs are
+	 * ignored, the entries are put at once into these properties. The
+	 * InputStream will not be closed.
+	 * 
+	 * @param is
+	 *            the InputStream
+	 * @throws IOException
+	 *             if the stream can't be read or is no valid binary file
+	 * @see #createFromBinary(InputStream)
+	 */
+	public void loadFromBinary(final InputStream is) throws IOException {
+		putAll(BinaryPropertiesFormat.read(is).getEntries());
+	}
+
+	/**
+	 * Loads a properties file encoded in ISO-8859-1 the same way as
+	 * {@link #load(InputStream)} does, but by parsing a memory mapping of the
+	 * file. See {@link #loadFromFile(File, String)}.
+	 * 
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void loadFromFile(final File file) throws IOException {
+		loadFromFile(file, "ISO-8859-1");
+	}
+
+	/**
+	 * Loads a properties file the same way as {@link #load(Reader)} does. For
+	 * ISO-8859-1 and UTF-8 the file is memory mapped and parsed directly from
+	 * the mapped bytes into the backing store, which is much faster for large
+	 * files. Other encodings and files larger than 2GB are read through a
+	 * reader.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param encoding
+	 *            the encoding of the file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void loadFromFile(final File file, final String encoding) throws IOException {
+		final Charset charset = Charset.forName(encoding);
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final long size = channel.size();
+			if (!MappedPropertiesParser.isSupported(charset) || size > Integer.MAX_VALUE) {
+				load(new InputStreamReader(in, charset));
+				return;
+			}
+			final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			lock.writeLock().lock();
+			try {
+				if (needsLoadBuffer()) {
+					final Properties loaded = new Properties();
+					MappedPropertiesParser.parse(buffer, charset, loaded);
+					putLoaded(loaded);
+				} else {
+					MappedPropertiesParser.parse(buffer, charset, properties);
+				}
+				invalidateResolvedValues();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
 	/**
 	 * Loads a json file. Reading from the given InputStream. The InputStream
 	 * itself will not be closed after usage.
@@ -1664,16 +3163,12 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void loadFromJSON(final InputStream is) throws IOException {
-		lock.writeLock().lock();
-		try {
-			final JsonFactory f = new JsonFactory();
-			final JsonParser jp = f.createParser(is);
-			configureJsonParser(jp);
-			if (jp.nextToken() == JsonToken.START_OBJECT) {
-				traverseJSON(jp, null);
-			}
-		} finally {
-			lock.writeLock().unlock();
+		// the parsed entries are put at once, so the lock is only held for
+		// putting them.
+		final JsonParser jp = JSON_FACTORY.createParser(is);
+		configureJsonParser(jp);
+		if (jp.nextToken() == JsonToken.START_OBJECT) {
+			traverseJSON(jp, null);
 		}
 	}
 
@@ -1687,16 +3182,12 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void loadFromJSON(final Reader reader) throws IOException {
-		lock.writeLock().lock();
-		try {
-			final JsonFactory f = new JsonFactory();
-			final JsonParser jp = f.createParser(reader);
-			configureJsonParser(jp);
-			if (jp.nextToken() == JsonToken.START_OBJECT) {
-				traverseJSON(jp, null);
-			}
-		} finally {
-			lock.writeLock().unlock();
+		// the parsed entries are put at once, so the lock is only held for
+		// putting them.
+		final JsonParser jp = JSON_FACTORY.createParser(reader);
+		configureJsonParser(jp);
+		if (jp.nextToken() == JsonToken.START_OBJECT) {
+			traverseJSON(jp, null);
 		}
 	}
 	
@@ -1710,16 +3201,12 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void loadFromYAML(final InputStream is) throws IOException {
-		lock.writeLock().lock();
-		try {
-			final YAMLFactory f = new YAMLFactory();
-			final YAMLParser jp = f.createParser(is);
-			configureJsonParser(jp);
-			if (jp.nextToken() == JsonToken.START_OBJECT) {
-				traverseJSON(jp, null);
-			}
-		} finally {
-			lock.writeLock().unlock();
+		// the parsed entries are put at once, so the lock is only held for
+		// putting them.
+		final YAMLParser jp = YAML_FACTORY.createParser(is);
+		configureJsonParser(jp);
+		if (jp.nextToken() == JsonToken.START_OBJECT) {
+			traverseJSON(jp, null);
 		}
 	}
 	
@@ -1733,16 +3220,12 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void loadFromYAML(final Reader reader) throws IOException {
-		lock.writeLock().lock();
-		try {
-			final YAMLFactory f = new YAMLFactory();
-			final JsonParser jp = f.createParser(reader);
-			configureJsonParser(jp);
-			if (jp.nextToken() == JsonToken.START_OBJECT) {
-				traverseJSON(jp, null);
-			}
-		} finally {
-			lock.writeLock().unlock();
+		// the parsed entries are put at once, so the lock is only held for
+		// putting them.
+		final JsonParser jp = YAML_FACTORY.createParser(reader);
+		configureJsonParser(jp);
+		if (jp.nextToken() == JsonToken.START_OBJECT) {
+			traverseJSON(jp, null);
 		}
 	}
 
@@ -1755,30 +3238,36 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void loadFromXML(final InputStream in) throws IOException {
 		lock.writeLock().lock();
 		try {
-			properties.loadFromXML(in);
+			if (needsLoadBuffer()) {
+				final Properties loaded = new Properties();
+				loaded.loadFromXML(in);
+				putLoaded(loaded);
+			} else {
+				properties.loadFromXML(in);
+			}
+			invalidateResolvedValues();
 		} finally {
 			lock.writeLock().unlock();
 		}
 	}
 
+	/*
+	 * Loads have to go through a buffer and putLoaded to filter, index,
+	 * journal or notify the loaded keys. Otherwise they load into the backing
+	 * store directly.
+	 */
+	private boolean needsLoadBuffer() {
+		return keyIndex != null || journal != null || changeDispatcher != null || prefixFilteredLoading;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see java.util.Properties#propertyNames()
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public PrefixedPropertiesEnumeration<?> propertyNames() {
-		lock.readLock().lock();
-		try {
-			final Set result = new HashSet();
-			for (final Object key : getKeyMap(false).keySet()) {
-				result.add(getUnprefixedKey(key));
-			}
-			return new PrefixedPropertiesEnumerationImpl(result.iterator(), true);
-		} finally {
-			lock.readLock().unlock();
-		}
+		return keys();
 	}
 
 	/*
@@ -1790,12 +3279,48 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public Object put(final Object key, final Object value) {
 		lock.writeLock().lock();
 		try {
-			return properties.put(key, value);
+			final Object result = properties.put(key, value);
+			afterPut(key);
+			final PropertiesJournal changes = journal;
+			if (changes != null) {
+				changes.put(key, value);
+			}
+			final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher != null) {
+				dispatcher.put(key, value);
+			}
+			return result;
 		} finally {
 			lock.writeLock().unlock();
 		}
 	}
 
+	private void putLoaded(final Properties loaded) {
+		final PrefixLoadFilter filter = createLoadFilter();
+		if (filter != null) {
+			for (final Iterator<Object> keys = loaded.keySet().iterator(); keys.hasNext();) {
+				if (!filter.accepts(keys.next())) {
+					keys.remove();
+				}
+			}
+		}
+		properties.putAll(loaded);
+		final UnprefixedKeyIndex index = keyIndex;
+		if (index != null) {
+			for (final Object key : loaded.keySet()) {
+				index.add(key);
+			}
+		}
+		final PropertiesJournal changes = journal;
+		if (changes != null) {
+			changes.putAll(loaded);
+		}
+		final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+		if (dispatcher != null) {
+			dispatcher.putAll(loaded);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1806,18 +3331,125 @@ public class PrefixedProperties extends Properties implements Serializable {
 		lock.writeLock().lock();
 		try {
 			properties.putAll(t);
+			if (t.size() > BULK_PUT_THRESHOLD) {
+				afterPutAll(t.keySet());
+			} else {
+				for (final Object key : t.keySet()) {
+					afterPut(key);
+				}
+			}
+			final PropertiesJournal changes = journal;
+			if (changes != null) {
+				changes.putAll(t);
+			}
+			final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher != null) {
+				dispatcher.putAll(t);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void readObject(final ObjectInputStream ois) throws ClassNotFoundException, IOException {
+		prefixes = (PrefixConfig) ois.readObject();
+		properties = (Properties) ois.readObject();
+		mixDefaultAndLocalPrefixes = ois.readBoolean();
+		lock = new ReentrantReadWriteLock();
+		typedValueCache = new TypedValueCache();
+	}
+
+	/**
+	 * Replaces all entries by the entries of the given properties, but only
+	 * writes the entries which have actually been added, changed or removed.
+	 * <br>
+	 * The entries are compared while readers can still read these
+	 * properties. Only the delta is applied, so the resolved values of
+	 * unchanged keys stay cached and views, the journal and the callers only
+	 * see what has changed. The delta is checked again before it is applied:
+	 * keys modified concurrently since they have been compared keep their
+	 * concurrent value and are left out of the returned delta, as are all
+	 * keys not part of the delta. If prefix filtered loading is enabled,
+	 * the keys of inactive prefixes are skipped. The given properties stay
+	 * unchanged.
+	 * 
+	 * @param loaded
+	 *            the properties holding the new entries
+	 * @return the applied delta
+	 * @see #replaceWith(PrefixedProperties)
+	 */
+	public PropertiesDelta reloadFrom(final PrefixedProperties loaded) {
+		if (loaded == this) {
+			throw new IllegalArgumentException("The properties can't be reloaded from themselves.");
+		}
+		final Map<Object, Object> fresh = new HashMap<Object, Object>(loaded.getCompleteProperties());
+		final PrefixLoadFilter filter = createLoadFilter();
+		if (filter != null) {
+			for (final Iterator<Object> keys = fresh.keySet().iterator(); keys.hasNext();) {
+				if (!filter.accepts(keys.next())) {
+					keys.remove();
+				}
+			}
+		}
+		final Map<Object, Object> added = new HashMap<Object, Object>();
+		final Map<Object, Object> changed = new HashMap<Object, Object>();
+		final Map<Object, Object> removed = new HashMap<Object, Object>();
+		/* the compared values of the changed keys */
+		final Map<Object, Object> previous = new HashMap<Object, Object>();
+		lock.readLock().lock();
+		try {
+			final Properties current = getCompleteProperties();
+			for (final Entry<Object, Object> entry : fresh.entrySet()) {
+				final Object value = current.get(entry.getKey());
+				if (value == null) {
+					added.put(entry.getKey(), entry.getValue());
+				} else if (!value.equals(entry.getValue())) {
+					changed.put(entry.getKey(), entry.getValue());
+					previous.put(entry.getKey(), value);
+				}
+			}
+			for (final Entry<Object, Object> entry : current.entrySet()) {
+				if (!fresh.containsKey(entry.getKey())) {
+					removed.put(entry.getKey(), entry.getValue());
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+			return new PropertiesDelta(added, changed, removed);
+		}
+		lock.writeLock().lock();
+		try {
+			// drops the keys written since they have been compared
+			final Properties current = getCompleteProperties();
+			for (final Iterator<Object> keys = added.keySet().iterator(); keys.hasNext();) {
+				if (current.get(keys.next()) != null) {
+					keys.remove();
+				}
+			}
+			for (final Iterator<Object> keys = changed.keySet().iterator(); keys.hasNext();) {
+				final Object key = keys.next();
+				if (!previous.get(key).equals(current.get(key))) {
+					keys.remove();
+				}
+			}
+			for (final Iterator<Entry<Object, Object>> entries = removed.entrySet().iterator(); entries.hasNext();) {
+				final Entry<Object, Object> entry = entries.next();
+				if (!entry.getValue().equals(current.get(entry.getKey()))) {
+					entries.remove();
+				}
+			}
+			final PropertiesDelta delta = new PropertiesDelta(added, changed, removed);
+			if (!delta.isEmpty()) {
+				applyDelta(delta);
+			}
+			return delta;
 		} finally {
 			lock.writeLock().unlock();
 		}
 	}
 
-	private void readObject(final ObjectInputStream ois) throws ClassNotFoundException, IOException {
-		prefixes = (PrefixConfig) ois.readObject();
-		properties = (Properties) ois.readObject();
-		mixDefaultAndLocalPrefixes = ois.readBoolean();
-		lock = new ReentrantReadWriteLock();
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1825,14 +3457,20 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 */
 	@Override
 	public Object remove(final Object key) {
+		return remove(key, new ArrayList<Object>(1));
+	}
+
+	private Object remove(final Object key, final Collection<Object> removedKeys) {
 		lock.writeLock().lock();
 		try {
 			final boolean useLocalPrefixes = !mixDefaultAndLocalPrefixes && hasLocalPrefixConfigurations();
-			final Object someKey = getPrefixedKey(key, useLocalPrefixes);
-			Object result = properties.remove(someKey);
+			final Collection<Object> storedKeys = new ArrayList<Object>(1);
+			Object result = removeFromStore(getPrefixedKey(key, useLocalPrefixes), storedKeys);
 			if (result == null) {
-				result = properties.remove(key);
+				result = removeFromStore(key, storedKeys);
 			}
+			afterRemove(key, storedKeys);
+			removedKeys.addAll(storedKeys);
 			return result;
 		} finally {
 			lock.writeLock().unlock();
@@ -1850,31 +3488,169 @@ public class PrefixedProperties extends Properties implements Serializable {
 		lock.writeLock().lock();
 		try {
 			final Map<Object, Object> result = new HashMap<Object, Object>();
+			final Collection<Object> storedKeys = new ArrayList<Object>();
 			Object resultObj;
 			if (containsValidPrefix(key)) {
-				resultObj = properties.remove(key);
+				resultObj = removeFromStore(key, storedKeys);
 				if (resultObj != null) {
 					result.put(key, resultObj);
 				}
 			} else {
 				for (final String prefix : getPrefixes()) {
 					final String pkey = prefix + PrefixConfig.PREFIXDELIMITER + key;
-					resultObj = properties.remove(pkey);
+					resultObj = removeFromStore(pkey, storedKeys);
 					if (resultObj != null) {
 						result.put(pkey, resultObj);
 					}
 				}
-				resultObj = properties.remove(key);
+				resultObj = removeFromStore(key, storedKeys);
 				if (resultObj != null) {
 					result.put(key, resultObj);
 				}
 			}
+			afterRemove(key, storedKeys);
 			return result;
 		} finally {
 			lock.writeLock().unlock();
 		}
 	}
 
+	/**
+	 * Resolves all entries of the given view.
+	 * 
+	 * @param view
+	 *            the view
+	 * @return the resolved values
+	 */
+	PrefixedPropertiesView.Tables resolveView(final PrefixedPropertiesView view) {
+		if (!hasPrefixConfigs(view.getSelector().getConfigs())) {
+			// the prefix configs have been replaced since the view was
+			// created
+			view.setSelector(createPrefixSelector(view.getSelector().getPrefix()));
+		}
+		lock.readLock().lock();
+		try {
+			synchronized (view) {
+				PrefixedPropertiesView.Tables tables = view.getTablesIfResolved();
+				if (tables == null) {
+					tables = new PrefixedPropertiesView.Tables();
+					for (final Object storedKey : getCompleteProperties().keySet()) {
+						resolveView(view, tables, storedKey, false);
+					}
+					view.setTables(tables);
+				}
+				return tables;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Resolves every key of the view which might be answered by the given
+	 * stored key.
+	 */
+	private void resolveView(final PrefixedPropertiesView view, final PrefixedPropertiesView.Tables tables,
+			final Object storedKey, final boolean update) {
+		if (String.class == storedKey.getClass()) {
+			// a key can be asked for with any number of its leading prefixes
+			// left out, so each of these suffixes is resolved.
+			final String stringKey = (String) storedKey;
+			int index = 0;
+			do {
+				final String key = index == 0 ? stringKey : stringKey.substring(index);
+				if (update || !tables.resolved.containsKey(key)) {
+					resolveViewKey(view, tables, key);
+				}
+				index = stringKey.indexOf(PrefixConfig.PREFIXDELIMITER, index) + 1;
+			} while (index > 0);
+		} else {
+			resolveViewKey(view, tables, storedKey);
+		}
+	}
+
+	private void resolveViewKey(final PrefixedPropertiesView view, final PrefixedPropertiesView.Tables tables,
+			final Object key) {
+		final PrefixSelector selector = view.getSelector();
+		final boolean useLocalPrefixes = !mixDefaultAndLocalPrefixes && selector.hasLocalPrefixes();
+		final CascadeResolver resolver = getCascadeResolver();
+		final Object value = resolver.store instanceof PrefixedProperties
+				? getSelectedByThread(key, selector, useLocalPrefixes)
+				: resolver.get(key, 0, selector, useLocalPrefixes);
+		if (value == null) {
+			tables.resolved.remove(key);
+			tables.entries.remove(key);
+		} else {
+			tables.resolved.put(key, value);
+			if (view.isVisible(key)) {
+				tables.entries.put(key, value);
+			}
+		}
+	}
+
+	/**
+	 * Removes the given listener from all keys and key prefixes it has been
+	 * added for.
+	 * 
+	 * @param listener
+	 *            the listener
+	 * @return true, if the listener was added before
+	 */
+	public boolean removeChangeListener(final PropertiesChangeListener listener) {
+		lock.writeLock().lock();
+		try {
+			final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher == null || !dispatcher.removeListener(listener)) {
+				return false;
+			}
+			if (dispatcher.isEmpty()) {
+				// pending changes are still delivered
+				changeDispatcher = null;
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Removes the given key of this level from the backing store. The keys of
+	 * the innermost store the entry has been removed with are added to the
+	 * given keys, as the inner levels of a cascade resolve their own
+	 * prefixes.
+	 */
+	private Object removeFromStore(final Object key, final Collection<Object> storedKeys) {
+		if (properties.getClass() == PrefixedProperties.class) {
+			return ((PrefixedProperties) properties).remove(key, storedKeys);
+		}
+		final Object result = properties.remove(key);
+		if (result != null) {
+			storedKeys.add(key);
+		}
+		return result;
+	}
+
+	/*
+	 * Removes the given key of the innermost backing store as it is, without
+	 * resolving the prefixes of the inner levels.
+	 */
+	private void removeStoredKey(final Object storedKey) {
+		if (properties.getClass() == PrefixedProperties.class) {
+			final PrefixedProperties inner = (PrefixedProperties) properties;
+			inner.lock.writeLock().lock();
+			try {
+				if (inner.getCompleteProperties().containsKey(storedKey)) {
+					inner.removeStoredKey(storedKey);
+					inner.afterRemove(storedKey, Collections.singleton(storedKey));
+				}
+			} finally {
+				inner.lock.writeLock().unlock();
+			}
+		} else {
+			properties.remove(storedKey);
+		}
+	}
+
 	/**
 	 * Removes the property. That matches the given key. (It has the same
 	 * function like {@link java.util.Properties#remove(Object)}
@@ -1886,6 +3662,53 @@ public class PrefixedProperties extends Properties implements Serializable {
 		remove(key);
 	}
 
+	/**
+	 * Replaces all entries by the entries of the given properties at once.<br>
+	 * The backing store of the given properties is taken over without copying
+	 * them, the given properties are empty afterwards. This allows to load a
+	 * new configuration into separate properties without blocking readers of
+	 * these properties and to swap it in at once. Readers either see the old
+	 * or the new entries, but never a mix of them. If prefix filtered loading
+	 * is enabled, the keys of inactive prefixes are skipped.
+	 * 
+	 * @param loaded
+	 *            the properties holding the new entries
+	 * @see #setPrefixFilteredLoadingEnabled(boolean)
+	 */
+	public void replaceWith(final PrefixedProperties loaded) {
+		if (loaded == this) {
+			throw new IllegalArgumentException("The properties can't be replaced by themselves.");
+		}
+		final Properties fresh = loaded.getCompleteProperties();
+		loaded.swapStore(new TrieMap<Object>().asProperties());
+		final PrefixLoadFilter filter = createLoadFilter();
+		if (filter != null) {
+			for (final Object key : fresh.keySet()) {
+				if (!filter.accepts(key)) {
+					fresh.remove(key);
+				}
+			}
+		}
+		lock.writeLock().lock();
+		try {
+			final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher != null) {
+				dispatcher.removeAll(getCompleteProperties().keySet());
+			}
+			swapStore(fresh);
+			final PropertiesJournal changes = journal;
+			if (changes != null) {
+				changes.clear();
+				changes.putAll(fresh);
+			}
+			if (dispatcher != null) {
+				dispatcher.putAll(fresh);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1902,6 +3725,51 @@ public class PrefixedProperties extends Properties implements Serializable {
 		}
 	}
 
+	/**
+	 * Enables or disables compiled lookups.<br>
+	 * If enabled, the cascade compiles a table of all resolvable keys for each
+	 * combination of prefixes on first use. A lookup then costs one probe of
+	 * that table, regardless of the depth of the cascade. The tables are kept
+	 * up to date by modifications made through this instance. This trades
+	 * memory for lookup speed and is meant for configurations which are
+	 * mostly read.
+	 * 
+	 * @param enabled
+	 *            true to compile the lookups
+	 */
+	public void setCompiledCascadeEnabled(final boolean enabled) {
+		lock.writeLock().lock();
+		try {
+			compiledCascade = enabled;
+			cascadeResolver = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the executor which delivers the changes to the listeners. By
+	 * default they are delivered by a background thread shared by all
+	 * properties. Only one batch of changes is delivered at a time, so a pool
+	 * doesn't reorder them.
+	 * 
+	 * @param executor
+	 *            the executor or null for the shared background thread
+	 * @see #addChangeListener(PropertiesChangeListener)
+	 */
+	public void setChangeListenerExecutor(final Executor executor) {
+		lock.writeLock().lock();
+		try {
+			changeListenerExecutor = executor;
+			final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher != null) {
+				dispatcher.setExecutor(executor);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
 	/**
 	 * Sets the default prefix.
 	 * 
@@ -1914,6 +3782,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 			final String myPrefix = checkAndConvertPrefix(prefix);
 			final List<String> prefixList = split(myPrefix);
 			setDefaultPrefixes(prefixList);
+			invalidateResolvedValues();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -1943,19 +3812,27 @@ public class PrefixedProperties extends Properties implements Serializable {
 	/**
 	 * Sets the local Prefix. The local Prefix is Thread depended and will only
 	 * affect the current thread. You can have a combination of default and
-	 * local prefix.
+	 * local prefix.<br>
+	 * How a prefix string is distributed over the levels of a cascade is
+	 * remembered, so setting a prefix string again only touches the
+	 * {@link ThreadLocal}s of the levels without taking any lock.
 	 * 
 	 * @param configuredPrefix
 	 *            the new configuredPrefix
 	 */
 	public void setLocalPrefix(final String configuredPrefix) {
-		lock.writeLock().lock();
-		try {
-			final String myPrefix = checkAndConvertPrefix(configuredPrefix);
-			final List<String> prefixList = split(myPrefix);
-			setPrefixes(prefixList);
-		} finally {
-			lock.writeLock().unlock();
+		final String myPrefix = checkAndConvertPrefix(configuredPrefix);
+		final CascadeResolver resolver = getCascadeResolver();
+		if (!resolver.applyLocalPrefix(myPrefix)) {
+			final PrefixTrie[] tries = resolver.getPrefixTries();
+			lock.writeLock().lock();
+			try {
+				final List<String> prefixList = split(myPrefix);
+				setPrefixes(prefixList);
+			} finally {
+				lock.writeLock().unlock();
+			}
+			resolver.recordLocalPrefix(myPrefix, tries);
 		}
 	}
 
@@ -1969,6 +3846,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 		if (properties instanceof PrefixedProperties) {
 			((PrefixedProperties) properties).setMixDefaultAndLocalPrefixSettings(value);
 		}
+		invalidateViews();
 	}
 
 	/**
@@ -1985,6 +3863,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 			} else {
 				prefixes = config;
 			}
+			invalidateResolvedValues();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -1996,6 +3875,10 @@ public class PrefixedProperties extends Properties implements Serializable {
 			final List<DoubleEntry<PrefixConfig, String>> prefixesToSet = getToSetPrefixMap(prefixesList, configs);
 			final List<PrefixConfig> prefixesToSetList = new ArrayList<PrefixConfig>();
 			for (final DoubleEntry<PrefixConfig, String> entry : prefixesToSet) {
+				if (entry.getOne().isDynamic() && !entry.getOne().containsValidPrefix(entry.getTwo())) {
+					// a new prefix changes which keys are treated as prefixed
+					invalidateResolvedValues();
+				}
 				entry.getOne().setPrefix(entry.getTwo());
 				prefixesToSetList.add(entry.getOne());
 			}
@@ -2011,6 +3894,25 @@ public class PrefixedProperties extends Properties implements Serializable {
 		}
 	}
 
+	/**
+	 * Enables or disables prefix filtered loading.<br>
+	 * If enabled, {@link #load(InputStream)}, {@link #load(Reader)},
+	 * {@link #loadFromFile(File, String)}, {@link #loadFromXML(InputStream)},
+	 * {@link #loadFromJSON(InputStream)} and {@link #loadFromYAML(InputStream)}
+	 * skip every key which starts with a prefix of a level other than the
+	 * default or local prefix of that level, as such a key can never be
+	 * selected. In JSON and YAML files the whole subtree of such a prefix is
+	 * skipped without being parsed into keys. This saves load time and memory
+	 * for files holding the properties of all environments, but the skipped
+	 * keys are missing if the prefixes are switched after loading.
+	 * 
+	 * @param enabled
+	 *            true to skip the keys of inactive prefixes
+	 */
+	public void setPrefixFilteredLoadingEnabled(final boolean enabled) {
+		prefixFilteredLoading = enabled;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -2020,7 +3922,44 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public Object setProperty(final String key, final String value) {
 		lock.writeLock().lock();
 		try {
-			return properties.setProperty(key, value);
+			final Object result = properties.setProperty(key, value);
+			afterPut(key);
+			final PropertiesJournal changes = journal;
+			if (changes != null) {
+				changes.put(key, value);
+			}
+			final PropertiesChangeDispatcher dispatcher = changeDispatcher;
+			if (dispatcher != null) {
+				dispatcher.put(key, value);
+			}
+			return result;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Enables or disables the resolved value cache.<br>
+	 * If enabled, {@link #get(Object)} and {@link #getProperty(String)}
+	 * remember the resolved value for the active prefixes of each cascade
+	 * level. Repeated lookups of the same key are answered without building
+	 * prefixed keys. The cache is invalidated by modifications made through
+	 * this instance and by changing the default prefix or the
+	 * {@link PrefixConfig}. Modifications made directly on a wrapped
+	 * {@link Properties} or on a {@link PrefixConfig} are not seen by the
+	 * cache. The cache is not serialized.
+	 * 
+	 * @param enabled
+	 *            true to enable the cache
+	 */
+	public void setResolvedValueCacheEnabled(final boolean enabled) {
+		lock.writeLock().lock();
+		try {
+			if (!enabled) {
+				resolvedValueCache = null;
+			} else if (resolvedValueCache == null) {
+				resolvedValueCache = new ResolvedValueCache();
+			}
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -2035,12 +3974,36 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public int size() {
 		lock.readLock().lock();
 		try {
+			final UnprefixedKeyIndex index = getKeyIndex();
+			if (index != null) {
+				return index.size(prefixes.getPrefix());
+			}
 			return getKeyMap(false).size();
 		} finally {
 			lock.readLock().unlock();
 		}
 	}
 
+	/**
+	 * Creates a read-only snapshot of these properties.<br>
+	 * The snapshot resolves all prefixes once with the default and local
+	 * prefixes of the calling thread. Afterwards every lookup of the snapshot
+	 * is answered without any locking and without resolving prefixes again.
+	 * Changes of these properties are not visible in the snapshot and all
+	 * modifying methods of the snapshot throw an
+	 * {@link UnsupportedOperationException}.
+	 * 
+	 * @return the read-only snapshot
+	 */
+	public PrefixedProperties snapshot() {
+		lock.readLock().lock();
+		try {
+			return new FrozenPrefixedProperties(this);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	private List<String> split(final String myPrefix) {
 		List<String> prefixList;
 		if (myPrefix.indexOf(PrefixConfig.PREFIXDELIMITER) != -1) {
@@ -2110,6 +4073,45 @@ public class PrefixedProperties extends Properties implements Serializable {
 		}
 	}
 
+	/**
+	 * Writes the complete properties as snapshot of the given journal while
+	 * no modification can happen.
+	 * 
+	 * @param changes
+	 *            the journal
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void storeSnapshot(final PropertiesJournal changes) throws IOException {
+		lock.readLock().lock();
+		try {
+			changes.writeSnapshot(getPrefixConfigs().values(), getCompleteProperties());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stores these properties in a compact binary format which can be loaded
+	 * by {@link #loadFromBinary(InputStream)} or
+	 * {@link #createFromBinary(InputStream)} without parsing. Besides the
+	 * entries the prefix configs of the cascade are stored. The format is
+	 * versioned and checksummed. The OutputStream will not be closed.
+	 * 
+	 * @param os
+	 *            the OutputStream
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void storeToBinary(final OutputStream os) throws IOException {
+		lock.readLock().lock();
+		try {
+			BinaryPropertiesFormat.write(os, getPrefixConfigs().values(), getCompleteProperties());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Store to json.
 	 * 
@@ -2121,13 +4123,12 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void storeToJSON(final OutputStream os) throws IOException {
 		lock.readLock().lock();
 		try {
-			final JsonFactory f = new JsonFactory();
-			final JsonGenerator generator = f.createGenerator(os, JsonEncoding.UTF8);
+			final JsonGenerator generator = JSON_FACTORY.createGenerator(os, JsonEncoding.UTF8);
 //			generator.configure(Feature.QUOTE_FIELD_NAMES, false);
 			generator.useDefaultPrettyPrinter();
 
 			generator.writeStartObject();
-			writeJsonOrYaml(generator, getTreeMap());
+			writeJsonOrYaml(generator);
 			generator.writeEndObject();
 			generator.flush();
 		} finally {
@@ -2153,8 +4154,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void storeToJSON(final OutputStream os, final String header, final String encoding) throws IOException {
 		lock.readLock().lock();
 		try {
-			final JsonFactory f = new JsonFactory();
-			final JsonGenerator generator = f.createGenerator(new OutputStreamWriter(os, Charset.forName(encoding)));
+			final JsonGenerator generator = JSON_FACTORY.createGenerator(new OutputStreamWriter(os, Charset.forName(encoding)));
 			generator.useDefaultPrettyPrinter();
 
 			generator.writeStartObject();
@@ -2164,7 +4164,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 				generator.writeRaw("*/");
 			}
 
-			writeJsonOrYaml(generator, getTreeMap());
+			writeJsonOrYaml(generator);
 			generator.writeEndObject();
 			generator.flush();
 		} finally {
@@ -2183,12 +4183,11 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void storeToYAML(final OutputStream os) throws IOException {
 		lock.readLock().lock();
 		try {
-			final YAMLFactory f = new YAMLFactory();
-			final YAMLGenerator generator = f.createGenerator(os, JsonEncoding.UTF8);
+			final YAMLGenerator generator = YAML_FACTORY.createGenerator(os, JsonEncoding.UTF8);
 			generator.useDefaultPrettyPrinter();
 
 			generator.writeStartObject();
-			writeJsonOrYaml(generator, getTreeMap());
+			writeJsonOrYaml(generator);
 			generator.writeEndObject();
 			generator.flush();
 		} finally {
@@ -2214,8 +4213,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 	public void storeToYAML(final OutputStream os, final String header, final String encoding) throws IOException {
 		lock.readLock().lock();
 		try {
-			final YAMLFactory f = new YAMLFactory();
-			final JsonGenerator generator = f.createGenerator(new OutputStreamWriter(os, Charset.forName(encoding)));
+			final JsonGenerator generator = YAML_FACTORY.createGenerator(new OutputStreamWriter(os, Charset.forName(encoding)));
 			generator.useDefaultPrettyPrinter();
 
 			generator.writeStartObject();
@@ -2225,7 +4223,7 @@ public class PrefixedProperties extends Properties implements Serializable {
 				generator.writeRaw("*/");
 			}
 
-			writeJsonOrYaml(generator, getTreeMap());
+			writeJsonOrYaml(generator);
 			generator.writeEndObject();
 			generator.flush();
 		} finally {
@@ -2284,6 +4282,22 @@ public class PrefixedProperties extends Properties implements Serializable {
 		}
 	}
 
+	private void swapStore(final Properties fresh) {
+		lock.writeLock().lock();
+		try {
+			if (properties instanceof PrefixedProperties) {
+				// the innermost level of the cascade holds the entries
+				((PrefixedProperties) properties).swapStore(fresh);
+			} else {
+				properties = fresh;
+			}
+			invalidateResolvedValues();
+			keyIndex = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -2300,17 +4314,77 @@ public class PrefixedProperties extends Properties implements Serializable {
 	}
 
 	protected void traverseJSON(final JsonParser jp, final String prefix) throws IOException {
+		final Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+		final StringBuilder path = new StringBuilder();
+		final PrefixLoadFilter filter = createLoadFilter();
+		int state = 0;
+		if (prefix != null) {
+			path.append(prefix);
+			if (filter != null) {
+				state = filter.next(state, prefix, false);
+			}
+		}
+		if (state == PrefixLoadFilter.REJECTED) {
+			jp.skipChildren();
+		} else {
+			traverseJSON(jp, path, prefix == null, filter, state, entries);
+		}
+		putAll(entries);
+	}
+
+	private void traverseJSON(final JsonParser jp, final StringBuilder path, final boolean root,
+			final PrefixLoadFilter filter, final int state, final Map<Object, Object> entries) throws IOException {
+		final int length = path.length();
 		while (jp.nextToken() != JsonToken.END_OBJECT) {
-			final String fieldname = jp.getText();
-			if (jp.nextToken() == JsonToken.START_OBJECT) {
-				traverseJSON(jp, prefix != null ? prefix + PrefixConfig.PREFIXDELIMITER + fieldname : fieldname);
+			final String name = jp.getText();
+			final boolean object = jp.nextToken() == JsonToken.START_OBJECT;
+			final int next = filter == null ? state : filter.next(state, name, !object);
+			if (next == PrefixLoadFilter.REJECTED) {
+				// an inactive prefix, nothing below it can be selected
+				jp.skipChildren();
+				continue;
+			}
+			if (!root) {
+				path.append(PrefixConfig.PREFIXDELIMITER);
+			}
+			path.append(name);
+			if (object) {
+				traverseJSON(jp, path, false, filter, next, entries);
 			} else {
-				final String text = jp.getText();
-				put(prefix != null ? prefix + PrefixConfig.PREFIXDELIMITER + fieldname : fieldname, text);
+				entries.put(path.toString(), jp.getText());
+			}
+			path.setLength(length);
+		}
+	}
+
+	private void updateViews(final Object storedKey) {
+		final List<WeakReference<PrefixedPropertiesView>> list = views;
+		if (list != null) {
+			for (final WeakReference<PrefixedPropertiesView> reference : list) {
+				final PrefixedPropertiesView view = reference.get();
+				if (view == null) {
+					list.remove(reference);
+				} else {
+					final PrefixedPropertiesView.Tables tables = view.getTablesIfResolved();
+					if (tables != null) {
+						// resolves the parts of the put or removed key again
+						resolveView(view, tables, storedKey, true);
+					}
+				}
 			}
 		}
 	}
 
+	/**
+	 * Checks if the local prefixes have to be used for lookups of the current
+	 * thread.
+	 * 
+	 * @return true/false
+	 */
+	boolean useLocalPrefixes() {
+		return !mixDefaultAndLocalPrefixes && hasLocalPrefixConfigurations();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -2318,31 +4392,156 @@ public class PrefixedProperties extends Properties implements Serializable {
 	 */
 	@Override
 	public Collection<Object> values() {
-		lock.readLock().lock();
+		return new ValuesView();
+	}
+
+	/**
+	 * Creates a read-only view of these properties with the given fixed
+	 * prefix. The values of the view are resolved in advance, so a lookup is a
+	 * single hash probe. The view follows the changes of these properties as
+	 * long as it is referenced.
+	 * 
+	 * @param prefix
+	 *            the prefix, in the same form as for
+	 *            {@link #setLocalPrefix(String)}
+	 * @return the view
+	 * @throws IllegalArgumentException
+	 *             if the prefix doesn't match the prefix configs
+	 */
+	public PrefixedPropertiesView view(final String prefix) {
+		final PrefixedPropertiesView view = new PrefixedPropertiesView(this, createPrefixSelector(prefix));
+		lock.writeLock().lock();
 		try {
-			final List<Object> result = new LinkedList<Object>();
-			final boolean useLocalPrefixes = !mixDefaultAndLocalPrefixes && hasLocalPrefixConfigurations();
-			for (final Object key : getKeyMap(false).values()) {
-				result.add(get(key, useLocalPrefixes));
+			List<WeakReference<PrefixedPropertiesView>> list = views;
+			if (list == null) {
+				list = new CopyOnWriteArrayList<WeakReference<PrefixedPropertiesView>>();
+				views = list;
 			}
-			return result;
+			list.add(new WeakReference<PrefixedPropertiesView>(view));
 		} finally {
-			lock.readLock().unlock();
+			lock.writeLock().unlock();
 		}
+		return view;
 	}
 
-	@SuppressWarnings("unchecked")
-	protected void writeJsonOrYaml(final JsonGenerator generator, final Map<String, Object> treeMap) throws IOException {
-		if (treeMap != null) {
-			for (final Map.Entry<String, Object> entry : treeMap.entrySet()) {
-				if (entry.getValue() instanceof String) {
-					generator.writeStringField(entry.getKey().substring(1), (String) entry.getValue());
-				} else if (entry.getValue() instanceof Map<?, ?>) {
-					generator.writeObjectFieldStart(entry.getKey());
-					writeJsonOrYaml(generator, (Map<String, Object>) entry.getValue());
-					generator.writeEndObject();
+	/**
+	 * Wraps the given executor, so every task runs with the local prefixes the
+	 * submitting thread had when it passed the task.<br>
+	 * The returned executor can also be used for the asynchronous stages of a
+	 * CompletableFuture.
+	 * 
+	 * @param executor
+	 *            the executor
+	 * @return the wrapped executor
+	 */
+	public Executor wrapExecutor(final Executor executor) {
+		return new LocalPrefixPropagation.PropagatingExecutor(this, executor);
+	}
+
+	/**
+	 * Wraps the given executor service, so every task runs with the local
+	 * prefixes the submitting thread had when it passed the task. Shutting
+	 * down the returned service shuts down the given one.
+	 * 
+	 * @param executorService
+	 *            the executor service
+	 * @return the wrapped executor service
+	 */
+	public ExecutorService wrapExecutorService(final ExecutorService executorService) {
+		return new LocalPrefixPropagation.PropagatingExecutorService(this, executorService);
+	}
+
+	/**
+	 * Wraps the given task so it runs with the local prefixes the current
+	 * thread has now. The thread running the task gets these prefixes set
+	 * before and its own prefixes restored after the task.
+	 * 
+	 * @param <V>
+	 *            the result type
+	 * @param task
+	 *            the task
+	 * @return the wrapped task
+	 */
+	public <V> Callable<V> wrapTask(final Callable<V> task) {
+		return captureLocalPrefixes().wrap(task);
+	}
+
+	/**
+	 * Wraps the given task so it runs with the local prefixes the current
+	 * thread has now. The thread running the task gets these prefixes set
+	 * before and its own prefixes restored after the task.
+	 * 
+	 * @param task
+	 *            the task
+	 * @return the wrapped task
+	 */
+	public Runnable wrapTask(final Runnable task) {
+		return captureLocalPrefixes().wrap(task);
+	}
+
+	/**
+	 * Writes the complete properties grouped by their prefixes. The keys are
+	 * split into their groups and sorted in one list, so all keys below a
+	 * prefix follow each other and each group is opened and closed on the
+	 * generator as it is reached, without a map per group. At each level the
+	 * plain values are written before the nested groups.
+	 * 
+	 * @param generator
+	 *            the generator
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeJsonOrYaml(final JsonGenerator generator) throws IOException {
+		final Collection<PrefixConfig> configs = getPrefixConfigs().values();
+		final String[][] levelPrefixes = new String[configs.size()][];
+		int level = 0;
+		for (final PrefixConfig config : configs) {
+			levelPrefixes[level++] = config.getPrefixes().toArray(new String[0]);
+		}
+		final Properties props = getCompleteProperties();
+		final List<GroupedEntry> entries = new ArrayList<GroupedEntry>(props.size());
+		for (final Map.Entry<Object, Object> entry : props.entrySet()) {
+			final Object key = entry.getKey();
+			if (String.class != key.getClass() || !(entry.getValue() instanceof String)) {
+				continue;
+			}
+			final String stringKey = (String) key;
+			final String[] path = new String[levelPrefixes.length];
+			int offset = 0;
+			int pathLength = 0;
+			for (final String[] prefixes : levelPrefixes) {
+				for (final String prefix : prefixes) {
+					final int end = offset + prefix.length();
+					if (end < stringKey.length() && stringKey.charAt(end) == PrefixConfig.PREFIXDELIMITER
+							&& stringKey.startsWith(prefix, offset)) {
+						path[pathLength++] = prefix;
+						offset = end + 1;
+						break;
+					}
 				}
 			}
+			entries.add(new GroupedEntry(path, pathLength, stringKey.substring(offset), (String) entry.getValue()));
+		}
+		Collections.sort(entries);
+
+		final String[] openGroups = new String[levelPrefixes.length];
+		int depth = 0;
+		for (final GroupedEntry entry : entries) {
+			int common = 0;
+			while (common < depth && common < entry.pathLength && openGroups[common].equals(entry.path[common])) {
+				common++;
+			}
+			for (; depth > common; depth--) {
+				generator.writeEndObject();
+			}
+			for (; depth < entry.pathLength; depth++) {
+				generator.writeObjectFieldStart(entry.path[depth]);
+				openGroups[depth] = entry.path[depth];
+			}
+			generator.writeStringField(entry.name, entry.value);
+		}
+		for (; depth > 0; depth--) {
+			generator.writeEndObject();
 		}
 	}
 
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads {@link PrefixedProperties} when the files they were loaded from
+ * change.<br>
+ * The files are checked for a changed modification time or length once per
+ * poll interval by a background thread. A reload starts once the files
+ * haven't changed for the quiet period, so a burst of writes leads to one
+ * reload only. The files are loaded into separate properties by the
+ * {@link Loader}, while the reloaded properties are still readable without
+ * blocking, and are swapped in at once by
+ * {@link PrefixedProperties#replaceWith(PrefixedProperties)}. If loading
+ * fails, the properties stay as they are until the files change again.<br>
+ * With delta reloading enabled only the added, changed and removed entries are
+ * written by {@link PrefixedProperties#reloadFrom(PrefixedProperties)}, so
+ * the unchanged entries keep their resolved values.
+ * 
+ * <pre>
+ * final File file = new File(&quot;config.json&quot;);
+ * final PrefixedProperties properties = new PrefixedProperties(new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+ * properties.loadFromJSON(new FileInputStream(file));
+ * final PrefixedPropertiesReloader reloader = new PrefixedPropertiesReloader(properties,
+ * 		Collections.singletonList(file));
+ * reloader.start();
+ * ...
+ * reloader.close();
+ * </pre>
+ */
+public final class PrefixedPropertiesReloader implements Closeable {
+
+	/**
+	 * Loads the complete content of the reloaded properties.
+	 */
+	public interface Loader {
+
+		/**
+		 * Loads all entries into the given empty properties.
+		 * 
+		 * @param properties
+		 *            the properties to load into
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 */
+		void load(PrefixedProperties properties) throws IOException;
+	}
+
+	/** The default interval in milliseconds between two checks of the files. */
+	public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+	/** The default time in milliseconds the files must not change before reloading. */
+	public static final long DEFAULT_QUIET_PERIOD = 500;
+
+	/**
+	 * Creates a loader for the given files. Each file is loaded by its
+	 * extension: .json and .yaml or .yml files as JSON and YAML, .xml files as
+	 * XML properties, .ppb files as binary properties and all others as
+	 * properties files with the given encoding.
+	 * 
+	 * @param files
+	 *            the files in the order to load them
+	 * @param encoding
+	 *            the encoding of the properties files
+	 * @return the loader
+	 */
+	public static Loader createFileLoader(final Collection<File> files, final String encoding) {
+		final List<File> fileList = new ArrayList<File>(files);
+		return new Loader() {
+
+			@Override
+			public void load(final PrefixedProperties properties) throws IOException {
+				for (final File file : fileList) {
+					final String name = file.getName().toLowerCase();
+					if (!name.endsWith(".json") && !name.endsWith(".yaml") && !name.endsWith(".yml")
+							&& !name.endsWith(".xml") && !name.endsWith(".ppb")) {
+						properties.loadFromFile(file, encoding);
+						continue;
+					}
+					final InputStream in = new BufferedInputStream(new FileInputStream(file));
+					try {
+						if (name.endsWith(".json")) {
+							properties.loadFromJSON(in);
+						} else if (name.endsWith(".xml")) {
+							properties.loadFromXML(in);
+						} else if (name.endsWith(".ppb")) {
+							properties.loadFromBinary(in);
+						} else {
+							properties.loadFromYAML(in);
+						}
+					} finally {
+						in.close();
+					}
+				}
+			}
+		};
+	}
+
+	private final PrefixedProperties properties;
+
+	private final File[] files;
+
+	private final Loader loader;
+
+	private final long pollInterval;
+
+	private final long quietPeriod;
+
+	/* the state of the files at the last reload, guarded by this */
+	private long[] loadedState;
+
+	/* the state of the files seen by the last poll, only used by the poller */
+	private long[] polledState;
+
+	private long polledAt;
+
+	private volatile int reloadCount;
+
+	private volatile IOException lastFailure;
+
+	private volatile boolean deltaReloading;
+
+	private volatile PropertiesDelta lastDelta;
+
+	private ScheduledExecutorService poller;
+
+	/**
+	 * Instantiates a new reloader which loads the given properties files
+	 * encoded in ISO-8859-1, JSON, YAML, XML or binary files by their
+	 * extension, with the default poll interval and quiet period.
+	 * 
+	 * @param properties
+	 *            the properties to reload
+	 * @param files
+	 *            the files to watch and to load
+	 * @see #createFileLoader(Collection, String)
+	 */
+	public PrefixedPropertiesReloader(final PrefixedProperties properties, final Collection<File> files) {
+		this(properties, files, createFileLoader(files, "ISO-8859-1"), DEFAULT_POLL_INTERVAL, DEFAULT_QUIET_PERIOD);
+	}
+
+	/**
+	 * Instantiates a new reloader. The current state of the files is taken as
+	 * already loaded.
+	 * 
+	 * @param properties
+	 *            the properties to reload
+	 * @param files
+	 *            the files to watch
+	 * @param loader
+	 *            the loader of the complete content of the properties
+	 * @param pollInterval
+	 *            the interval in milliseconds between two checks of the files
+	 * @param quietPeriod
+	 *            the time in milliseconds the files must not change before
+	 *            reloading
+	 */
+	public PrefixedPropertiesReloader(final PrefixedProperties properties, final Collection<File> files,
+			final Loader loader, final long pollInterval, final long quietPeriod) {
+		if (pollInterval <= 0) {
+			throw new IllegalArgumentException("The poll interval must be positive.");
+		}
+		this.properties = properties;
+		this.files = files.toArray(new File[files.size()]);
+		this.loader = loader;
+		this.pollInterval = pollInterval;
+		this.quietPeriod = quietPeriod;
+		loadedState = getState();
+		polledState = loadedState;
+	}
+
+	/**
+	 * Stops watching the files. A running reload is finished.
+	 */
+	public synchronized void close() {
+		if (poller != null) {
+			poller.shutdown();
+			poller = null;
+		}
+	}
+
+	/**
+	 * Gets the failure of the last reload.
+	 * 
+	 * @return the failure or null if the last reload succeeded
+	 */
+	public IOException getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Gets the delta applied by the last successful reload.
+	 * 
+	 * @return the delta or null if delta reloading is disabled or nothing has
+	 *         been reloaded yet
+	 */
+	public PropertiesDelta getLastDelta() {
+		return lastDelta;
+	}
+
+	/**
+	 * Gets the number of successful reloads.
+	 * 
+	 * @return the reload count
+	 */
+	public int getReloadCount() {
+		return reloadCount;
+	}
+
+	private long[] getState() {
+		final long[] state = new long[files.length * 2];
+		for (int i = 0; i < files.length; i++) {
+			// both are 0 for a missing file
+			state[i * 2] = files[i].lastModified();
+			state[i * 2 + 1] = files[i].length();
+		}
+		return state;
+	}
+
+	private void poll() {
+		final long[] state = getState();
+		final long now = System.currentTimeMillis();
+		if (!Arrays.equals(state, polledState)) {
+			// still changing, wait until the files are quiet
+			polledState = state;
+			polledAt = now;
+			return;
+		}
+		final boolean changed;
+		synchronized (this) {
+			changed = !Arrays.equals(state, loadedState);
+		}
+		if (changed && now - polledAt >= quietPeriod) {
+			try {
+				reload(state);
+			} catch (final IOException e) {
+				// kept by reload, the next change of the files is reloaded
+			} catch (final RuntimeException e) {
+				lastFailure = new IOException("Failed to reload the properties", e);
+			}
+		}
+	}
+
+	/**
+	 * Reloads the properties at once, regardless of whether the files have
+	 * changed.
+	 * 
+	 * @throws IOException
+	 *             if the files can't be loaded. The properties stay unchanged.
+	 */
+	public void reload() throws IOException {
+		reload(getState());
+	}
+
+	private synchronized void reload(final long[] state) throws IOException {
+		// the state is taken before loading, so changes while loading are
+		// reloaded again.
+		loadedState = state;
+		final PrefixedProperties loaded = new PrefixedProperties();
+		try {
+			loader.load(loaded);
+		} catch (final IOException e) {
+			lastFailure = e;
+			throw e;
+		}
+		if (deltaReloading) {
+			lastDelta = properties.reloadFrom(loaded);
+		} else {
+			properties.replaceWith(loaded);
+			lastDelta = null;
+		}
+		lastFailure = null;
+		reloadCount++;
+	}
+
+	/**
+	 * Sets whether only the delta between the current and the reloaded
+	 * entries is applied instead of replacing all entries. Disabled by
+	 * default.
+	 * 
+	 * @param enabled
+	 *            true to apply only the delta
+	 * @see PrefixedProperties#reloadFrom(PrefixedProperties)
+	 */
+	public void setDeltaReloadingEnabled(final boolean enabled) {
+		deltaReloading = enabled;
+	}
+
+	/**
+	 * Starts watching the files by a background thread.
+	 */
+	public synchronized void start() {
+		if (poller != null) {
+			return;
+		}
+		poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "prefixedproperties-reloader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		poller.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				poll();
+			}
+		}, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * A read-only view of a {@link PrefixedProperties} with a fixed prefix created
+ * by {@link PrefixedProperties#view(String)}.<br>
+ * Every key which could be answered with the prefix of the view is stored with
+ * its resolved value, so a lookup is a single hash probe without any lock. The
+ * view follows the changes of the {@link PrefixedProperties} it has been
+ * created from: a changed key is resolved again and a change of the prefix
+ * configuration lets the view be resolved again completely on its next use.
+ * <br>
+ * All mutating methods throw an {@link UnsupportedOperationException}.
+ */
+public final class PrefixedPropertiesView extends Properties {
+
+	/*
+	 * The resolved values of the view. They are replaced as a whole if the
+	 * view has to be resolved again.
+	 */
+	static final class Tables {
+
+		/* every key which can be resolved mapped to its resolved value. */
+		final ConcurrentMap<Object, Object> resolved = new ConcurrentHashMap<Object, Object>();
+
+		/* the visible (unprefixed) entries of the view. */
+		final ConcurrentMap<Object, Object> entries = new ConcurrentHashMap<Object, Object>();
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String READ_ONLY_MESSAGE = "This PrefixedPropertiesView is read-only.";
+
+	private final PrefixedProperties properties;
+
+	private volatile PrefixSelector selector;
+
+	private transient volatile Tables tables;
+
+	/**
+	 * Instantiates a new view.
+	 * 
+	 * @param properties
+	 *            the properties to view
+	 * @param selector
+	 *            the selector of the prefix
+	 */
+	PrefixedPropertiesView(final PrefixedProperties properties, final PrefixSelector selector) {
+		this.properties = properties;
+		this.selector = selector;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#clear()
+	 */
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/**
+	 * Creates a detached copy of the current entries of this view.
+	 * 
+	 * @return the copy
+	 */
+	@Override
+	public Properties clone() {
+		final Properties copy = new Properties();
+		copy.putAll(getTables().entries);
+		return copy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(final Object value) {
+		return getTables().entries.containsValue(value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) {
+		return get(key) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#containsValue(java.lang.Object)
+	 */
+	@Override
+	public boolean containsValue(final Object value) {
+		return contains(value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#elements()
+	 */
+	@Override
+	public Enumeration<Object> elements() {
+		return Collections.enumeration(getTables().entries.values());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#entrySet()
+	 */
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		return Collections.unmodifiableMap(getTables().entries).entrySet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		return obj == this || obj instanceof Map && getTables().entries.equals(obj);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#get(java.lang.Object)
+	 */
+	@Override
+	public Object get(final Object key) {
+		return getTables().resolved.get(key);
+	}
+
+	/**
+	 * Gets the prefix of this view.
+	 * 
+	 * @return the prefix
+	 */
+	public String getPrefix() {
+		return selector.getPrefix();
+	}
+
+	/**
+	 * Gets the {@link PrefixedProperties} this view has been created from.
+	 * 
+	 * @return the prefixed properties
+	 */
+	public PrefixedProperties getPrefixedProperties() {
+		return properties;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Properties#getProperty(java.lang.String)
+	 */
+	@Override
+	public String getProperty(final String key) {
+		final Object value = get(key);
+		return value instanceof String ? (String) value : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Properties#getProperty(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String getProperty(final String key, final String defaultValue) {
+		final String value = getProperty(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Gets the selector the entries are resolved with.
+	 * 
+	 * @return the selector
+	 */
+	PrefixSelector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Gets the resolved values, resolving them if necessary.
+	 * 
+	 * @return the tables
+	 */
+	Tables getTables() {
+		final Tables result = tables;
+		return result != null ? result : properties.resolveView(this);
+	}
+
+	/**
+	 * Gets the resolved values without resolving them.
+	 * 
+	 * @return the tables or null if the view has to be resolved
+	 */
+	Tables getTablesIfResolved() {
+		return tables;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return getTables().entries.hashCode();
+	}
+
+	/**
+	 * Lets the view be resolved again on its next use.
+	 */
+	void invalidate() {
+		tables = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return getTables().entries.isEmpty();
+	}
+
+	/**
+	 * Checks if the given key is visible in this view, i.e. it doesn't start
+	 * with a prefix of any level.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return true, if successful
+	 */
+	boolean isVisible(final Object key) {
+		if (String.class == key.getClass()) {
+			for (final PrefixConfig config : selector.getConfigs()) {
+				if (config != null && config.containsValidPrefix((String) key)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#keys()
+	 */
+	@Override
+	public Enumeration<Object> keys() {
+		return Collections.enumeration(getTables().entries.keySet());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#keySet()
+	 */
+	@Override
+	public Set<Object> keySet() {
+		return Collections.unmodifiableSet(getTables().entries.keySet());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Properties#load(java.io.InputStream)
+	 */
+	@Override
+	public void load(final InputStream inStream) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Properties#load(java.io.Reader)
+	 */
+	@Override
+	public void load(final Reader reader) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Properties#loadFromXML(java.io.InputStream)
+	 */
+	@Override
+	public void loadFromXML(final InputStream in) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Properties#propertyNames()
+	 */
+	@Override
+	public Enumeration<?> propertyNames() {
+		return keys();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public Object put(final Object key, final Object value) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#putAll(java.util.Map)
+	 */
+	@Override
+	public void putAll(final Map<? extends Object, ? extends Object> t) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#remove(java.lang.Object)
+	 */
+	@Override
+	public Object remove(final Object key) {
+		throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+	}
+
+	/**
+	 * Replaces the selector after the prefix configs have been changed.
+	 * 
+	 * @param selector
+	 *            the new selector
+	 */
+	void setSelector(final PrefixSelector selector) {
+		this.selector = selector;
+	}
+
+	/**
+	 * Sets the resolved values.
+	 * 
+	 * @param tables
+	 *            the tables
+	 */
+	void setTables(final Tables tables) {
+		this.tables = tables;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#size()
+	 */
+	@Override
+	public int size() {
+		return getTables().entries.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Properties#stringPropertyNames()
+	 */
+	@Override
+	public Set<String> stringPropertyNames() {
+		final Set<String> result = new HashSet<String>();
+		for (final Entry<Object, Object> entry : getTables().entries.entrySet()) {
+			if (String.class == entry.getKey().getClass() && entry.getValue() instanceof String) {
+				result.add((String) entry.getKey());
+			}
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#toString()
+	 */
+	@Override
+	public String toString() {
+		return getTables().entries.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#values()
+	 */
+	@Override
+	public Collection<Object> values() {
+		return Collections.unmodifiableCollection(getTables().entries.values());
+	}
+
+	/*
+	 * A view is serialized as a detached copy of its entries.
+	 */
+	private Object writeReplace() {
+		return clone();
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * Collects the changes of {@link PrefixedProperties} and delivers them in
+ * batches to the registered {@link PropertiesChangeListener}s.<br>
+ * A write only records the changed key in the pending batch, which is
+ * scheduled on the executor once. The batch is matched against an index of
+ * the exact keys and the key prefixes the listeners are registered for,
+ * which is rebuilt whenever a listener is added or removed. A changed key
+ * matches in its stored form and in every form without its leading
+ * prefixes, so a listener for <code>db.pool.</code> hears about
+ * <code>liv.db.pool.size</code> as well. Only one batch is delivered at a
+ * time, so the listeners see the changes in order.
+ */
+final class PropertiesChangeDispatcher implements Runnable {
+
+	/*
+	 * The listeners by what they are registered for. Never modified once
+	 * built.
+	 */
+	private static final class Index {
+
+		private final List<PropertiesChangeListener> all = new ArrayList<PropertiesChangeListener>();
+
+		private final Map<String, List<PropertiesChangeListener>> keys = new HashMap<String, List<PropertiesChangeListener>>();
+
+		private final Map<String, List<PropertiesChangeListener>> prefixes = new HashMap<String, List<PropertiesChangeListener>>();
+
+		/* the distinct lengths of the prefixes, ascending */
+		private int[] prefixLengths;
+
+		private Index(final List<Subscription> subscriptions) {
+			final Set<Integer> lengths = new TreeSet<Integer>();
+			for (final Subscription subscription : subscriptions) {
+				if (subscription.pattern == null) {
+					all.add(subscription.listener);
+				} else if (subscription.prefix) {
+					add(prefixes, subscription);
+					lengths.add(subscription.pattern.length());
+				} else {
+					add(keys, subscription);
+				}
+			}
+			prefixLengths = new int[lengths.size()];
+			int i = 0;
+			for (final Integer length : lengths) {
+				prefixLengths[i++] = length;
+			}
+		}
+
+		private void add(final Map<String, List<PropertiesChangeListener>> listeners, final Subscription subscription) {
+			List<PropertiesChangeListener> listenersOfPattern = listeners.get(subscription.pattern);
+			if (listenersOfPattern == null) {
+				listenersOfPattern = new ArrayList<PropertiesChangeListener>(2);
+				listeners.put(subscription.pattern, listenersOfPattern);
+			}
+			listenersOfPattern.add(subscription.listener);
+		}
+
+		private void match(final String key, final Collection<PropertiesChangeListener> matches) {
+			final List<PropertiesChangeListener> listenersOfKey = keys.get(key);
+			if (listenersOfKey != null) {
+				matches.addAll(listenersOfKey);
+			}
+			for (final int length : prefixLengths) {
+				if (length > key.length()) {
+					break;
+				}
+				final List<PropertiesChangeListener> listenersOfPrefix = prefixes.get(key.substring(0, length));
+				if (listenersOfPrefix != null) {
+					matches.addAll(listenersOfPrefix);
+				}
+			}
+		}
+	}
+
+	/*
+	 * A listener registered for all keys (pattern is null), an exact key or a
+	 * key prefix.
+	 */
+	private static final class Subscription {
+
+		private final String pattern;
+
+		private final boolean prefix;
+
+		private final PropertiesChangeListener listener;
+
+		private Subscription(final String pattern, final boolean prefix, final PropertiesChangeListener listener) {
+			this.pattern = pattern;
+			this.prefix = prefix;
+			this.listener = listener;
+		}
+	}
+
+	/* the executor used if none has been set, created on first use */
+	private static final class DefaultExecutor {
+
+		private static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "prefixedproperties-listeners");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private final Collection<PrefixConfig> configs;
+
+	private volatile Executor executor;
+
+	/* guarded by this */
+	private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+	private volatile Index index = new Index(Collections.<Subscription> emptyList());
+
+	/* guarded by this */
+	private Map<Object, Object> pending = new LinkedHashMap<Object, Object>();
+
+	/* true while a batch is scheduled or delivered, guarded by this */
+	private boolean scheduled;
+
+	/**
+	 * Instantiates a new dispatcher.
+	 * 
+	 * @param configs
+	 *            the prefix configs of the properties, whose prefixes are
+	 *            stripped from the changed keys for matching
+	 * @param executor
+	 *            the executor delivering the batches or null for a shared
+	 *            background thread
+	 */
+	PropertiesChangeDispatcher(final Collection<PrefixConfig> configs, final Executor executor) {
+		this.configs = configs;
+		this.executor = executor;
+	}
+
+	/**
+	 * Adds the given listener.
+	 * 
+	 * @param pattern
+	 *            the key or key prefix or null for all keys
+	 * @param prefix
+	 *            true, if the pattern is a key prefix
+	 * @param listener
+	 *            the listener
+	 */
+	synchronized void addListener(final String pattern, final boolean prefix, final PropertiesChangeListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("The listener must not be null.");
+		}
+		subscriptions.add(new Subscription(pattern, prefix, listener));
+		index = new Index(subscriptions);
+	}
+
+	private void deliver(final Map<Object, Object> batch) {
+		final Index matching = index;
+		final Set<String> knownPrefixes = new HashSet<String>();
+		for (final PrefixConfig config : configs) {
+			knownPrefixes.addAll(config.getPrefixes());
+		}
+		// the entries of each listener in the order of the batch
+		final Map<PropertiesChangeListener, Map<Object, Object>> changes = new IdentityHashMap<PropertiesChangeListener, Map<Object, Object>>();
+		final Set<PropertiesChangeListener> matches = Collections
+				.newSetFromMap(new IdentityHashMap<PropertiesChangeListener, Boolean>());
+		for (final Entry<Object, Object> entry : batch.entrySet()) {
+			matches.addAll(matching.all);
+			if (entry.getKey() instanceof String) {
+				final String key = (String) entry.getKey();
+				matching.match(key, matches);
+				int start = 0;
+				int end = key.indexOf(PrefixConfig.PREFIXDELIMITER);
+				while (end >= 0 && knownPrefixes.contains(key.substring(start, end))) {
+					start = end + 1;
+					matching.match(key.substring(start), matches);
+					end = key.indexOf(PrefixConfig.PREFIXDELIMITER, start);
+				}
+			}
+			for (final PropertiesChangeListener listener : matches) {
+				Map<Object, Object> changesOfListener = changes.get(listener);
+				if (changesOfListener == null) {
+					changesOfListener = new LinkedHashMap<Object, Object>();
+					changes.put(listener, changesOfListener);
+				}
+				changesOfListener.put(entry.getKey(), entry.getValue());
+			}
+			matches.clear();
+		}
+		for (final Entry<PropertiesChangeListener, Map<Object, Object>> entry : changes.entrySet()) {
+			try {
+				entry.getKey().propertiesChanged(Collections.unmodifiableMap(entry.getValue()));
+			} catch (final RuntimeException e) {
+				// a failing listener must not keep the others from being
+				// notified
+				final Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	/**
+	 * Checks if no listener is registered.
+	 * 
+	 * @return true, if no listener is registered
+	 */
+	synchronized boolean isEmpty() {
+		return subscriptions.isEmpty();
+	}
+
+	/**
+	 * Records a changed entry.
+	 * 
+	 * @param key
+	 *            the key of the backing store
+	 * @param value
+	 *            the new value
+	 */
+	void put(final Object key, final Object value) {
+		final boolean schedule;
+		synchronized (this) {
+			pending.put(key, value);
+			schedule = !scheduled;
+			scheduled = true;
+		}
+		if (schedule) {
+			schedule();
+		}
+	}
+
+	/**
+	 * Records the changed entries.
+	 * 
+	 * @param entries
+	 *            the entries of the backing store with their new values
+	 */
+	void putAll(final Map<? extends Object, ? extends Object> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		final boolean schedule;
+		synchronized (this) {
+			pending.putAll(entries);
+			schedule = !scheduled;
+			scheduled = true;
+		}
+		if (schedule) {
+			schedule();
+		}
+	}
+
+	/**
+	 * Records a removed key.
+	 * 
+	 * @param key
+	 *            the key of the backing store
+	 */
+	void remove(final Object key) {
+		put(key, null);
+	}
+
+	/**
+	 * Records the removed keys.
+	 * 
+	 * @param keys
+	 *            the keys of the backing store
+	 */
+	void removeAll(final Collection<? extends Object> keys) {
+		if (keys.isEmpty()) {
+			return;
+		}
+		final boolean schedule;
+		synchronized (this) {
+			for (final Object key : keys) {
+				pending.put(key, null);
+			}
+			schedule = !scheduled;
+			scheduled = true;
+		}
+		if (schedule) {
+			schedule();
+		}
+	}
+
+	/**
+	 * Removes all registrations of the given listener.
+	 * 
+	 * @param listener
+	 *            the listener
+	 * @return true, if the listener was registered
+	 */
+	synchronized boolean removeListener(final PropertiesChangeListener listener) {
+		boolean removed = false;
+		for (int i = subscriptions.size() - 1; i >= 0; i--) {
+			if (subscriptions.get(i).listener == listener) {
+				subscriptions.remove(i);
+				removed = true;
+			}
+		}
+		if (removed) {
+			index = new Index(subscriptions);
+		}
+		return removed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		boolean done = false;
+		try {
+			while (!done) {
+				Map<Object, Object> batch = null;
+				synchronized (this) {
+					if (pending.isEmpty()) {
+						scheduled = false;
+						done = true;
+					} else {
+						batch = pending;
+						pending = new LinkedHashMap<Object, Object>();
+					}
+				}
+				if (batch != null) {
+					deliver(batch);
+				}
+			}
+		} finally {
+			if (!done) {
+				// the next change schedules the remaining batch again
+				synchronized (this) {
+					scheduled = false;
+				}
+			}
+		}
+	}
+
+	private void schedule() {
+		final Executor current = executor;
+		try {
+			(current != null ? current : DefaultExecutor.INSTANCE).execute(this);
+		} catch (final RejectedExecutionException e) {
+			// the pending changes are delivered with the next change
+			synchronized (this) {
+				scheduled = false;
+			}
+		}
+	}
+
+	/**
+	 * Sets the executor delivering the batches.
+	 * 
+	 * @param executor
+	 *            the executor or null for a shared background thread
+	 */
+	void setExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.Map;
+
+/**
+ * Listens for changes of the entries of {@link PrefixedProperties}.<br>
+ * The changes are collected while they are written and delivered in batches
+ * by the executor of the properties, so a listener is called once for a
+ * burst of writes instead of once per write.
+ * 
+ * @see PrefixedProperties#addChangeListener(PropertiesChangeListener)
+ * @see PrefixedProperties#addChangeListener(String, PropertiesChangeListener)
+ * @see PrefixedProperties#addPrefixChangeListener(String,
+ *      PropertiesChangeListener)
+ */
+public interface PropertiesChangeListener {
+
+	/**
+	 * Called with the changed entries the listener is registered for.
+	 * 
+	 * @param changes
+	 *            the changed keys of the backing store in the order they
+	 *            have been changed first, mapped to their last value or to
+	 *            null if they have been removed. The map is unmodifiable.
+	 */
+	void propertiesChanged(Map<Object, Object> changes);
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * The entries which have been added, changed or removed by
+ * {@link PrefixedProperties#reloadFrom(PrefixedProperties)}. The keys are
+ * the keys of the backing store including their prefixes.
+ * {@link #forPrefix(String)} narrows the delta down to the keys of a single
+ * prefix.
+ */
+public final class PropertiesDelta {
+
+	private final Map<Object, Object> added;
+
+	private final Map<Object, Object> changed;
+
+	private final Map<Object, Object> removed;
+
+	PropertiesDelta(final Map<Object, Object> added, final Map<Object, Object> changed,
+			final Map<Object, Object> removed) {
+		this.added = Collections.unmodifiableMap(added);
+		this.changed = Collections.unmodifiableMap(changed);
+		this.removed = Collections.unmodifiableMap(removed);
+	}
+
+	private static Map<Object, Object> filter(final Map<Object, Object> entries, final String prefix) {
+		final Map<Object, Object> result = new HashMap<Object, Object>();
+		for (final Entry<Object, Object> entry : entries.entrySet()) {
+			final Object key = entry.getKey();
+			if (key instanceof String && ((String) key).length() > prefix.length()
+					&& ((String) key).charAt(prefix.length()) == PrefixConfig.PREFIXDELIMITER
+					&& ((String) key).startsWith(prefix)) {
+				result.put(key, entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the delta of the keys starting with the given prefix.
+	 * 
+	 * @param prefix
+	 *            the prefix, e.g. <code>liv</code> or <code>liv.cache</code>
+	 * @return the delta of the keys of the prefix
+	 */
+	public PropertiesDelta forPrefix(final String prefix) {
+		return new PropertiesDelta(filter(added, prefix), filter(changed, prefix), filter(removed, prefix));
+	}
+
+	/**
+	 * Gets the added entries.
+	 * 
+	 * @return the added keys and their values
+	 */
+	public Map<Object, Object> getAdded() {
+		return added;
+	}
+
+	/**
+	 * Gets the changed entries.
+	 * 
+	 * @return the changed keys and their new values
+	 */
+	public Map<Object, Object> getChanged() {
+		return changed;
+	}
+
+	/**
+	 * Gets the removed entries.
+	 * 
+	 * @return the removed keys and their former values
+	 */
+	public Map<Object, Object> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Checks if nothing has changed.
+	 * 
+	 * @return true, if no entry has been added, changed or removed
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Gets the number of added, changed and removed entries.
+	 * 
+	 * @return the size
+	 */
+	public int size() {
+		return added.size() + changed.size() + removed.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "added: " + added.keySet() + ", changed: " + changed.keySet() + ", removed: " + removed.keySet();
+	}
+}
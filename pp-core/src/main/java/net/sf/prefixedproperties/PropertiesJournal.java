@@ -0,0 +1,575 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * An append-only journal of the modifications made to a
+ * {@link PrefixedProperties} at runtime.<br>
+ * Once opened by {@link #open(File, PrefixedProperties)}, every put, remove
+ * and clear of the properties appends a compact record to the journal file
+ * within the given directory. The records are collected in memory and
+ * written and synced to disk by a background thread once per sync interval,
+ * so a crash loses at most the modifications of the last interval.
+ * {@link #sync()} writes them at once.<br>
+ * If the journal grows beyond the compaction threshold, the complete
+ * properties are written as snapshot in the format of
+ * {@link PrefixedProperties#storeToBinary(OutputStream)} and the journal is
+ * emptied. Opening the journal again replaces the content of the properties
+ * by the snapshot and the replayed journal. Records torn by a crash at the
+ * end of the journal are dropped.<br>
+ * Only String keys and values are journaled. The journal should be opened
+ * before the properties are shared with other threads.
+ * 
+ * <pre>
+ * final PrefixedProperties properties = ...
+ * final PropertiesJournal journal = PropertiesJournal.open(new File(&quot;config-journal&quot;), properties);
+ * properties.setProperty(&quot;test.key&quot;, &quot;value&quot;); // survives a restart
+ * ...
+ * journal.close();
+ * </pre>
+ */
+public final class PropertiesJournal implements Closeable {
+
+	/** The default interval in milliseconds between two syncs of the journal. */
+	public static final long DEFAULT_SYNC_INTERVAL = 100;
+
+	/** The default size in bytes of the journal which triggers a compaction. */
+	public static final long DEFAULT_COMPACTION_THRESHOLD = 8 * 1024 * 1024;
+
+	/** The name of the journal file within the directory. */
+	public static final String JOURNAL_FILE = "journal.ppj";
+
+	/** The name of the snapshot file within the directory. */
+	public static final String SNAPSHOT_FILE = "snapshot.ppb";
+
+	/** The magic number "PPJL" each journal starts with. */
+	static final int MAGIC = 0x50504A4C;
+
+	/** The current version of the journal format. */
+	static final int VERSION = 1;
+
+	private static final int HEADER_LENGTH = 8;
+
+	private static final byte PUT = 1;
+
+	private static final byte REMOVE = 2;
+
+	private static final byte CLEAR = 3;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Opens the journal within the given directory with the default sync
+	 * interval and compaction threshold. See
+	 * {@link #open(File, PrefixedProperties, long, long)}.
+	 * 
+	 * @param directory
+	 *            the directory of the journal and the snapshot
+	 * @param properties
+	 *            the properties to journal
+	 * @return the opened journal
+	 * @throws IOException
+	 *             if the snapshot or the journal can't be read or written
+	 */
+	public static PropertiesJournal open(final File directory, final PrefixedProperties properties)
+			throws IOException {
+		return open(directory, properties, DEFAULT_SYNC_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	/**
+	 * Opens the journal within the given directory and attaches it to the
+	 * given properties.<br>
+	 * If the directory holds a snapshot, the content of the properties is
+	 * replaced by the snapshot and the replayed journal. Otherwise the current
+	 * content of the properties is taken as the first snapshot.
+	 * 
+	 * @param directory
+	 *            the directory of the journal and the snapshot
+	 * @param properties
+	 *            the properties to journal
+	 * @param syncInterval
+	 *            the interval in milliseconds between two syncs of the journal
+	 * @param compactionThreshold
+	 *            the size in bytes of the journal which triggers a compaction
+	 * @return the opened journal
+	 * @throws IOException
+	 *             if the snapshot or the journal can't be read or written
+	 * @throws IllegalStateException
+	 *             if the properties are already journaled
+	 */
+	public static PropertiesJournal open(final File directory, final PrefixedProperties properties,
+			final long syncInterval, final long compactionThreshold) throws IOException {
+		if (syncInterval <= 0) {
+			throw new IllegalArgumentException("The sync interval must be positive.");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create the journal directory " + directory);
+		}
+		final PropertiesJournal journal = new PropertiesJournal(directory, properties, compactionThreshold);
+		properties.attachJournal(journal);
+		boolean replayed = false;
+		try {
+			journal.replay();
+			replayed = true;
+		} finally {
+			if (!replayed) {
+				properties.detachJournal(journal);
+				journal.closeFile();
+			}
+		}
+		journal.startSyncing(syncInterval);
+		return journal;
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final int length = BinaryPropertiesFormat.readVarInt(buffer);
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		final String string = new String(buffer.array(), buffer.position(), length, UTF_8);
+		buffer.position(buffer.position() + length);
+		return string;
+	}
+
+	private final PrefixedProperties properties;
+
+	private final File journalFile;
+
+	private final File snapshotFile;
+
+	/* the new snapshot until it replaces the old one */
+	private final File writtenSnapshotFile;
+
+	private final long compactionThreshold;
+
+	private final CRC32 crc = new CRC32();
+
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+
+	/* the records not yet written, guarded by this */
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+	private volatile boolean recording;
+
+	/* guards the file, the spare buffer and the journal length */
+	private final Object syncLock = new Object();
+
+	private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+
+	private FileOutputStream out;
+
+	private long journalLength;
+
+	private volatile IOException failure;
+
+	private ScheduledExecutorService syncer;
+
+	private PropertiesJournal(final File directory, final PrefixedProperties properties,
+			final long compactionThreshold) {
+		this.properties = properties;
+		journalFile = new File(directory, JOURNAL_FILE);
+		snapshotFile = new File(directory, SNAPSHOT_FILE);
+		writtenSnapshotFile = new File(directory, SNAPSHOT_FILE + ".tmp");
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	private synchronized void append(final byte type, final String key, final String value) {
+		record.reset();
+		try {
+			recordOut.writeByte(type);
+			if (key != null) {
+				writeString(key);
+			}
+			if (value != null) {
+				writeString(value);
+			}
+			crc.reset();
+			crc.update(record.toByteArray());
+			recordOut.writeInt((int) crc.getValue());
+			record.writeTo(pending);
+		} catch (final IOException e) {
+			// never thrown by the in memory streams
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Appends the removal of all entries.
+	 */
+	void clear() {
+		if (recording) {
+			append(CLEAR, null, null);
+		}
+	}
+
+	/**
+	 * Writes all outstanding records and closes the journal. Further
+	 * modifications of the properties are not journaled anymore.
+	 * 
+	 * @throws IOException
+	 *             if the outstanding records can't be written or an earlier
+	 *             background sync or compaction failed
+	 */
+	public void close() throws IOException {
+		if (!properties.detachJournal(this)) {
+			return;
+		}
+		recording = false;
+		syncer.shutdown();
+		try {
+			sync();
+		} finally {
+			closeFile();
+		}
+	}
+
+	private void closeFile() throws IOException {
+		synchronized (syncLock) {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+		}
+	}
+
+	/**
+	 * Folds the journal into a new snapshot of the complete properties and
+	 * empties the journal. Modifications of the properties wait until the
+	 * snapshot has been written.
+	 * 
+	 * @throws IOException
+	 *             if the snapshot can't be written
+	 */
+	public void compact() throws IOException {
+		properties.storeSnapshot(this);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (out == null) {
+			throw new IOException("The journal is closed.");
+		}
+	}
+
+	/**
+	 * Gets the directory of the journal and the snapshot.
+	 * 
+	 * @return the directory
+	 */
+	public File getDirectory() {
+		return journalFile.getParentFile();
+	}
+
+	/**
+	 * Appends the put of the given entry. Entries with a key or value which is
+	 * no String are ignored.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 */
+	void put(final Object key, final Object value) {
+		if (recording && key instanceof String && value instanceof String) {
+			append(PUT, (String) key, (String) value);
+		}
+	}
+
+	/**
+	 * Appends the puts of the given entries. Entries with a key or value
+	 * which is no String are ignored.
+	 * 
+	 * @param entries
+	 *            the entries
+	 */
+	void putAll(final Map<?, ?> entries) {
+		if (recording) {
+			for (final Entry<?, ?> entry : entries.entrySet()) {
+				put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private int readJournal(final Map<Object, Object> state) throws IOException {
+		final RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+		try {
+			final long length = file.length();
+			if (length < HEADER_LENGTH) {
+				// a new journal or one torn while writing its header
+				file.setLength(0);
+				file.writeInt(MAGIC);
+				file.writeInt(VERSION);
+				file.getFD().sync();
+				return 0;
+			}
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("The journal is too large: " + journalFile);
+			}
+			final byte[] bytes = new byte[(int) length];
+			file.readFully(bytes);
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a properties journal: " + journalFile);
+			}
+			final int version = buffer.getInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported properties journal version: " + version);
+			}
+			int records = 0;
+			int valid = buffer.position();
+			while (buffer.hasRemaining() && replayRecord(buffer, state)) {
+				valid = buffer.position();
+				records++;
+			}
+			if (valid < length) {
+				// drops the tail torn by a crash while appending
+				file.setLength(valid);
+				file.getFD().sync();
+			}
+			return records;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Appends the removal of the given key of the backing store.
+	 * 
+	 * @param key
+	 *            the removed key
+	 */
+	void remove(final Object key) {
+		if (recording && key instanceof String) {
+			append(REMOVE, (String) key, null);
+		}
+	}
+
+	private Map<Object, Object> readSnapshot(final File file) throws IOException {
+		final InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return BinaryPropertiesFormat.read(in).getEntries();
+		} finally {
+			in.close();
+		}
+	}
+
+	private void replay() throws IOException {
+		Map<Object, Object> state = null;
+		if (snapshotFile.isFile()) {
+			state = readSnapshot(snapshotFile);
+		} else if (writtenSnapshotFile.isFile()) {
+			// a crash between deleting the old and renaming the new snapshot
+			// leaves only the new one, which is complete if its checksum
+			// matches. The journal hasn't been truncated yet.
+			try {
+				state = readSnapshot(writtenSnapshotFile);
+			} catch (final IOException e) {
+				// torn while it was written, the old snapshot is missing too
+			}
+			if (state != null && !writtenSnapshotFile.renameTo(snapshotFile)) {
+				throw new IOException("Failed to restore the snapshot " + snapshotFile);
+			}
+		}
+		final boolean hasSnapshot = state != null;
+		if (!hasSnapshot) {
+			state = new HashMap<Object, Object>(properties.getCompleteProperties());
+		}
+		final int records = readJournal(state);
+		if (hasSnapshot || records > 0) {
+			properties.clear();
+			properties.putAll(state);
+		}
+		synchronized (syncLock) {
+			out = new FileOutputStream(journalFile, true);
+			journalLength = journalFile.length();
+		}
+		recording = true;
+		if (!hasSnapshot) {
+			compact();
+		}
+	}
+
+	private boolean replayRecord(final ByteBuffer buffer, final Map<Object, Object> state) {
+		final int start = buffer.position();
+		try {
+			final byte type = buffer.get();
+			if (type != PUT && type != REMOVE && type != CLEAR) {
+				return false;
+			}
+			final String key = type == CLEAR ? null : readString(buffer);
+			final String value = type == PUT ? readString(buffer) : null;
+			crc.reset();
+			crc.update(buffer.array(), start, buffer.position() - start);
+			if ((int) crc.getValue() != buffer.getInt()) {
+				return false;
+			}
+			if (type == PUT) {
+				state.put(key, value);
+			} else if (type == REMOVE) {
+				state.remove(key);
+			} else {
+				state.clear();
+			}
+			return true;
+		} catch (final BufferUnderflowException e) {
+			return false;
+		}
+	}
+
+	private void startSyncing(final long syncInterval) {
+		syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "prefixedproperties-journal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		syncer.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					sync();
+					if (journalLength > compactionThreshold) {
+						compact();
+					}
+				} catch (final IOException e) {
+					// kept and thrown by the next sync or close
+					if (failure == null && recording) {
+						failure = e;
+					}
+				}
+			}
+		}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes all outstanding records to the journal and syncs it to disk.
+	 * 
+	 * @throws IOException
+	 *             if the records can't be written or an earlier background
+	 *             sync or compaction failed
+	 */
+	public void sync() throws IOException {
+		synchronized (syncLock) {
+			ensureOpen();
+			final ByteArrayOutputStream written;
+			synchronized (this) {
+				if (pending.size() == 0) {
+					return;
+				}
+				written = pending;
+				pending = spare;
+			}
+			spare = written;
+			written.writeTo(out);
+			out.getFD().sync();
+			journalLength += written.size();
+			written.reset();
+		}
+	}
+
+	private void writeString(final String string) throws IOException {
+		final byte[] bytes = string.getBytes(UTF_8);
+		BinaryPropertiesFormat.writeVarInt(recordOut, bytes.length);
+		recordOut.write(bytes);
+	}
+
+	/**
+	 * Writes the given complete properties as new snapshot and empties the
+	 * journal. Called by the properties while no modification can happen.
+	 * 
+	 * @param configs
+	 *            the prefix configs of the cascade, innermost level first
+	 * @param entries
+	 *            the entries of the backing store
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void writeSnapshot(final Collection<PrefixConfig> configs, final Map<Object, Object> entries)
+			throws IOException {
+		synchronized (syncLock) {
+			ensureOpen();
+			synchronized (this) {
+				// all records up to now are part of the snapshot
+				pending.reset();
+			}
+			final FileOutputStream snapshot = new FileOutputStream(writtenSnapshotFile);
+			try {
+				final OutputStream buffered = new BufferedOutputStream(snapshot, 64 * 1024);
+				BinaryPropertiesFormat.write(buffered, configs, entries);
+				buffered.flush();
+				snapshot.getFD().sync();
+			} finally {
+				snapshot.close();
+			}
+			if (!writtenSnapshotFile.renameTo(snapshotFile)) {
+				// renameTo can't replace an existing file on every platform
+				if (!snapshotFile.delete() || !writtenSnapshotFile.renameTo(snapshotFile)) {
+					throw new IOException("Failed to replace the snapshot " + snapshotFile);
+				}
+			}
+			// replaying the journal on top of the new snapshot gives the same
+			// result, so a crash before the truncation loses nothing.
+			out.getChannel().truncate(HEADER_LENGTH);
+			out.getFD().sync();
+			journalLength = HEADER_LENGTH;
+		}
+	}
+}
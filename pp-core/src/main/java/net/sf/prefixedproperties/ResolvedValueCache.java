@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * Cache of resolved values used by {@link PrefixedProperties}.<br>
+ * The values are organized in a tree of nodes. Each level of the tree stands
+ * for one level of a cascade and is keyed by the prefix which was active on
+ * that level while resolving. So a resolved value can be found by following
+ * the active prefixes without building a prefixed key.
+ */
+final class ResolvedValueCache {
+
+	/**
+	 * A node holding the resolved values for one combination of prefixes.
+	 */
+	static final class Node {
+
+		private final ConcurrentMap<Object, Node> children = new ConcurrentHashMap<Object, Node>(4);
+
+		private final ConcurrentMap<Object, Object> values = new ConcurrentHashMap<Object, Object>();
+
+		/**
+		 * Gets the child for the given prefix.
+		 * 
+		 * @param prefix
+		 *            the prefix or null if no prefix is active
+		 * @return the child
+		 */
+		Node getChild(final String prefix) {
+			final Object childKey = prefix == null ? NO_PREFIX : prefix;
+			Node child = children.get(childKey);
+			if (child == null) {
+				final Node newChild = new Node();
+				child = children.putIfAbsent(childKey, newChild);
+				if (child == null) {
+					child = newChild;
+				}
+			}
+			return child;
+		}
+	}
+
+	private static final Object NO_PREFIX = new Object();
+
+	private static final Object NULL_VALUE = new Object();
+
+	/** Returned by {@link #get(Node, Object)} if there is no cached value. */
+	static final Object MISSING = new Object();
+
+	private volatile Node root = new Node();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Clears all cached values.
+	 */
+	void clear() {
+		root = new Node();
+	}
+
+	/**
+	 * Gets the cached value of the given key.
+	 * 
+	 * @param node
+	 *            the node of the active prefixes
+	 * @param key
+	 *            the key
+	 * @return the value or {@link #MISSING}
+	 */
+	Object get(final Node node, final Object key) {
+		final Object value = node.values.get(key);
+		if (value == null) {
+			misses.incrementAndGet();
+			return MISSING;
+		}
+		hits.incrementAndGet();
+		return value == NULL_VALUE ? null : value;
+	}
+
+	/**
+	 * Gets the number of lookups which have been answered by the cache.
+	 * 
+	 * @return the hits
+	 */
+	long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups which had to be resolved.
+	 * 
+	 * @return the misses
+	 */
+	long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the root node.
+	 * 
+	 * @return the root
+	 */
+	Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Removes all values which could have been resolved by using the given key
+	 * of the backing store. These are the key itself and every part of the key
+	 * following a prefix delimiter.
+	 * 
+	 * @param storedKey
+	 *            the key of the backing store
+	 */
+	void invalidate(final Object storedKey) {
+		invalidate(root, storedKey);
+	}
+
+	private void invalidate(final Node node, final Object storedKey) {
+		if (!node.values.isEmpty()) {
+			if (storedKey instanceof String) {
+				final String key = (String) storedKey;
+				int index = 0;
+				do {
+					node.values.remove(index == 0 ? key : key.substring(index));
+					index = key.indexOf(PrefixConfig.PREFIXDELIMITER, index) + 1;
+				} while (index > 0);
+			} else {
+				node.values.remove(storedKey);
+			}
+		}
+		for (final Node child : node.children.values()) {
+			invalidate(child, storedKey);
+		}
+	}
+
+	/**
+	 * Puts the resolved value.
+	 * 
+	 * @param node
+	 *            the node of the active prefixes
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the resolved value, may be null
+	 */
+	void put(final Node node, final Object key, final Object value) {
+		node.values.put(key, value == null ? NULL_VALUE : value);
+	}
+
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.prefixedproperties.config.PrefixConfig;
+
+/**
+ * Cache of parsed values used by the typed getters of
+ * {@link PrefixedProperties}.<br>
+ * A parsed value is cached per combination of active prefixes, requested key
+ * and type together with the string it was parsed from. The combinations
+ * are organized in a tree of nodes like the ones of
+ * {@link ResolvedValueCache}, so threads with different prefixes don't
+ * replace each other's values. A value is only used as long as the key
+ * resolves to that very same string instance. So a changed value is never
+ * answered from the cache, even if the cache hasn't been invalidated yet.
+ * Numbers are kept as primitives and arrays as primitive arrays. A value
+ * which can't be parsed is cached as invalid, so repeated lookups of it
+ * don't throw and catch an exception each time.
+ */
+final class TypedValueCache {
+
+	/**
+	 * A node holding the parsed values for one combination of prefixes.
+	 */
+	static final class Node {
+
+		private final ConcurrentMap<Object, Node> children = new ConcurrentHashMap<Object, Node>(4);
+
+		/* the parsed values of each type by the requested key */
+		private final List<ConcurrentMap<String, Value>> values = new ArrayList<ConcurrentMap<String, Value>>(TYPES);
+
+		private Node() {
+			for (int i = 0; i < TYPES; i++) {
+				values.add(new ConcurrentHashMap<String, Value>());
+			}
+		}
+
+		/**
+		 * Gets the child for the given prefix.
+		 * 
+		 * @param prefix
+		 *            the prefix or null if no prefix is active
+		 * @return the child
+		 */
+		Node getChild(final String prefix) {
+			final Object childKey = prefix == null ? NO_PREFIX : prefix;
+			Node child = children.get(childKey);
+			if (child == null) {
+				final Node newChild = new Node();
+				child = children.putIfAbsent(childKey, newChild);
+				if (child == null) {
+					child = newChild;
+				}
+			}
+			return child;
+		}
+	}
+
+	/**
+	 * A parsed value.
+	 */
+	static final class Value {
+
+		private final String source;
+
+		private final String error;
+
+		private final long longValue;
+
+		private final double doubleValue;
+
+		private final Object array;
+
+		private Value(final String source, final long longValue, final double doubleValue, final Object array) {
+			this.source = source;
+			this.longValue = longValue;
+			this.doubleValue = doubleValue;
+			this.array = array;
+			error = null;
+		}
+
+		private Value(final String source, final String error) {
+			this.source = source;
+			this.error = error;
+			longValue = 0;
+			doubleValue = 0;
+			array = null;
+		}
+
+		/**
+		 * Gets the parsed array.
+		 * 
+		 * @return a primitive array or a String[]
+		 * @throws NumberFormatException
+		 *             if the value couldn't be parsed
+		 */
+		Object getArray() {
+			check();
+			return array;
+		}
+
+		/**
+		 * Gets the parsed floating point number.
+		 * 
+		 * @return the number
+		 * @throws NumberFormatException
+		 *             if the value couldn't be parsed
+		 */
+		double getDouble() {
+			check();
+			return doubleValue;
+		}
+
+		/**
+		 * Gets the parsed integral number.
+		 * 
+		 * @return the number
+		 * @throws NumberFormatException
+		 *             if the value couldn't be parsed
+		 */
+		long getLong() {
+			check();
+			return longValue;
+		}
+
+		/**
+		 * Checks if the value could be parsed.
+		 * 
+		 * @return true, if is valid
+		 */
+		boolean isValid() {
+			return error == null;
+		}
+
+		private void check() {
+			if (error != null) {
+				throw new NumberFormatException(error);
+			}
+		}
+	}
+
+	static final int STRING_ARRAY = 0;
+
+	static final int BOOLEAN_ARRAY = 1;
+
+	static final int BYTE = 2;
+
+	static final int BYTE_ARRAY = 3;
+
+	static final int DOUBLE = 4;
+
+	static final int DOUBLE_ARRAY = 5;
+
+	static final int FLOAT = 6;
+
+	static final int FLOAT_ARRAY = 7;
+
+	static final int INT = 8;
+
+	static final int INT_ARRAY = 9;
+
+	static final int LONG = 10;
+
+	static final int LONG_ARRAY = 11;
+
+	static final int SHORT = 12;
+
+	static final int SHORT_ARRAY = 13;
+
+	private static final int TYPES = 14;
+
+	private static final Object NO_PREFIX = new Object();
+
+	private volatile Node root = new Node();
+
+	private static boolean isWhitespace(final char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static Value parse(final int type, final String source) {
+		try {
+			switch (type) {
+			case BYTE:
+				return new Value(source, Byte.parseByte(source), 0, null);
+			case SHORT:
+				return new Value(source, Short.parseShort(source), 0, null);
+			case INT:
+				return new Value(source, Integer.parseInt(source), 0, null);
+			case LONG:
+				return new Value(source, Long.parseLong(source), 0, null);
+			case FLOAT:
+				return new Value(source, 0, Float.parseFloat(source), null);
+			case DOUBLE:
+				return new Value(source, 0, Double.parseDouble(source), null);
+			default:
+				return new Value(source, 0, 0, parseArray(type, split(source)));
+			}
+		} catch (final NumberFormatException nfe) {
+			return new Value(source, nfe.getMessage());
+		}
+	}
+
+	private static Object parseArray(final int type, final String[] strings) {
+		switch (type) {
+		case BOOLEAN_ARRAY:
+			final boolean[] booleans = new boolean[strings.length];
+			for (int i = 0; i < strings.length; i++) {
+				booleans[i] = Boolean.valueOf(strings[i]).booleanValue();
+			}
+			return booleans;
+		case BYTE_ARRAY:
+			final byte[] bytes = new byte[strings.length];
+			for (int i = 0; i < strings.length; i++) {
+				bytes[i] = Byte.parseByte(strings[i]);
+			}
+			return bytes;
+		case SHORT_ARRAY:
+			final short[] shorts = new short[strings.length];
+			for (int i = 0; i < strings.length; i++) {
+				shorts[i] = Short.parseShort(strings[i]);
+			}
+			return shorts;
+		case INT_ARRAY:
+			final int[] ints = new int[strings.length];
+			for (int i = 0; i < strings.length; i++) {
+				ints[i] = Integer.parseInt(strings[i]);
+			}
+			return ints;
+		case LONG_ARRAY:
+			final long[] longs = new long[strings.length];
+			for (int i = 0; i < strings.length; i++) {
+				longs[i] = Long.parseLong(strings[i]);
+			}
+			return longs;
+		case FLOAT_ARRAY:
+			final float[] floats = new float[strings.length];
+			for (int i = 0; i < strings.length; i++) {
+				floats[i] = Float.parseFloat(strings[i]);
+			}
+			return floats;
+		case DOUBLE_ARRAY:
+			final double[] doubles = new double[strings.length];
+			for (int i = 0; i < strings.length; i++) {
+				doubles[i] = Double.parseDouble(strings[i]);
+			}
+			return doubles;
+		default:
+			return strings;
+		}
+	}
+
+	/**
+	 * Splits a comma-separated list. The result is the same as the one of
+	 * <code>value.split(",[\\s]*|[\\s]*$")</code>: whitespace following a
+	 * comma and trailing whitespace are removed and trailing empty strings
+	 * are dropped.
+	 * 
+	 * @param value
+	 *            the value
+	 * @return the split value
+	 */
+	static String[] split(final String value) {
+		final int length = value.length();
+		if (length == 0) {
+			return new String[] { value };
+		}
+		final char last = value.charAt(length - 1);
+		if (last == '\u0085' || last == '\u2028' || last == '\u2029') {
+			// the end of the input is matched before these line terminators
+			return value.split(",[\\s]*|[\\s]*$");
+		}
+		int end = length;
+		while (end > 0 && isWhitespace(value.charAt(end - 1))) {
+			end--;
+		}
+		final List<String> result = new ArrayList<String>();
+		int start = 0;
+		int nonEmpty = 0;
+		while (true) {
+			final int comma = start < end ? value.indexOf(',', start) : -1;
+			final int tokenEnd = comma >= 0 && comma < end ? comma : end;
+			final String token = value.substring(Math.min(start, tokenEnd), tokenEnd);
+			result.add(token);
+			if (token.length() > 0) {
+				nonEmpty = result.size();
+			}
+			if (tokenEnd == end) {
+				break;
+			}
+			start = tokenEnd + 1;
+			while (start < length && isWhitespace(value.charAt(start))) {
+				start++;
+			}
+		}
+		return result.subList(0, nonEmpty).toArray(new String[nonEmpty]);
+	}
+
+	/**
+	 * Clears all cached values.
+	 */
+	void clear() {
+		root = new Node();
+	}
+
+	/**
+	 * Gets the parsed value of the given key.
+	 * 
+	 * @param node
+	 *            the node of the active prefixes
+	 * @param type
+	 *            the type to parse to
+	 * @param key
+	 *            the requested key
+	 * @param source
+	 *            the current value of the key
+	 * @return the parsed value
+	 */
+	Value get(final Node node, final int type, final String key, final String source) {
+		final ConcurrentMap<String, Value> map = node.values.get(type);
+		Value value = map.get(key);
+		if (value == null || value.source != source) {
+			value = parse(type, source);
+			map.put(key, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the root node.
+	 * 
+	 * @return the root
+	 */
+	Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Invalidates the parsed values of a changed key. As the key might have
+	 * been requested without any of its prefixes, each of its suffixes
+	 * starting after a delimiter is invalidated as well.
+	 * 
+	 * @param key
+	 *            the changed key
+	 */
+	void invalidate(final Object key) {
+		if (key instanceof String) {
+			invalidate(root, (String) key);
+		}
+	}
+
+	private void invalidate(final Node node, final String key) {
+		int index = 0;
+		do {
+			final String suffix = index == 0 ? key : key.substring(index);
+			for (final ConcurrentMap<String, Value> map : node.values) {
+				map.remove(suffix);
+			}
+			index = key.indexOf(PrefixConfig.PREFIXDELIMITER, index) + 1;
+		} while (index > 0);
+		for (final Node child : node.children.values()) {
+			invalidate(child, key);
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.prefixedproperties.config.PrefixTrie;
+
+/**
+ * Index from the unprefixed keys of a backing store to their prefixed
+ * variants.<br>
+ * A key of the store is either unprefixed, prefixed with exactly one prefix
+ * or equal to a prefix, in which case it is never visible. Which keys are
+ * visible depends on the current prefix and is decided at query time, so the
+ * index stays valid when the prefix changes. Only a change of the prefixes
+ * themselves requires a new index.<br>
+ * The index is not thread safe. It is guarded by the lock of the owning
+ * {@link PrefixedProperties}.
+ */
+final class UnprefixedKeyIndex {
+
+	/*
+	 * The unprefixed keys having a variant with one prefix.
+	 */
+	private static final class PrefixedKeys {
+
+		private final Set<String> keys = new HashSet<String>();
+
+		/* the number of keys which have an unprefixed variant as well */
+		private int shared;
+	}
+
+	private final PrefixTrie trie;
+
+	private final char delimiter;
+
+	private final Set<String> unprefixedKeys = new HashSet<String>();
+
+	private final Map<String, PrefixedKeys> prefixedKeys = new HashMap<String, PrefixedKeys>();
+
+	/* the prefixes each unprefixed key is stored with */
+	private final Map<String, Set<String>> variants = new HashMap<String, Set<String>>();
+
+	private final Set<Object> otherKeys = new HashSet<Object>();
+
+	private UnprefixedKeyIndex(final PrefixTrie trie) {
+		this.trie = trie;
+		delimiter = trie.getDelimiter();
+	}
+
+	/**
+	 * Creates the index of the given keys.
+	 * 
+	 * @param keys
+	 *            the keys of the backing store
+	 * @param prefixes
+	 *            the known prefixes
+	 * @param trie
+	 *            the trie of the known prefixes
+	 * @return the index or null if the keys can't be indexed because a prefix
+	 *         contains the delimiter
+	 */
+	static UnprefixedKeyIndex create(final Collection<Object> keys, final Collection<String> prefixes,
+			final PrefixTrie trie) {
+		for (final String prefix : prefixes) {
+			if (prefix.indexOf(trie.getDelimiter()) >= 0) {
+				return null;
+			}
+		}
+		final UnprefixedKeyIndex index = new UnprefixedKeyIndex(trie);
+		for (final Object key : keys) {
+			index.add(key);
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a key of the backing store. Adding a key twice has no effect.
+	 * 
+	 * @param storedKey
+	 *            the key
+	 */
+	void add(final Object storedKey) {
+		if (String.class != storedKey.getClass()) {
+			otherKeys.add(storedKey);
+			return;
+		}
+		final String key = (String) storedKey;
+		final String prefixPart = trie.getPrefixPart(key);
+		if (prefixPart != null) {
+			final String prefix = prefixPart.substring(0, prefixPart.length() - 1);
+			final String unprefixedKey = key.substring(prefixPart.length());
+			Set<String> prefixesOfKey = variants.get(unprefixedKey);
+			if (prefixesOfKey == null) {
+				prefixesOfKey = new HashSet<String>(4);
+				variants.put(unprefixedKey, prefixesOfKey);
+			}
+			if (prefixesOfKey.add(prefix)) {
+				PrefixedKeys keysOfPrefix = prefixedKeys.get(prefix);
+				if (keysOfPrefix == null) {
+					keysOfPrefix = new PrefixedKeys();
+					prefixedKeys.put(prefix, keysOfPrefix);
+				}
+				keysOfPrefix.keys.add(unprefixedKey);
+				if (unprefixedKeys.contains(unprefixedKey)) {
+					keysOfPrefix.shared++;
+				}
+			}
+		} else if (!trie.contains(key) && unprefixedKeys.add(key)) {
+			final Set<String> prefixesOfKey = variants.get(key);
+			if (prefixesOfKey != null) {
+				for (final String prefix : prefixesOfKey) {
+					prefixedKeys.get(prefix).shared++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all keys.
+	 */
+	void clear() {
+		unprefixedKeys.clear();
+		prefixedKeys.clear();
+		variants.clear();
+		otherKeys.clear();
+	}
+
+	/**
+	 * Fills the given map with the visible keys mapped to the key of the
+	 * backing store. If a key is stored with and without the current prefix,
+	 * the prefixed one is used.
+	 * 
+	 * @param currentPrefix
+	 *            the current prefix, may be null
+	 * @param onlyStrings
+	 *            true to skip keys which are no strings
+	 * @param result
+	 *            the map to fill
+	 * @return the given map
+	 */
+	Map<Object, Object> getKeyMap(final String currentPrefix, final boolean onlyStrings,
+			final Map<Object, Object> result) {
+		for (final String key : unprefixedKeys) {
+			result.put(key, key);
+		}
+		final PrefixedKeys keysOfPrefix = currentPrefix != null ? prefixedKeys.get(currentPrefix) : null;
+		if (keysOfPrefix != null) {
+			for (final String key : keysOfPrefix.keys) {
+				result.put(key, currentPrefix + delimiter + key);
+			}
+		}
+		if (!onlyStrings) {
+			for (final Object key : otherKeys) {
+				result.put(key, key);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the visible keys. If a key is stored with and without the current
+	 * prefix, it is contained only once.
+	 * 
+	 * @param currentPrefix
+	 *            the current prefix, may be null
+	 * @return the visible keys
+	 */
+	Object[] getKeys(final String currentPrefix) {
+		final PrefixedKeys keysOfPrefix = currentPrefix != null ? prefixedKeys.get(currentPrefix) : null;
+		final Object[] result = new Object[size(currentPrefix)];
+		int i = 0;
+		if (keysOfPrefix != null) {
+			for (final String key : keysOfPrefix.keys) {
+				result[i++] = key;
+			}
+		}
+		for (final String key : unprefixedKeys) {
+			if (keysOfPrefix == null || keysOfPrefix.shared == 0 || !keysOfPrefix.keys.contains(key)) {
+				result[i++] = key;
+			}
+		}
+		for (final Object key : otherKeys) {
+			result[i++] = key;
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the trie the keys are classified with.
+	 * 
+	 * @return the trie
+	 */
+	PrefixTrie getTrie() {
+		return trie;
+	}
+
+	/**
+	 * Removes a key of the backing store.
+	 * 
+	 * @param storedKey
+	 *            the key
+	 */
+	void remove(final Object storedKey) {
+		if (String.class != storedKey.getClass()) {
+			otherKeys.remove(storedKey);
+			return;
+		}
+		final String key = (String) storedKey;
+		final String prefixPart = trie.getPrefixPart(key);
+		if (prefixPart != null) {
+			final String prefix = prefixPart.substring(0, prefixPart.length() - 1);
+			final String unprefixedKey = key.substring(prefixPart.length());
+			final Set<String> prefixesOfKey = variants.get(unprefixedKey);
+			if (prefixesOfKey != null && prefixesOfKey.remove(prefix)) {
+				if (prefixesOfKey.isEmpty()) {
+					variants.remove(unprefixedKey);
+				}
+				final PrefixedKeys keysOfPrefix = prefixedKeys.get(prefix);
+				keysOfPrefix.keys.remove(unprefixedKey);
+				if (unprefixedKeys.contains(unprefixedKey)) {
+					keysOfPrefix.shared--;
+				}
+				if (keysOfPrefix.keys.isEmpty()) {
+					prefixedKeys.remove(prefix);
+				}
+			}
+		} else if (unprefixedKeys.remove(key)) {
+			final Set<String> prefixesOfKey = variants.get(key);
+			if (prefixesOfKey != null) {
+				for (final String prefix : prefixesOfKey) {
+					prefixedKeys.get(prefix).shared--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of visible keys.
+	 * 
+	 * @param currentPrefix
+	 *            the current prefix, may be null
+	 * @return the size
+	 */
+	int size(final String currentPrefix) {
+		int size = unprefixedKeys.size() + otherKeys.size();
+		final PrefixedKeys keysOfPrefix = currentPrefix != null ? prefixedKeys.get(currentPrefix) : null;
+		if (keysOfPrefix != null) {
+			size += keysOfPrefix.keys.size() - keysOfPrefix.shared;
+		}
+		return size;
+	}
+
+}
@@ -30,6 +30,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -46,16 +47,22 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = 1L;
 
-	/** The prefixes. */
-	private Set<String> prefixes = new TreeSet<String>();
+	/**
+	 * The prefixes. The set is immutable and replaced as a whole on every
+	 * change, so it can be read without locking.
+	 */
+	private volatile Set<String> prefixes = Collections.unmodifiableSet(new TreeSet<String>());
 
-	/** The lock. */
+	/** The lock. Only taken by modifications. */
 	private transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
 	private volatile String defaultPrefix;
 
 	private transient ThreadLocal<String> localPrefix = new ThreadLocal<String>();
 
+	/** The prefixes compiled into a trie. Rebuilt whenever they change. */
+	private transient volatile PrefixTrie trie = PrefixTrie.EMPTY;
+
 	/**
 	 * Instantiates a new prefix store.
 	 */
@@ -115,7 +122,8 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	public void clear() {
 		lock.writeLock().lock();
 		try {
-			prefixes.clear();
+			prefixes = Collections.unmodifiableSet(new TreeSet<String>());
+			trie = PrefixTrie.EMPTY;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -130,7 +138,8 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	public PrefixConfig clone() {
 		try {
 			final DefaultPrefixConfig config = (DefaultPrefixConfig) super.clone(); // shallowcopy
-			config.prefixes = new TreeSet<String>(prefixes); // deepcopy
+			// the prefixes are immutable and can be shared
+			config.lock = new ReentrantReadWriteLock();
 			config.localPrefix = new ThreadLocal<String>();
 			config.localPrefix.set(localPrefix.get());
 			return config;
@@ -153,19 +162,7 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	 */
 	@Override
 	public boolean containsValidPrefix(final String key) {
-		if (key != null) {
-			lock.readLock().lock();
-			try {
-				for (final String aPrefix : prefixes) {
-					if (key.equals(aPrefix) || key.startsWith(aPrefix + getPrefixDelimiter())) {
-						return true;
-					}
-				}
-			} finally {
-				lock.readLock().unlock();
-			}
-		}
-		return false;
+		return trie.containsValidPrefix(key);
 	}
 
 	/*
@@ -185,14 +182,7 @@ public class DefaultPrefixConfig implements PrefixConfig {
 			return false;
 		}
 		final DefaultPrefixConfig other = (DefaultPrefixConfig) obj;
-		if (prefixes == null) {
-			if (other.prefixes != null) {
-				return false;
-			}
-		} else if (!prefixes.equals(other.prefixes)) {
-			return false;
-		}
-		return true;
+		return prefixes.equals(other.prefixes);
 	}
 
 	/**
@@ -225,7 +215,10 @@ public class DefaultPrefixConfig implements PrefixConfig {
 			public void remove() {
 				try {
 					lock.writeLock().lock();
-					prefixes.remove(lastOne);
+					final Set<String> newPrefixes = new TreeSet<String>(prefixes);
+					newPrefixes.remove(lastOne);
+					prefixes = Collections.unmodifiableSet(newPrefixes);
+					trie = PrefixTrie.create(newPrefixes, getPrefixDelimiter());
 				} finally {
 					lock.writeLock().unlock();
 				}
@@ -234,14 +227,19 @@ public class DefaultPrefixConfig implements PrefixConfig {
 		};
 	}
 
+	/**
+	 * Gets the default prefix which is used if no local prefix is set. This
+	 * method will never look at the local prefix.
+	 * 
+	 * @return the default prefix or null
+	 */
+	public String getDefaultPrefix() {
+		return defaultPrefix;
+	}
+
 	@Override
 	public String getLocalPrefix() {
-		lock.readLock().lock();
-		try {
-			return localPrefix.get();
-		} finally {
-			lock.readLock().unlock();
-		}
+		return localPrefix.get();
 	}
 
 	/*
@@ -281,13 +279,8 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	 */
 	@Override
 	public String getPrefixedKey(final String key, final boolean useOnlyLocalPrefixes) {
-		lock.readLock().lock();
-		try {
-			final String prefix = (useOnlyLocalPrefixes) ? getLocalPrefix() : getPrefix();
-			return (prefix != null) ? getPrefixedKey(prefix, key) : key;
-		} finally {
-			lock.readLock().unlock();
-		}
+		final String prefix = (useOnlyLocalPrefixes) ? getLocalPrefix() : getPrefix();
+		return (prefix != null) ? getPrefixedKey(prefix, key) : key;
 	}
 
 	/*
@@ -299,30 +292,32 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	 */
 	@Override
 	public String getPrefixedKey(final String prefixString, final String key) {
-		lock.readLock().lock();
-		try {
-			if (prefixString != null && prefixes.contains(prefixString) && key != null) {
-				return new StringBuilder(prefixString).append(getPrefixDelimiter()).append(key).toString();
-			}
-		} finally {
-			lock.readLock().unlock();
+		if (prefixString != null && prefixes.contains(prefixString) && key != null) {
+			return new StringBuilder(prefixString).append(getPrefixDelimiter()).append(key).toString();
 		}
 		throw new IllegalArgumentException("The given prefix is not part of this PrefixConfig or the key is null.");
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Gets the prefixes compiled into a trie. A new trie is created whenever
+	 * the prefixes change, so comparing the identity of two tries tells if
+	 * the prefixes have changed in between.
 	 * 
-	 * @see net.sf.prefixedproperties.config.PrefixConfig#getPrefixes()
+	 * @return the prefix trie
+	 */
+	public PrefixTrie getPrefixTrie() {
+		return trie;
+	}
+
+	/**
+	 * Gets the prefixes. The returned set is immutable and shared with other
+	 * callers. It doesn't reflect later changes of the prefixes.
+	 * 
+	 * @return the prefixes
 	 */
 	@Override
 	public Set<String> getPrefixes() {
-		lock.readLock().lock();
-		try {
-			return new TreeSet<String>(prefixes);
-		} finally {
-			lock.readLock().unlock();
-		}
+		return prefixes;
 	}
 
 	/*
@@ -335,17 +330,8 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	@Override
 	public String getPrefixPart(final String key) {
 		if (key != null) {
-			lock.readLock().lock();
-			try {
-				for (final String prefixString : prefixes) {
-					if (key.startsWith(prefixString + getPrefixDelimiter())) {
-						return prefixString + getPrefixDelimiter();
-					}
-				}
-			} finally {
-				lock.readLock().unlock();
-			}
-			return "";
+			final String prefixPart = trie.getPrefixPart(key);
+			return prefixPart != null ? prefixPart : "";
 		}
 		throw new IllegalArgumentException("The given key is null.");
 	}
@@ -359,7 +345,11 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	 */
 	@Override
 	public String getUnprefixedKey(final String key) {
-		return key.replaceFirst("^" + getPrefixPart(key), "");
+		if (key == null) {
+			throw new IllegalArgumentException("The given key is null.");
+		}
+		final String prefixPart = trie.getPrefixPart(key);
+		return prefixPart != null ? key.substring(prefixPart.length()) : key;
 	}
 
 	/*
@@ -371,11 +361,8 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		if (prefixes != null) {
-			// result = prime * result + prefixes.hashCode();
-			for (final String prefix : prefixes) {
-				result = prime * result + prefix.hashCode();
-			}
+		for (final String prefix : prefixes) {
+			result = prime * result + prefix.hashCode();
 		}
 		return result;
 	}
@@ -403,13 +390,15 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	private void readObject(final ObjectInputStream ois) throws ClassNotFoundException, IOException {
 		defaultPrefix = (String) ois.readObject();
 		final int size = ois.readInt();
-		prefixes = new TreeSet<String>();
+		final Set<String> newPrefixes = new TreeSet<String>();
 		for (int i = 0; i < size; i++) {
-			prefixes.add((String) ois.readObject());
+			newPrefixes.add((String) ois.readObject());
 		}
+		prefixes = Collections.unmodifiableSet(newPrefixes);
 		localPrefix = new ThreadLocal<String>();
 		localPrefix.set((String) ois.readObject());
 		lock = new ReentrantReadWriteLock();
+		trie = PrefixTrie.create(newPrefixes, getPrefixDelimiter());
 
 	}
 
@@ -447,20 +436,14 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	 */
 	@Override
 	public void setPrefix(final String prefixString) {
-		lock.writeLock().lock();
-		try {
-			if (prefixString == null || StringUtils.isBlank(prefixString)) {
-				localPrefix.remove();
-			} else {
-				if (prefixes != null) {
-					if (!prefixes.contains(prefixString)) {
-						throw new IllegalArgumentException("The given prefix is not part of the prefixes.");
-					}
-				}
-				localPrefix.set(prefixString);
+		// only the current thread is affected, so no lock is needed
+		if (prefixString == null || StringUtils.isBlank(prefixString)) {
+			localPrefix.remove();
+		} else {
+			if (!prefixes.contains(prefixString)) {
+				throw new IllegalArgumentException("The given prefix is not part of the prefixes.");
 			}
-		} finally {
-			lock.writeLock().unlock();
+			localPrefix.set(prefixString);
 		}
 	}
 
@@ -482,8 +465,9 @@ public class DefaultPrefixConfig implements PrefixConfig {
 		}
 		lock.writeLock().lock();
 		try {
-			prefixes = newPrefixes;
-			if (getPrefix() != null && !prefixes.contains(getPrefix())) {
+			prefixes = Collections.unmodifiableSet(newPrefixes);
+			trie = PrefixTrie.create(newPrefixes, getPrefixDelimiter());
+			if (getPrefix() != null && !newPrefixes.contains(getPrefix())) {
 				defaultPrefix = null;
 				localPrefix.remove();
 			}
@@ -511,13 +495,11 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	 */
 	@Override
 	public boolean startsWithCurrentPrefix(final String key) {
-		lock.readLock().lock();
-		try {
-			if (getPrefix() != null && key != null) {
-				return key.startsWith(getPrefix() + getPrefixDelimiter());
-			}
-		} finally {
-			lock.readLock().unlock();
+		final String prefix = getPrefix();
+		if (prefix != null && key != null) {
+			final int length = prefix.length();
+			return key.length() > length && key.charAt(length) == getPrefixDelimiter()
+					&& key.regionMatches(0, prefix, 0, length);
 		}
 		return false;
 	}
@@ -533,17 +515,13 @@ public class DefaultPrefixConfig implements PrefixConfig {
 	}
 
 	private void writeObject(final ObjectOutputStream oos) throws IOException {
-		lock.readLock().lock();
-		try {
-			oos.writeObject(defaultPrefix);
-			oos.writeInt(prefixes.size());
-			for (final String aPrefix : prefixes) {
-				oos.writeObject(aPrefix);
-			}
-			oos.writeObject(localPrefix.get());
-		} finally {
-			lock.readLock().unlock();
+		final Set<String> currentPrefixes = prefixes;
+		oos.writeObject(defaultPrefix);
+		oos.writeInt(currentPrefixes.size());
+		for (final String aPrefix : currentPrefixes) {
+			oos.writeObject(aPrefix);
 		}
+		oos.writeObject(localPrefix.get());
 	}
 
 }
@@ -26,6 +26,7 @@
 package net.sf.prefixedproperties.config;
 
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * The Class DynamicPrefixConfig will take any kind of Prefix and add it as a
@@ -57,11 +58,15 @@ public final class DynamicPrefixConfig extends DefaultPrefixConfig {
 	 * @param prefixString
 	 *            the prefix string
 	 */
-	protected synchronized void addPrefix(final String prefixString) {
-		if (prefixString != null) {
-			final Set<String> prefixes = getPrefixes();
-			prefixes.add(prefixString);
-			setPrefixes(prefixes);
+	protected void addPrefix(final String prefixString) {
+		if (prefixString != null && !getPrefixes().contains(prefixString)) {
+			synchronized (this) {
+				if (!getPrefixes().contains(prefixString)) {
+					final Set<String> prefixes = new TreeSet<String>(getPrefixes());
+					prefixes.add(prefixString);
+					setPrefixes(prefixes);
+				}
+			}
 		}
 	}
 
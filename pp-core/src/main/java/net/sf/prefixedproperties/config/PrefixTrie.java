@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties.config;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable trie of prefixes. It answers whether a key starts with one of
+ * the prefixes in O(key length) without creating any objects.<br>
+ * A prefix matches a key if the key equals the prefix or starts with the
+ * prefix followed by the delimiter. If more than one prefix matches, the
+ * shortest one is used.
+ */
+public final class PrefixTrie {
+
+	private static final char[] NO_LABELS = new char[0];
+
+	private static final PrefixTrie[] NO_CHILDREN = new PrefixTrie[0];
+
+	/** An empty trie using the default delimiter. */
+	public static final PrefixTrie EMPTY = new PrefixTrie(PrefixConfig.PREFIXDELIMITER);
+
+	private final char delimiter;
+
+	private final char[] labels;
+
+	private final PrefixTrie[] children;
+
+	/* the prefix followed by the delimiter if a prefix ends at this node. */
+	private final String prefixPart;
+
+	private PrefixTrie(final char delimiter) {
+		this(delimiter, NO_LABELS, NO_CHILDREN, null);
+	}
+
+	private PrefixTrie(final char delimiter, final char[] labels, final PrefixTrie[] children,
+			final String prefixPart) {
+		this.delimiter = delimiter;
+		this.labels = labels;
+		this.children = children;
+		this.prefixPart = prefixPart;
+	}
+
+	/**
+	 * Creates a trie of the given prefixes.
+	 * 
+	 * @param prefixes
+	 *            the prefixes
+	 * @param delimiter
+	 *            the delimiter between a prefix and the rest of a key
+	 * @return the trie
+	 */
+	public static PrefixTrie create(final Collection<String> prefixes, final char delimiter) {
+		final String[] sorted = prefixes.toArray(new String[prefixes.size()]);
+		Arrays.sort(sorted);
+		return create(sorted, 0, sorted.length, 0, delimiter);
+	}
+
+	/*
+	 * Creates the node for the sorted prefixes from start to end which share
+	 * their first depth characters.
+	 */
+	private static PrefixTrie create(final String[] sorted, final int start, final int end, final int depth,
+			final char delimiter) {
+		int from = start;
+		String prefixPart = null;
+		// skips duplicates as well
+		while (from < end && sorted[from].length() == depth) {
+			prefixPart = sorted[from] + delimiter;
+			from++;
+		}
+		int childCount = 0;
+		for (int i = from; i < end; i++) {
+			if (i == from || sorted[i].charAt(depth) != sorted[i - 1].charAt(depth)) {
+				childCount++;
+			}
+		}
+		if (childCount == 0) {
+			return new PrefixTrie(delimiter, NO_LABELS, NO_CHILDREN, prefixPart);
+		}
+		final char[] labels = new char[childCount];
+		final PrefixTrie[] children = new PrefixTrie[childCount];
+		int child = 0;
+		int childStart = from;
+		for (int i = from + 1; i <= end; i++) {
+			if (i == end || sorted[i].charAt(depth) != sorted[childStart].charAt(depth)) {
+				labels[child] = sorted[childStart].charAt(depth);
+				children[child] = create(sorted, childStart, i, depth + 1, delimiter);
+				child++;
+				childStart = i;
+			}
+		}
+		return new PrefixTrie(delimiter, labels, children, prefixPart);
+	}
+
+	/**
+	 * Checks if the given key is a prefix or starts with a prefix followed by
+	 * the delimiter.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return true, if successful
+	 */
+	public boolean containsValidPrefix(final String key) {
+		if (key == null) {
+			return false;
+		}
+		final int length = key.length();
+		PrefixTrie node = this;
+		for (int i = 0; i <= length; i++) {
+			if (node.prefixPart != null && (i == length || key.charAt(i) == delimiter)) {
+				return true;
+			}
+			if (i == length) {
+				return false;
+			}
+			node = node.getChild(key.charAt(i));
+			if (node == null) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the given string is one of the prefixes.
+	 * 
+	 * @param prefix
+	 *            the prefix
+	 * @return true, if successful
+	 */
+	public boolean contains(final String prefix) {
+		if (prefix == null) {
+			return false;
+		}
+		PrefixTrie node = this;
+		for (int i = 0; i < prefix.length() && node != null; i++) {
+			node = node.getChild(prefix.charAt(i));
+		}
+		return node != null && node.prefixPart != null;
+	}
+
+	private PrefixTrie getChild(final char c) {
+		final char[] myLabels = labels;
+		if (myLabels.length < 8) {
+			for (int i = 0; i < myLabels.length; i++) {
+				if (myLabels[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+		final int index = Arrays.binarySearch(myLabels, c);
+		return index >= 0 ? children[index] : null;
+	}
+
+	/**
+	 * Gets the delimiter.
+	 * 
+	 * @return the delimiter
+	 */
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Gets the prefix followed by the delimiter the given key starts with.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the prefix followed by the delimiter or null if the key doesn't
+	 *         start with a prefix followed by the delimiter
+	 */
+	public String getPrefixPart(final String key) {
+		if (key == null) {
+			return null;
+		}
+		final int length = key.length();
+		PrefixTrie node = this;
+		for (int i = 0; i < length; i++) {
+			final char c = key.charAt(i);
+			if (node.prefixPart != null && c == delimiter) {
+				return node.prefixPart;
+			}
+			node = node.getChild(c);
+			if (node == null) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+}
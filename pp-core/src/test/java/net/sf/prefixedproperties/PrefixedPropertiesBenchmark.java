@@ -0,0 +1,722 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.prefixedproperties.config.DynamicPrefixConfig;
+import net.sf.prefixedproperties.config.PrefixConfig;
+import net.sf.prefixedproperties.config.StagingPrefixConfig;
+
+import org.junit.Test;
+
+/**
+ * Micro benchmarks for PrefixedProperties. They are not part of the regular
+ * build and have to be started explicitly, e.g. with
+ * <code>mvn test -Dtest=PrefixedPropertiesBenchmark</code>.
+ */
+public class PrefixedPropertiesBenchmark {
+
+	private static final int KEYS = 50000;
+
+	private static final int ROUNDS = 10;
+
+	private static final String[] STAGES = { StagingPrefixConfig.DEV, StagingPrefixConfig.TEST,
+			StagingPrefixConfig.LIVE };
+
+	private static PrefixedProperties createProperties(final int size) {
+		final PrefixedProperties properties = new PrefixedProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+		for (int i = 0; i < size; i++) {
+			final String key = "component" + i % 100 + ".key" + i;
+			if (i % 4 == 0) {
+				properties.put(key, "value" + i);
+			} else {
+				properties.put(STAGES[i % STAGES.length] + PrefixConfig.PREFIXDELIMITER + key, "value" + i);
+			}
+		}
+		return properties;
+	}
+
+	private static void print(final String name, final long nanos, final int operations) {
+		System.out.println(name + ": " + nanos / 1000000 + " ms, " + nanos / operations + " ns/op");
+	}
+
+	/**
+	 * Runs the given task on the given number of threads at the same time.
+	 * 
+	 * @param threads
+	 *            the number of threads
+	 * @param task
+	 *            the task
+	 * @return the elapsed nanos until all threads are done
+	 */
+	private static long runConcurrently(final int threads, final Runnable task) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		for (int i = 0; i < threads; i++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						task.run();
+					} catch (final Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		final long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		final long nanos = System.nanoTime() - begin;
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		return nanos;
+	}
+
+	/**
+	 * Compares reading 30 keys one by one with reading them at once.
+	 */
+	@Test
+	public void getAll() {
+		final PrefixedProperties properties = createProperties(KEYS);
+		final String[] keys = new String[30];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "component" + i + ".key" + (i + 1);
+		}
+		final String[] values = new String[keys.length];
+		final int operations = ROUNDS * KEYS / keys.length;
+		for (int warmup = 0; warmup < 2; warmup++) {
+			for (int i = 0; i < operations; i++) {
+				properties.getAll(keys, values);
+				for (int j = 0; j < keys.length; j++) {
+					Assert.assertEquals(properties.getProperty(keys[j]), values[j]);
+				}
+			}
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			for (int j = 0; j < keys.length; j++) {
+				values[j] = properties.getProperty(keys[j]);
+			}
+		}
+		print("30 x getProperty", System.nanoTime() - start, operations);
+
+		start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			properties.getAll(keys, values);
+		}
+		print("getAll of 30 keys", System.nanoTime() - start, operations);
+	}
+
+	/**
+	 * Measures setProperty with and without an attached journal and the
+	 * replay of the journal when opening it again.
+	 */
+	@Test
+	public void journal() throws IOException {
+		final File directory = File.createTempFile("journal", "");
+		Assert.assertTrue(directory.delete());
+		try {
+			for (int round = 0; round < 3; round++) {
+				final PrefixedProperties plain = createProperties(KEYS);
+				long start = System.nanoTime();
+				for (int i = 0; i < KEYS; i++) {
+					plain.setProperty("component" + i % 100 + ".key" + i, "changed" + i);
+				}
+				print("setProperty", System.nanoTime() - start, KEYS);
+
+				final PrefixedProperties journaled = createProperties(KEYS);
+				final PropertiesJournal journal = PropertiesJournal.open(directory, journaled,
+						PropertiesJournal.DEFAULT_SYNC_INTERVAL, Long.MAX_VALUE);
+				start = System.nanoTime();
+				for (int i = 0; i < KEYS; i++) {
+					journaled.setProperty("component" + i % 100 + ".key" + i, "changed" + i);
+				}
+				print("setProperty journaled", System.nanoTime() - start, KEYS);
+				start = System.nanoTime();
+				journal.close();
+				print("close", System.nanoTime() - start, KEYS);
+
+				final PrefixedProperties replayed = new PrefixedProperties(
+						new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+				start = System.nanoTime();
+				final PropertiesJournal reopened = PropertiesJournal.open(directory, replayed);
+				print("open with replay", System.nanoTime() - start, KEYS);
+				Assert.assertEquals(journaled.getCompleteProperties().size(), replayed.getCompleteProperties()
+						.size());
+				start = System.nanoTime();
+				reopened.compact();
+				print("compact", System.nanoTime() - start, replayed.getCompleteProperties().size());
+				reopened.close();
+				for (final File file : directory.listFiles()) {
+					file.delete();
+				}
+			}
+		} finally {
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Measures the first element and a full iteration of the entry view on
+	 * 50k keys.
+	 */
+	@Test
+	public void liveViews() {
+		final PrefixedProperties properties = createProperties(KEYS);
+		final int size = properties.size();
+		for (int warmup = 0; warmup < 100; warmup++) {
+			Assert.assertTrue(properties.entrySet().iterator().hasNext());
+		}
+
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			Assert.assertNotNull(properties.entrySet().iterator().next().getValue());
+		}
+		print("entrySet() first entry", System.nanoTime() - start, ROUNDS);
+
+		start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			int count = 0;
+			for (final Map.Entry<Object, Object> entry : properties.entrySet()) {
+				if (entry.getValue() != null) {
+					count++;
+				}
+			}
+			Assert.assertEquals(size, count);
+		}
+		print("entrySet() iteration", System.nanoTime() - start, ROUNDS * size);
+	}
+
+	/**
+	 * Measures loading a large nested json and yaml document.
+	 */
+	@Test
+	public void load() throws IOException {
+		final StringBuilder json = new StringBuilder("{");
+		final StringBuilder yaml = new StringBuilder();
+		for (int stage = 0; stage < STAGES.length; stage++) {
+			json.append(stage > 0 ? "," : "").append('"').append(STAGES[stage]).append("\":{");
+			yaml.append(STAGES[stage]).append(":\n");
+			for (int component = 0; component < 100; component++) {
+				json.append(component > 0 ? "," : "").append("\"component").append(component).append("\":{");
+				yaml.append("  component").append(component).append(":\n");
+				for (int i = 0; i < KEYS / 100; i++) {
+					json.append(i > 0 ? "," : "").append("\"key").append(i).append("\":\"value").append(i).append('"');
+					yaml.append("    key").append(i).append(": value").append(i).append('\n');
+				}
+				json.append('}');
+			}
+			json.append('}');
+		}
+		json.append('}');
+		final byte[] jsonBytes = json.toString().getBytes("UTF-8");
+		final byte[] yamlBytes = yaml.toString().getBytes("UTF-8");
+		for (int round = 0; round < 3; round++) {
+			final PrefixedProperties jsonProperties = new PrefixedProperties(
+					new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+			long start = System.nanoTime();
+			jsonProperties.loadFromJSON(new ByteArrayInputStream(jsonBytes));
+			print("loadFromJSON", System.nanoTime() - start, STAGES.length * KEYS);
+			Assert.assertEquals("value1", jsonProperties.getProperty("component1.key1"));
+
+			final PrefixedProperties yamlProperties = new PrefixedProperties(
+					new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+			start = System.nanoTime();
+			yamlProperties.loadFromYAML(new ByteArrayInputStream(yamlBytes));
+			print("loadFromYAML", System.nanoTime() - start, STAGES.length * KEYS);
+			Assert.assertEquals(jsonProperties.size(), yamlProperties.size());
+
+			final PrefixedProperties filteredProperties = new PrefixedProperties(
+					new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+			filteredProperties.setPrefixFilteredLoadingEnabled(true);
+			start = System.nanoTime();
+			filteredProperties.loadFromJSON(new ByteArrayInputStream(jsonBytes));
+			print("loadFromJSON filtered", System.nanoTime() - start, STAGES.length * KEYS);
+			Assert.assertEquals(jsonProperties.size(), filteredProperties.size());
+			Assert.assertEquals(KEYS, filteredProperties.getCompleteProperties().size());
+		}
+	}
+
+	/**
+	 * Compares starting from the binary format with loading the same entries
+	 * from JSON.
+	 */
+	@Test
+	public void loadFromBinary() throws IOException {
+		final PrefixedProperties source = createProperties(STAGES.length * KEYS);
+		final ByteArrayOutputStream json = new ByteArrayOutputStream();
+		source.storeToJSON(json);
+		final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		source.storeToBinary(binary);
+		System.out.println("JSON: " + json.size() / 1024 + " KB, binary: " + binary.size() / 1024 + " KB");
+		final int entries = source.getCompleteProperties().size();
+		for (int round = 0; round < 3; round++) {
+			final PrefixedProperties jsonProperties = new PrefixedProperties(
+					new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+			long start = System.nanoTime();
+			jsonProperties.loadFromJSON(new ByteArrayInputStream(json.toByteArray()));
+			print("loadFromJSON", System.nanoTime() - start, entries);
+
+			start = System.nanoTime();
+			final PrefixedProperties binaryProperties = PrefixedProperties
+					.createFromBinary(new ByteArrayInputStream(binary.toByteArray()));
+			print("createFromBinary", System.nanoTime() - start, entries);
+			Assert.assertEquals(jsonProperties.size(), binaryProperties.size());
+			Assert.assertEquals(source.getProperty("component1.key1"), binaryProperties.getProperty("component1.key1"));
+		}
+	}
+
+	/**
+	 * Compares the memory mapped parsing of a properties file with
+	 * Properties.load, once for the parsing only and once for loading into
+	 * PrefixedProperties.
+	 */
+	@Test
+	public void loadFromFile() throws IOException {
+		final File file = File.createTempFile("benchmark", ".properties");
+		file.deleteOnExit();
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		for (final String stage : STAGES) {
+			writer.write("# " + stage + "\n");
+			for (int i = 0; i < KEYS; i++) {
+				writer.write(stage + ".component" + i % 100 + ".key" + i + " = value " + i
+						+ " \\u00e9\u00e8 with a longer text\n");
+			}
+		}
+		writer.close();
+		final int entries = STAGES.length * KEYS;
+		for (int round = 0; round < 3; round++) {
+			final Properties plain = new Properties();
+			long start = System.nanoTime();
+			Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			plain.load(reader);
+			reader.close();
+			print("Properties.load parsing", System.nanoTime() - start, entries);
+
+			final Map<Object, Object> parsed = new HashMap<Object, Object>();
+			start = System.nanoTime();
+			final FileInputStream in = new FileInputStream(file);
+			MappedPropertiesParser.parse(in.getChannel().map(MapMode.READ_ONLY, 0, file.length()),
+					Charset.forName("UTF-8"), parsed);
+			in.close();
+			print("mapped parsing", System.nanoTime() - start, entries);
+			Assert.assertEquals(plain, parsed);
+
+			final PrefixedProperties loaded = new PrefixedProperties(new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+			start = System.nanoTime();
+			reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			loaded.load(reader);
+			reader.close();
+			print("load", System.nanoTime() - start, entries);
+
+			final PrefixedProperties mapped = new PrefixedProperties(new StagingPrefixConfig(StagingPrefixConfig.LIVE));
+			start = System.nanoTime();
+			mapped.loadFromFile(file, "UTF-8");
+			print("loadFromFile", System.nanoTime() - start, entries);
+			Assert.assertEquals(loaded.size(), mapped.size());
+		}
+	}
+
+	/**
+	 * Measures many threads switching their local prefix per request while
+	 * reading a few properties.
+	 */
+	@Test
+	public void localPrefixSwitching() throws InterruptedException {
+		final PrefixedProperties properties = createProperties(KEYS);
+		final int operations = 200000;
+		final Runnable request = new Runnable() {
+			@Override
+			public void run() {
+				int found = 0;
+				for (int i = 0; i < operations; i++) {
+					properties.setLocalPrefix(STAGES[i % STAGES.length]);
+					if (properties.getProperty("component1.key1") != null) {
+						found++;
+					}
+					properties.getProperty("component4.key4");
+				}
+				Assert.assertTrue(found > 0);
+			}
+		};
+		runConcurrently(1, request);
+		final int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= Math.max(8, cores); threads *= 2) {
+			final long nanos = runConcurrently(threads, request);
+			System.out.println("prefix switching requests with " + threads + " threads: " + nanos / 1000000 + " ms, "
+					+ (long) threads * operations * 1000 / Math.max(1, nanos / 1000000) + " requests/s");
+		}
+	}
+
+	/**
+	 * Reads a prefix config from a growing number of threads. As the reads
+	 * don't lock, the throughput should grow with the number of cores.
+	 */
+	@Test
+	public void prefixConfigScaling() throws InterruptedException {
+		final StagingPrefixConfig config = new StagingPrefixConfig(StagingPrefixConfig.LIVE);
+		final int operations = 2000000;
+		final Runnable reader = new Runnable() {
+			@Override
+			public void run() {
+				int found = 0;
+				for (int i = 0; i < operations; i++) {
+					if (config.containsValidPrefix("liv.key") && config.getPrefixes().contains("liv")
+							&& config.getLocalPrefix() == null && config.getPrefixedKey("key", false) != null) {
+						found++;
+					}
+				}
+				Assert.assertEquals(operations, found);
+			}
+		};
+		runConcurrently(1, reader);
+		final int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= Math.max(8, cores); threads *= 2) {
+			final long nanos = runConcurrently(threads, reader);
+			System.out.println("prefix config reads with " + threads + " threads: " + nanos / 1000000 + " ms, "
+					+ (long) threads * operations * 1000 / Math.max(1, nanos / 1000000) + " ops/s");
+		}
+	}
+
+	/**
+	 * Compares switching the local prefix of the thread before each lookup
+	 * with handing a prefix selector to the lookup.
+	 */
+	@Test
+	public void selectorLookup() {
+		final PrefixedProperties properties = createProperties(KEYS);
+		properties.setResolvedValueCacheEnabled(true);
+		final PrefixSelector[] selectors = new PrefixSelector[STAGES.length];
+		for (int i = 0; i < STAGES.length; i++) {
+			selectors[i] = properties.createPrefixSelector(STAGES[i]);
+		}
+		final int operations = ROUNDS * KEYS;
+		for (int warmup = 0; warmup < 2; warmup++) {
+			for (int i = 0; i < KEYS; i++) {
+				properties.setLocalPrefix(STAGES[i % STAGES.length]);
+				final String expected = properties.getProperty("component1.key1");
+				Assert.assertEquals(expected, properties.getProperty("component1.key1", selectors[i % STAGES.length]));
+			}
+		}
+		properties.clearLocalPrefixes();
+
+		long start = System.nanoTime();
+		int found = 0;
+		for (int i = 0; i < operations; i++) {
+			properties.setLocalPrefix(STAGES[i % STAGES.length]);
+			found += properties.getProperty("component1.key1") != null ? 1 : 0;
+		}
+		print("setLocalPrefix and getProperty", System.nanoTime() - start, operations);
+		properties.clearLocalPrefixes();
+
+		start = System.nanoTime();
+		int selected = 0;
+		for (int i = 0; i < operations; i++) {
+			selected += properties.getProperty("component1.key1", selectors[i % STAGES.length]) != null ? 1 : 0;
+		}
+		print("getProperty with selector", System.nanoTime() - start, operations);
+		Assert.assertEquals(found, selected);
+	}
+
+	/**
+	 * Measures writing the complete properties as JSON and YAML.
+	 */
+	@Test
+	public void storeToJSON() throws IOException {
+		final PrefixedProperties source = createProperties(STAGES.length * KEYS);
+		final int entries = source.getCompleteProperties().size();
+		for (int round = 0; round < ROUNDS; round++) {
+			final ByteArrayOutputStream json = new ByteArrayOutputStream();
+			long start = System.nanoTime();
+			source.storeToJSON(json);
+			print("storeToJSON", System.nanoTime() - start, entries);
+
+			final ByteArrayOutputStream yaml = new ByteArrayOutputStream();
+			start = System.nanoTime();
+			source.storeToYAML(yaml);
+			print("storeToYAML", System.nanoTime() - start, entries);
+		}
+	}
+
+	/**
+	 * Measures the overhead per task of propagating the local prefix compared
+	 * to setting it within the task.
+	 */
+	@Test
+	public void taskPropagation() throws InterruptedException, ExecutionException {
+		final PrefixedProperties properties = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.LIVE), new DynamicPrefixConfig("component1"));
+		properties.setLocalPrefix("test.component1");
+		final AtomicInteger counter = new AtomicInteger();
+		final Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				counter.incrementAndGet();
+			}
+		};
+		final Runnable settingTask = new Runnable() {
+			@Override
+			public void run() {
+				properties.setLocalPrefix("test.component1");
+				try {
+					counter.incrementAndGet();
+				} finally {
+					properties.clearLocalPrefixes();
+				}
+			}
+		};
+		final int operations = ROUNDS * KEYS;
+		for (int warmup = 0; warmup < 2; warmup++) {
+			for (int i = 0; i < KEYS; i++) {
+				task.run();
+				settingTask.run();
+				properties.setLocalPrefix("test.component1");
+				properties.wrapTask(task).run();
+			}
+		}
+		properties.setLocalPrefix("test.component1");
+
+		long start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			task.run();
+		}
+		print("plain task", System.nanoTime() - start, operations);
+
+		start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			settingTask.run();
+		}
+		print("task setting the local prefix", System.nanoTime() - start, operations);
+		properties.setLocalPrefix("test.component1");
+
+		start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			properties.wrapTask(task).run();
+		}
+		print("wrapped task", System.nanoTime() - start, operations);
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final ExecutorService wrapped = properties.wrapExecutorService(executor);
+			final int tasks = KEYS;
+			for (final ExecutorService service : new ExecutorService[] { executor, wrapped, executor, wrapped }) {
+				start = System.nanoTime();
+				Future<?> last = null;
+				for (int i = 0; i < tasks; i++) {
+					last = service.submit(task);
+				}
+				last.get();
+				print(service == executor ? "executor" : "wrapped executor", System.nanoTime() - start, tasks);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Compares parsing the values on every call with the typed getters.
+	 */
+	@Test
+	public void typedValues() {
+		final PrefixedProperties properties = createProperties(KEYS);
+		properties.setResolvedValueCacheEnabled(true);
+		properties.setProperty("limit", "1000");
+		properties.setProperty("flags", "1, 2, 4, 8, 16, 32");
+		final int operations = ROUNDS * KEYS;
+		for (int warmup = 0; warmup < 2; warmup++) {
+			for (int i = 0; i < KEYS; i++) {
+				Assert.assertEquals(1000, Integer.parseInt(properties.getProperty("limit")));
+				Assert.assertEquals(1000, properties.getInt("limit", 0));
+				Assert.assertEquals(6, properties.getProperty("flags").split(",[\\s]*|[\\s]*$").length);
+				Assert.assertEquals(6, properties.getIntArray("flags").length);
+			}
+		}
+
+		long start = System.nanoTime();
+		long sum = 0;
+		for (int i = 0; i < operations; i++) {
+			sum += Integer.parseInt(properties.getProperty("limit"));
+		}
+		print("getProperty and parseInt", System.nanoTime() - start, operations);
+
+		start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			sum -= properties.getInt("limit", 0);
+		}
+		print("getInt", System.nanoTime() - start, operations);
+		Assert.assertEquals(0, sum);
+
+		start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			final String[] flags = properties.getProperty("flags").split(",[\\s]*|[\\s]*$");
+			final int[] result = new int[flags.length];
+			for (int j = 0; j < flags.length; j++) {
+				result[j] = Integer.parseInt(flags[j]);
+			}
+			sum += result[5];
+		}
+		print("getProperty, split and parseInt", System.nanoTime() - start, operations);
+
+		start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			sum -= properties.getIntArray("flags")[5];
+		}
+		print("getIntArray", System.nanoTime() - start, operations);
+		Assert.assertEquals(0, sum);
+	}
+
+	/**
+	 * Compares lookups with a fixed local prefix to lookups on a view with
+	 * that prefix.
+	 */
+	@Test
+	public void view() {
+		final PrefixedProperties properties = createProperties(KEYS);
+		final PrefixedPropertiesView view = properties.view(StagingPrefixConfig.TEST);
+		properties.setLocalPrefix(StagingPrefixConfig.TEST);
+		final String[] keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			keys[i] = "component" + i % 100 + ".key" + i;
+		}
+		long start = System.nanoTime();
+		Assert.assertEquals(properties.size(), view.size());
+		print("resolving the view", System.nanoTime() - start, KEYS);
+		final int operations = ROUNDS * KEYS;
+		for (int warmup = 0; warmup < 2; warmup++) {
+			for (int i = 0; i < KEYS; i++) {
+				Assert.assertEquals(properties.getProperty(keys[i]), view.getProperty(keys[i]));
+			}
+		}
+
+		start = System.nanoTime();
+		int found = 0;
+		for (int i = 0; i < operations; i++) {
+			found += properties.getProperty(keys[i % KEYS]) != null ? 1 : 0;
+		}
+		print("getProperty with local prefix", System.nanoTime() - start, operations);
+
+		start = System.nanoTime();
+		int viewed = 0;
+		for (int i = 0; i < operations; i++) {
+			viewed += view.getProperty(keys[i % KEYS]) != null ? 1 : 0;
+		}
+		print("getProperty of view", System.nanoTime() - start, operations);
+		Assert.assertEquals(found, viewed);
+
+		start = System.nanoTime();
+		for (int i = 0; i < KEYS; i++) {
+			properties.put(StagingPrefixConfig.TEST + PrefixConfig.PREFIXDELIMITER + keys[i], "changed" + i);
+		}
+		print("put with view", System.nanoTime() - start, KEYS);
+		Assert.assertEquals("changed1", view.getProperty(keys[1]));
+		properties.clearLocalPrefixes();
+	}
+
+	/**
+	 * Compares the regex based unprefixing with the current one and measures
+	 * the methods using it on 50k keys.
+	 */
+	@Test
+	public void unprefixedKey() {
+		final PrefixedProperties properties = createProperties(KEYS);
+		final PrefixConfig config = properties.getPrefixConfig();
+		final List<String> keys = new ArrayList<String>();
+		for (final Object key : properties.getCompleteProperties().keySet()) {
+			keys.add((String) key);
+		}
+		for (int warmup = 0; warmup < 2; warmup++) {
+			for (final String key : keys) {
+				Assert.assertEquals(key.replaceFirst("^" + config.getPrefixPart(key), ""),
+						config.getUnprefixedKey(key));
+			}
+		}
+
+		long start = System.nanoTime();
+		int length = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			for (final String key : keys) {
+				length += key.replaceFirst("^" + config.getPrefixPart(key), "").length();
+			}
+		}
+		print("regex replaceFirst", System.nanoTime() - start, ROUNDS * keys.size());
+
+		start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (final String key : keys) {
+				length -= config.getUnprefixedKey(key).length();
+			}
+		}
+		print("getUnprefixedKey", System.nanoTime() - start, ROUNDS * keys.size());
+		Assert.assertEquals(0, length);
+
+		final int size = properties.keySet().size();
+		start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			Assert.assertEquals(size, properties.size());
+		}
+		print("size()", System.nanoTime() - start, ROUNDS);
+
+		start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			Assert.assertFalse(properties.stringPropertyNames().isEmpty());
+		}
+		print("stringPropertyNames()", System.nanoTime() - start, ROUNDS);
+	}
+
+}
@@ -28,21 +28,45 @@ package net.sf.prefixedproperties;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.Assert;
 import net.sf.prefixedproperties.config.ComponentPrefixConfig;
+import net.sf.prefixedproperties.config.DefaultPrefixConfig;
 import net.sf.prefixedproperties.config.DynamicPrefixConfig;
+import net.sf.prefixedproperties.config.GenderPrefixConfig;
 import net.sf.prefixedproperties.config.PrefixConfig;
 import net.sf.prefixedproperties.config.ServicePrefixConfig;
 import net.sf.prefixedproperties.config.StagingPrefixConfig;
@@ -119,6 +143,60 @@ public final class PrefixedPropertiesTest {
 		Assert.assertEquals("five", result[2]);
 	}
 
+	/**
+	 * Test storing to and loading from the binary format.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testBinary() throws IOException {
+		final PrefixedProperties serviceProperties = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV),
+				new ComponentPrefixConfig(ComponentPrefixConfig.CACHE));
+		final InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("prefixed.json");
+		try {
+			serviceProperties.loadFromJSON(is);
+		} finally {
+			is.close();
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serviceProperties.storeToBinary(out);
+		final byte[] bytes = out.toByteArray();
+
+		final PrefixedProperties restored = PrefixedProperties.createFromBinary(new ByteArrayInputStream(bytes));
+		Assert.assertEquals(serviceProperties.getEffectivePrefix(), restored.getEffectivePrefix());
+		Assert.assertEquals(serviceProperties.size(), restored.size());
+		Assert.assertEquals("property1 of service1 in environment test", restored.get("prop1"));
+		Assert.assertEquals("property3 of service1", restored.get("prop3"));
+		restored.setLocalPrefix(ServicePrefixConfig.ACCOUNTING_SRV);
+		Assert.assertEquals("property1 of service2 in environment test", restored.get("prop1"));
+		Assert.assertEquals("property5 in environment test", restored.get("prop5"));
+
+		properties.loadFromBinary(new ByteArrayInputStream(bytes));
+		Assert.assertEquals(serviceProperties.getCompleteProperties().size(), properties.getCompleteProperties()
+				.size());
+
+		bytes[bytes.length / 2]++;
+		try {
+			PrefixedProperties.createFromBinary(new ByteArrayInputStream(bytes));
+			Assert.fail("IOException expected");
+		} catch (final IOException e) {
+			// expected
+		}
+
+		// a huge length in the header fails with the end of the stream
+		bytes[8] = 0x7F;
+		bytes[9] = bytes[10] = bytes[11] = (byte) 0xFF;
+		try {
+			PrefixedProperties.createFromBinary(new ByteArrayInputStream(bytes));
+			Assert.fail("IOException expected");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
 	/**
 	 * Test boolean.
 	 */
@@ -218,6 +296,83 @@ public final class PrefixedPropertiesTest {
 
 	}
 
+	/**
+	 * Test the change listeners for all keys, exact keys and key prefixes.
+	 */
+	@Test
+	public void testChangeListeners() {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.LIVE), new DynamicPrefixConfig());
+		props.setChangeListenerExecutor(new Executor() {
+
+			@Override
+			public void execute(final Runnable command) {
+				tasks.add(command);
+			}
+		});
+		final List<Map<Object, Object>> all = new ArrayList<Map<Object, Object>>();
+		final List<Map<Object, Object>> pool = new ArrayList<Map<Object, Object>>();
+		final List<Map<Object, Object>> url = new ArrayList<Map<Object, Object>>();
+		final PropertiesChangeListener allListener = new PropertiesChangeListener() {
+
+			@Override
+			public void propertiesChanged(final Map<Object, Object> changes) {
+				all.add(changes);
+			}
+		};
+		props.addChangeListener(allListener);
+		props.addPrefixChangeListener("db.pool.", new PropertiesChangeListener() {
+
+			@Override
+			public void propertiesChanged(final Map<Object, Object> changes) {
+				pool.add(changes);
+			}
+		});
+		props.addChangeListener("db.url", new PropertiesChangeListener() {
+
+			@Override
+			public void propertiesChanged(final Map<Object, Object> changes) {
+				url.add(changes);
+			}
+		});
+		for (int i = 0; i < 10000; i++) {
+			props.setProperty("liv.db.pool.size", Integer.toString(i));
+			props.setProperty("key" + i, "value");
+		}
+		props.put("db.url", "jdbc:test");
+		props.remove("key0");
+		Assert.assertEquals(1, tasks.size());
+		Assert.assertTrue(all.isEmpty());
+		tasks.remove(0).run();
+		Assert.assertEquals(1, all.size());
+		Assert.assertEquals(10002, all.get(0).size());
+		Assert.assertTrue(all.get(0).containsKey("key0"));
+		Assert.assertNull(all.get(0).get("key0"));
+		Assert.assertEquals("liv.db.pool.size", all.get(0).keySet().iterator().next());
+		Assert.assertEquals(Collections.singletonMap("liv.db.pool.size", "9999"), pool.get(0));
+		Assert.assertEquals(Collections.singletonMap("db.url", "jdbc:test"), url.get(0));
+
+		props.put("db.pool.max", "10");
+		props.put("db.poolmax", "10");
+		props.put("test.db.url", "jdbc:other");
+		Assert.assertEquals(1, tasks.size());
+		tasks.remove(0).run();
+		Assert.assertEquals(2, all.size());
+		Assert.assertEquals(Collections.singletonMap("db.pool.max", "10"), pool.get(1));
+		Assert.assertEquals(Collections.singletonMap("test.db.url", "jdbc:other"), url.get(1));
+
+		Assert.assertTrue(props.removeChangeListener(allListener));
+		Assert.assertFalse(props.removeChangeListener(allListener));
+		props.clear();
+		tasks.remove(0).run();
+		Assert.assertEquals(2, all.size());
+		Assert.assertEquals(2, pool.get(2).size());
+		Assert.assertNull(pool.get(2).get("db.pool.max"));
+		Assert.assertEquals(2, url.get(2).size());
+		Assert.assertTrue(tasks.isEmpty());
+	}
+
 	public void testClearConfiguredPrefix() {
 
 	}
@@ -298,6 +453,76 @@ public final class PrefixedPropertiesTest {
 
 	}
 
+	/**
+	 * Test compiled cascade.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testCompiledCascade() throws IOException {
+		final PrefixedProperties nested = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV));
+		final InputStream is = Thread.currentThread().getContextClassLoader()
+				.getResourceAsStream("prefixed.properties");
+		try {
+			nested.load(is);
+		} finally {
+			is.close();
+		}
+		nested.setMixDefaultAndLocalPrefixSettings(false);
+		final PrefixedProperties compiled = nested.clone();
+		compiled.setCompiledCascadeEnabled(true);
+		Assert.assertTrue(compiled.isCompiledCascadeEnabled());
+		final String[] keys = new String[] { "prop1", "prop2", "prop3", "prop4", "prop5", "prop6", "prdsrv.prop6",
+				"accsrv.prop3", "test.accsrv.prop1", "unknown" };
+		for (final String key : keys) {
+			Assert.assertEquals(nested.get(key), compiled.get(key));
+		}
+		nested.setLocalPrefix(ServicePrefixConfig.ACCOUNTING_SRV);
+		compiled.setLocalPrefix(ServicePrefixConfig.ACCOUNTING_SRV);
+		for (final String key : keys) {
+			Assert.assertEquals(nested.get(key), compiled.get(key));
+		}
+		nested.setProperty("accsrv.prop1", "property1 of service2");
+		compiled.setProperty("accsrv.prop1", "property1 of service2");
+		nested.remove("prop3");
+		compiled.remove("prop3");
+		for (final String key : keys) {
+			Assert.assertEquals(nested.get(key), compiled.get(key));
+		}
+		nested.clearLocalPrefixes();
+		compiled.clearLocalPrefixes();
+		for (final String key : keys) {
+			Assert.assertEquals(nested.get(key), compiled.get(key));
+		}
+		Assert.assertEquals(nested.getEffectivePrefix(), compiled.getEffectivePrefix());
+
+		// more combinations than are kept compiled
+		final PrefixedProperties dynamic = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST), new DynamicPrefixConfig());
+		dynamic.setMixDefaultAndLocalPrefixSettings(false);
+		dynamic.setCompiledCascadeEnabled(true);
+		for (int i = 0; i < 20; i++) {
+			dynamic.setProperty("test.p" + i + ".key", "v" + i);
+			dynamic.setLocalPrefix("test.p" + i);
+			Assert.assertEquals("v" + i, dynamic.get("key"));
+		}
+		dynamic.remove("key");
+		Assert.assertNull(dynamic.get("key"));
+		dynamic.setLocalPrefix("test.p0");
+		Assert.assertEquals("v0", dynamic.get("key"));
+		dynamic.remove("key");
+		Assert.assertNull(dynamic.get("key"));
+		dynamic.setLocalPrefix("test.p18");
+		Assert.assertEquals("v18", dynamic.get("key"));
+		Assert.assertEquals("v18", dynamic.get("p18.key"));
+		dynamic.remove("test.p18.key");
+		Assert.assertNull(dynamic.get("key"));
+		Assert.assertNull(dynamic.get("p18.key"));
+	}
+
 	/**
 	 * Test contains.
 	 */
@@ -472,6 +697,44 @@ public final class PrefixedPropertiesTest {
 		Assert.assertEquals(6.0f, result[2]);
 	}
 
+	/**
+	 * Test the batch lookup.
+	 */
+	@Test
+	public void testGetAll() throws IOException {
+		final PrefixedProperties nested = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV));
+		final InputStream is = Thread.currentThread().getContextClassLoader()
+				.getResourceAsStream("prefixed.properties");
+		try {
+			nested.load(is);
+		} finally {
+			is.close();
+		}
+		nested.setMixDefaultAndLocalPrefixSettings(false);
+		final String[] keys = new String[] { "prop1", "prop2", "prop3", "prdsrv.prop6", "test.accsrv.prop1",
+				"unknown" };
+		for (int run = 0; run < 3; run++) {
+			nested.setCompiledCascadeEnabled(run == 1);
+			nested.setResolvedValueCacheEnabled(run == 2);
+			for (int local = 0; local < 2; local++) {
+				if (local == 1) {
+					nested.setLocalPrefix(ServicePrefixConfig.ACCOUNTING_SRV);
+				}
+				final String[] values = nested.getAll(keys, null);
+				final Map<String, String> map = nested.getAll(Arrays.asList(keys));
+				for (int i = 0; i < keys.length; i++) {
+					Assert.assertEquals(nested.getProperty(keys[i]), values[i]);
+					Assert.assertEquals(nested.getProperty(keys[i]), map.get(keys[i]));
+				}
+				Assert.assertFalse(map.containsKey("unknown"));
+				Assert.assertTrue(Arrays.equals(values, nested.snapshot().getAll(keys, new String[keys.length])));
+			}
+			nested.clearLocalPrefixes();
+		}
+	}
+
 	/**
 	 * Test get property.
 	 */
@@ -569,8 +832,119 @@ public final class PrefixedPropertiesTest {
 		serviceProperties.storeToJSON(fos);
 		fos.flush();
 		fos.close();
+		final PrefixedProperties reloaded = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV),
+				new ComponentPrefixConfig(ComponentPrefixConfig.CACHE));
+		final InputStream stored = new FileInputStream(createTempFile);
+		try {
+			reloaded.loadFromJSON(stored);
+		} finally {
+			stored.close();
+		}
+		Assert.assertEquals(new HashMap<Object, Object>(serviceProperties.getCompleteProperties()),
+				new HashMap<Object, Object>(reloaded.getCompleteProperties()));
+
+		// the plain values of each level are written before the groups
+		final PrefixedProperties ordered = PrefixedProperties.createCascadingPrefixProperties(new StagingPrefixConfig());
+		ordered.put("test.b", "1");
+		ordered.put("a", "2");
+		ordered.put("zzz", "3");
+		ordered.put("liv.c", "4");
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ordered.storeToJSON(out);
+		final String json = out.toString("UTF-8").replaceAll("\\s", "");
+		Assert.assertEquals("{\"a\":\"2\",\"zzz\":\"3\",\"liv\":{\"c\":\"4\"},\"test\":{\"b\":\"1\"}}", json);
+	}
+
+	/**
+	 * Test the journal of runtime modifications.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testJournal() throws IOException {
+		final File directory = File.createTempFile("journal", "");
+		Assert.assertTrue(directory.delete());
+		final File journalFile = new File(directory, PropertiesJournal.JOURNAL_FILE);
+		final File snapshotFile = new File(directory, PropertiesJournal.SNAPSHOT_FILE);
+		final File writtenSnapshotFile = new File(directory, PropertiesJournal.SNAPSHOT_FILE + ".tmp");
+		try {
+			properties.setProperty(getPrefixKey("KEYA"), "A");
+			properties.setProperty("KEYB", "B");
+			PropertiesJournal journal = PropertiesJournal.open(directory, properties);
+			Assert.assertTrue(snapshotFile.isFile());
+			try {
+				PropertiesJournal.open(directory, properties);
+				Assert.fail("IllegalStateException expected");
+			} catch (final IllegalStateException e) {
+				// expected
+			}
+			properties.setProperty(getPrefixKey("KEYC"), "C");
+			properties.put("KEYD", "D");
+			properties.remove("KEYB");
+			final Map<Object, Object> bulk = new HashMap<Object, Object>();
+			for (int i = 0; i < 100; i++) {
+				bulk.put("BULK" + i, "V" + i);
+			}
+			properties.putAll(bulk);
+			properties.load(new ByteArrayInputStream("KEYE=E\n".getBytes("ISO-8859-1")));
+			journal.close();
+			properties.setProperty("KEYF", "not journaled");
+			final Map<Object, Object> expected = new HashMap<Object, Object>(properties.getCompleteProperties());
+			expected.remove("KEYF");
+
+			PrefixedProperties restored = new PrefixedProperties(config.clone());
+			restored.setProperty("KEYB", "from the original configuration");
+			journal = PropertiesJournal.open(directory, restored);
+			Assert.assertEquals(expected, new HashMap<Object, Object>(restored.getCompleteProperties()));
+			Assert.assertEquals("C", restored.get("KEYC"));
+
+			// a torn record at the end is dropped
+			journal.close();
+			final long journalLength = journalFile.length();
+			final FileOutputStream torn = new FileOutputStream(journalFile, true);
+			torn.write(new byte[] { 1, 4, 'K' });
+			torn.close();
+			restored = new PrefixedProperties(config.clone());
+			journal = PropertiesJournal.open(directory, restored);
+			Assert.assertEquals(journalLength, journalFile.length());
+			Assert.assertEquals(expected, new HashMap<Object, Object>(restored.getCompleteProperties()));
+
+			restored.clear();
+			restored.setProperty("KEYG", "G");
+			journal.compact();
+			Assert.assertEquals(8, journalFile.length());
+			restored.removeAll("KEYG");
+			journal.sync();
+			Assert.assertTrue(journalFile.length() > 8);
+			journal.close();
+			restored = new PrefixedProperties(config.clone());
+			PropertiesJournal.open(directory, restored).close();
+			Assert.assertTrue(restored.getCompleteProperties().isEmpty());
+
+			// a crash between deleting the old and renaming the new snapshot
+			journal = PropertiesJournal.open(directory, restored);
+			restored.setProperty("KEYG", "G");
+			journal.compact();
+			journal.close();
+			Assert.assertTrue(snapshotFile.renameTo(writtenSnapshotFile));
+			restored = new PrefixedProperties(config.clone());
+			restored.setProperty("KEYH", "from the original configuration");
+			PropertiesJournal.open(directory, restored).close();
+			Assert.assertTrue(snapshotFile.isFile());
+			Assert.assertFalse(writtenSnapshotFile.isFile());
+			Assert.assertEquals(Collections.singletonMap("KEYG", "G"), new HashMap<Object, Object>(
+					restored.getCompleteProperties()));
+		} finally {
+			journalFile.delete();
+			snapshotFile.delete();
+			writtenSnapshotFile.delete();
+			directory.delete();
+		}
 	}
-	
+
 	@Test
 	public void testYAML() throws IOException {
 		final PrefixedProperties serviceProperties = PrefixedProperties.createCascadingPrefixProperties(
@@ -602,6 +976,58 @@ public final class PrefixedPropertiesTest {
 		serviceProperties.storeToYAML(fos);
 		fos.flush();
 		fos.close();
+		final PrefixedProperties reloaded = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV),
+				new ComponentPrefixConfig(ComponentPrefixConfig.CACHE));
+		final InputStream stored = new FileInputStream(createTempFile);
+		try {
+			reloaded.loadFromYAML(stored);
+		} finally {
+			stored.close();
+		}
+		Assert.assertEquals(new HashMap<Object, Object>(serviceProperties.getCompleteProperties()),
+				new HashMap<Object, Object>(reloaded.getCompleteProperties()));
+	}
+
+	/**
+	 * Test the key index behind size, isEmpty and keySet.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testKeyIndex() throws IOException {
+		Assert.assertTrue(properties.isEmpty());
+		properties.setProperty(getPrefixKey("KEYA"), "TEST-A");
+		properties.setProperty("KEYA", "A");
+		properties.setProperty(StagingPrefixConfig.LIVE + PrefixConfig.PREFIXDELIMITER + "KEYB", "LIVE-B");
+		properties.setProperty(StagingPrefixConfig.LIVE, "hidden");
+		properties.put(new Integer(5), new Integer(50));
+		Assert.assertEquals(2, properties.size());
+		Assert.assertEquals(new HashSet<Object>(Arrays.asList("KEYA", new Integer(5))), properties.keySet());
+
+		properties.setLocalPrefix(StagingPrefixConfig.LIVE);
+		Assert.assertEquals(3, properties.size());
+		Assert.assertEquals(new HashSet<Object>(Arrays.asList("KEYA", "KEYB", new Integer(5))),
+				properties.keySet());
+		properties.clearLocalPrefixes();
+
+		properties.load(new ByteArrayInputStream("test.KEYC=TEST-C\nKEYD=D".getBytes("ISO-8859-1")));
+		Assert.assertEquals(4, properties.size());
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("KEYA", "KEYC", "KEYD")),
+				properties.stringPropertyNames());
+
+		properties.remove("KEYA");
+		Assert.assertEquals(4, properties.size());
+		properties.remove("KEYA");
+		properties.removeAll("KEYC");
+		properties.remove(new Integer(5));
+		Assert.assertEquals(1, properties.size());
+		Assert.assertFalse(properties.isEmpty());
+		properties.clear();
+		Assert.assertTrue(properties.isEmpty());
+		Assert.assertEquals(0, properties.size());
 	}
 
 	/**
@@ -632,6 +1058,131 @@ public final class PrefixedPropertiesTest {
 		Assert.assertEquals(i, x);
 	}
 
+	/**
+	 * Test loading a memory mapped properties file.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testLoadFromFile() throws IOException {
+		final StringBuilder content = new StringBuilder();
+		content.append("# comment \\\n! other comment\r\n");
+		content.append(getPrefixKey("KEYA")).append(" = TEST-A\n");
+		content.append("KEYA:A\r");
+		content.append("  KEYB   continued \\\n   line \\\r\n\tend\n");
+		content.append("KEY\\ C\\=\\:=\\u00e9\\t\\n\u00e9\u4e2d\ud83d\ude00\n");
+		content.append("KEYD\n\n   \n");
+		content.append("KEYE=");
+		for (int i = 0; i < 1000; i++) {
+			content.append(i);
+		}
+		content.append("\nKEYF=last\\");
+		for (final String encoding : new String[] { "ISO-8859-1", "UTF-8" }) {
+			final File file = File.createTempFile("load", ".properties");
+			file.deleteOnExit();
+			final FileOutputStream fos = new FileOutputStream(file);
+			fos.write(content.toString().getBytes(encoding));
+			fos.close();
+
+			final Properties expected = new Properties();
+			final Reader reader = new InputStreamReader(new FileInputStream(file), encoding);
+			expected.load(reader);
+			reader.close();
+			final PrefixedProperties loaded = new PrefixedProperties();
+			loaded.loadFromFile(file, encoding);
+			Assert.assertEquals(expected.size(), loaded.size());
+			for (final String key : expected.stringPropertyNames()) {
+				Assert.assertEquals(expected.getProperty(key), loaded.getProperty(key));
+			}
+
+			properties.clear();
+			properties.loadFromFile(file, encoding);
+			Assert.assertEquals("TEST-A", properties.getProperty("KEYA"));
+			Assert.assertEquals("continued line end", properties.getProperty("KEYB"));
+			Assert.assertEquals("", properties.getProperty("KEYD"));
+			Assert.assertEquals("last", properties.getProperty("KEYF"));
+		}
+		final File file = File.createTempFile("load", ".properties");
+		file.deleteOnExit();
+		final FileOutputStream fos = new FileOutputStream(file);
+		fos.write("KEYA=\\u00".getBytes("ISO-8859-1"));
+		fos.close();
+		try {
+			properties.loadFromFile(file);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test the live views.
+	 */
+	@Test
+	public void testLiveViews() {
+		properties.setProperty(getPrefixKey("KEYA"), "TEST-A");
+		properties.setProperty("KEYA", "A");
+		properties.setProperty("KEYB", "B");
+		properties.setProperty(StagingPrefixConfig.LIVE + PrefixConfig.PREFIXDELIMITER + "C", "LIVE-C");
+		final Set<Object> keySet = properties.keySet();
+		final Collection<Object> values = properties.values();
+		final Set<Map.Entry<Object, Object>> entrySet = properties.entrySet();
+		Assert.assertEquals(2, keySet.size());
+		Assert.assertTrue(keySet.contains("KEYA"));
+		Assert.assertFalse(keySet.contains("C"));
+		Assert.assertEquals(new HashSet<Object>(Arrays.asList("TEST-A", "B")), new HashSet<Object>(values));
+
+		// the views follow later changes
+		properties.setProperty("KEYD", "D");
+		Assert.assertEquals(3, keySet.size());
+		Assert.assertTrue(values.contains("D"));
+
+		// no ConcurrentModificationException and removed keys are skipped
+		final Iterator<Map.Entry<Object, Object>> it = entrySet.iterator();
+		final Map.Entry<Object, Object> first = it.next();
+		properties.remove(first.getKey());
+		properties.setProperty("KEYE", "E");
+		int count = 1;
+		while (it.hasNext()) {
+			final Map.Entry<Object, Object> entry = it.next();
+			Assert.assertFalse(first.getKey().equals(entry.getKey()));
+			Assert.assertEquals(properties.get(entry.getKey()), entry.getValue());
+			count++;
+		}
+		Assert.assertEquals(3, count);
+
+		properties.clear();
+		properties.setProperty(getPrefixKey("KEYF"), "TEST-F");
+		properties.setProperty("KEYG", "G");
+		final Iterator<Object> keys = keySet.iterator();
+		final Object removed = keys.next();
+		keys.remove();
+		Assert.assertNull(properties.get(removed));
+		Assert.assertEquals(1, keySet.size());
+		keySet.clear();
+		Assert.assertTrue(properties.isEmpty());
+		Assert.assertFalse(entrySet.iterator().hasNext());
+
+		// a longer prefixed key doesn't hide an unprefixed key of a cascade
+		final PrefixedProperties cascade = PrefixedProperties.createCascadingPrefixProperties(
+				new DefaultPrefixConfig(new String[] { "dev", "test", "liv" }),
+				new DefaultPrefixConfig(new String[] { "srv1", "srv2" }));
+		cascade.put("x", "X");
+		cascade.put("srv1.x.y", "Y");
+		cascade.setDefaultPrefix("test.srv1");
+		Assert.assertEquals(2, cascade.size());
+		Assert.assertEquals("X", cascade.get("x"));
+		Assert.assertEquals(new HashSet<Object>(Arrays.asList("x", "x.y")), new HashSet<Object>(cascade.keySet()));
+		Assert.assertEquals(2, cascade.entrySet().size());
+		int entries = 0;
+		for (final Map.Entry<Object, Object> entry : cascade.entrySet()) {
+			Assert.assertEquals(cascade.get(entry.getKey()), entry.getValue());
+			entries++;
+		}
+		Assert.assertEquals(2, entries);
+	}
+
 	@Test
 	public void testLocalOverrideConfig() throws InterruptedException, BrokenBarrierException {
 		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(new StagingPrefixConfig(),
@@ -756,6 +1307,141 @@ public final class PrefixedPropertiesTest {
 		Assert.assertEquals(6, result[2]);
 	}
 
+	/**
+	 * Test skipping the keys of inactive prefixes while loading.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testPrefixFilteredLoading() throws IOException {
+		final PrefixedProperties serviceProperties = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV),
+				new ComponentPrefixConfig(ComponentPrefixConfig.CACHE));
+		serviceProperties.setPrefixFilteredLoadingEnabled(true);
+		Assert.assertTrue(serviceProperties.isPrefixFilteredLoadingEnabled());
+		final InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("prefixed.json");
+		try {
+			serviceProperties.loadFromJSON(is);
+		} finally {
+			is.close();
+		}
+		Assert.assertEquals("property1 of service1 in environment test", serviceProperties.get("prop1"));
+		Assert.assertEquals("property2 of service1 in environment test", serviceProperties.get("prop2"));
+		Assert.assertEquals("property3 of service1", serviceProperties.get("prop3"));
+		Assert.assertEquals("property4", serviceProperties.get("prop4"));
+		Assert.assertEquals("property5 in environment test", serviceProperties.get("prop5"));
+		final Properties complete = serviceProperties.getCompleteProperties();
+		Assert.assertEquals(7, complete.size());
+		Assert.assertFalse(complete.containsKey("test.accsrv.prop1"));
+		Assert.assertFalse(complete.containsKey("accsrv.prop3"));
+		Assert.assertFalse(complete.containsKey("stg.prdsrv.cache.size"));
+
+		properties.setPrefixFilteredLoadingEnabled(true);
+		properties.load(new ByteArrayInputStream("dev.KEYA=dev\ntest.KEYA=test\nKEYB=plain\ndev=dev\n"
+				.getBytes("ISO-8859-1")));
+		Assert.assertEquals("test", properties.get("KEYA"));
+		Assert.assertEquals("plain", properties.get("KEYB"));
+		Assert.assertEquals("dev", properties.get("dev"));
+		Assert.assertFalse(properties.getCompleteProperties().containsKey("dev.KEYA"));
+	}
+
+	/**
+	 * Test prefix parts.
+	 */
+	@Test
+	public void testPrefixParts() {
+		final DynamicPrefixConfig prefixConfig = new DynamicPrefixConfig("de");
+		prefixConfig.setDefaultPrefix("dev");
+		prefixConfig.setDefaultPrefix("de");
+		Assert.assertTrue(prefixConfig.containsValidPrefix("de"));
+		Assert.assertTrue(prefixConfig.containsValidPrefix("dev.key"));
+		Assert.assertFalse(prefixConfig.containsValidPrefix("d"));
+		Assert.assertFalse(prefixConfig.containsValidPrefix("devkey"));
+		Assert.assertFalse(prefixConfig.containsValidPrefix("live.de.key"));
+		Assert.assertEquals("de.", prefixConfig.getPrefixPart("de.key"));
+		Assert.assertEquals("dev.", prefixConfig.getPrefixPart("dev.de.key"));
+		Assert.assertEquals("", prefixConfig.getPrefixPart("deva.key"));
+		Assert.assertEquals("", prefixConfig.getPrefixPart("dev"));
+		Assert.assertEquals("key", prefixConfig.getUnprefixedKey("dev.key"));
+		Assert.assertTrue(prefixConfig.startsWithCurrentPrefix("de.key"));
+		Assert.assertFalse(prefixConfig.startsWithCurrentPrefix("dev.key"));
+		Assert.assertFalse(prefixConfig.startsWithCurrentPrefix("de"));
+		prefixConfig.setPrefix("live");
+		Assert.assertTrue(prefixConfig.containsValidPrefix("live.de.key"));
+		Assert.assertTrue(prefixConfig.startsWithCurrentPrefix("live.de.key"));
+		prefixConfig.setPrefix(null);
+	}
+
+	/**
+	 * Test prefix selectors.
+	 */
+	@Test
+	public void testPrefixSelector() {
+		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(new StagingPrefixConfig(),
+				new DynamicPrefixConfig());
+		props.setProperty("test.cache.key", "tc");
+		props.setProperty("liv.cache.key", "lc");
+		props.setProperty("liv.key", "l");
+		final PrefixSelector testCache = props.createPrefixSelector("test.cache");
+		final PrefixSelector liv = props.createPrefixSelector(StagingPrefixConfig.LIVE);
+		Assert.assertEquals("test.cache", testCache.getPrefix());
+		Assert.assertSame(props, testCache.getPrefixedProperties());
+		Assert.assertFalse(props.hasLocalPrefixConfigurations());
+		for (int i = 0; i < 3; i++) {
+			testCache.apply();
+			Assert.assertEquals("tc", props.getProperty("key"));
+			liv.apply();
+			Assert.assertEquals("l", props.getProperty("key"));
+			props.setLocalPrefix("liv.cache");
+			Assert.assertEquals("lc", props.getProperty("key"));
+		}
+		try {
+			props.createPrefixSelector("unknown.cache.more");
+			Assert.fail("IllegalArgumentException expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		props.setPrefixConfig(new DynamicPrefixConfig());
+		testCache.apply();
+		Assert.assertEquals("tc", props.getProperty("key"));
+		liv.apply();
+		Assert.assertEquals("l", props.getProperty("key"));
+		props.clearLocalPrefixes();
+		try {
+			props.snapshot().createPrefixSelector(StagingPrefixConfig.LIVE);
+			Assert.fail("UnsupportedOperationException expected");
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test the shared prefix set.
+	 */
+	@Test
+	public void testPrefixSet() {
+		final DynamicPrefixConfig dynamic = new DynamicPrefixConfig("one");
+		final Set<String> prefixes = dynamic.getPrefixes();
+		Assert.assertSame(prefixes, dynamic.getPrefixes());
+		try {
+			prefixes.add("two");
+			Assert.fail("UnsupportedOperationException expected");
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+		dynamic.setPrefix("two");
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("one", "two")), dynamic.getPrefixes());
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("one")), prefixes);
+		Assert.assertEquals("two.KEY", dynamic.getPrefixedKey("KEY", true));
+		final PrefixConfig clone = dynamic.clone();
+		dynamic.clear();
+		Assert.assertTrue(dynamic.getPrefixes().isEmpty());
+		Assert.assertEquals(2, clone.getPrefixes().size());
+		dynamic.setPrefix(null);
+	}
+
 	/**
 	 * Test property names.
 	 */
@@ -815,6 +1501,238 @@ public final class PrefixedPropertiesTest {
 		Assert.assertEquals(new Integer(50), properties.remove(new Integer(5)));
 	}
 
+	/**
+	 * Test reloading only the delta of the entries.
+	 */
+	@Test
+	public void testReloadFrom() {
+		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST), new DynamicPrefixConfig());
+		props.setProperty("test.keyA", "A");
+		props.setProperty("test.keyB", "B");
+		props.setProperty("liv.keyC", "C");
+		props.setProperty("keyD", "D");
+		Assert.assertEquals("A", props.get("keyA"));
+		final PrefixedProperties loaded = new PrefixedProperties();
+		loaded.setProperty("test.keyA", "A");
+		loaded.setProperty("test.keyB", "changed");
+		loaded.setProperty("keyD", "D");
+		loaded.setProperty("test.keyE", "E");
+		PropertiesDelta delta = props.reloadFrom(loaded);
+		Assert.assertEquals(4, loaded.size());
+		Assert.assertEquals(3, delta.size());
+		Assert.assertEquals(Collections.singletonMap("test.keyE", "E"), delta.getAdded());
+		Assert.assertEquals(Collections.singletonMap("test.keyB", "changed"), delta.getChanged());
+		Assert.assertEquals(Collections.singletonMap("liv.keyC", "C"), delta.getRemoved());
+		Assert.assertEquals(2, delta.forPrefix("test").size());
+		Assert.assertTrue(delta.forPrefix("liv").getAdded().isEmpty());
+		Assert.assertEquals("A", props.get("keyA"));
+		Assert.assertEquals("changed", props.get("keyB"));
+		Assert.assertEquals("E", props.get("keyE"));
+		Assert.assertNull(props.get("keyC"));
+		Assert.assertEquals(4, props.getCompleteProperties().size());
+		Assert.assertTrue(props.reloadFrom(loaded).isEmpty());
+
+		// the removed keys are taken as they are stored
+		props.setProperty("keyA", "unprefixed");
+		delta = props.reloadFrom(loaded);
+		Assert.assertEquals(Collections.singletonMap("keyA", "unprefixed"), delta.getRemoved());
+		Assert.assertEquals("A", props.getCompleteProperties().get("test.keyA"));
+		Assert.assertEquals("A", props.get("keyA"));
+
+		final Map<Object, Object> many = new HashMap<Object, Object>();
+		for (int i = 0; i < 100; i++) {
+			many.put("test.key" + i, Integer.toString(i));
+		}
+		loaded.clear();
+		loaded.putAll(many);
+		delta = props.reloadFrom(loaded);
+		Assert.assertEquals(100, delta.getAdded().size());
+		Assert.assertEquals(4, delta.getRemoved().size());
+		Assert.assertEquals("99", props.get("key99"));
+		Assert.assertNull(props.get("keyA"));
+		Assert.assertEquals(many, new HashMap<Object, Object>(props.getCompleteProperties()));
+		try {
+			props.reloadFrom(props);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test replacing the entries and reloading changed files.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	@Test
+	public void testReplaceWith() throws IOException, InterruptedException {
+		final PrefixedProperties serviceProperties = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV),
+				new ComponentPrefixConfig(ComponentPrefixConfig.CACHE));
+		serviceProperties.setProperty("prop1", "replaced");
+		Assert.assertEquals("replaced", serviceProperties.get("prop1"));
+		final PrefixedProperties loaded = new PrefixedProperties();
+		final InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream("prefixed.json");
+		try {
+			loaded.loadFromJSON(is);
+		} finally {
+			is.close();
+		}
+		serviceProperties.replaceWith(loaded);
+		Assert.assertTrue(loaded.isEmpty());
+		Assert.assertEquals("property1 of service1 in environment test", serviceProperties.get("prop1"));
+		Assert.assertEquals("property3 of service1", serviceProperties.get("prop3"));
+		Assert.assertEquals(11, serviceProperties.getCompleteProperties().size());
+
+		final File file = File.createTempFile("reload", ".properties");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+			writer.write("test.KEYA=A\n");
+			writer.close();
+			properties.loadFromFile(file);
+			final PrefixedPropertiesReloader reloader = new PrefixedPropertiesReloader(properties,
+					Collections.singletonList(file), PrefixedPropertiesReloader.createFileLoader(
+							Collections.singletonList(file), "ISO-8859-1"), 10, 50);
+			reloader.start();
+			try {
+				writer = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+				writer.write("test.KEYA=changed\nKEYB=B\n");
+				writer.close();
+				for (int i = 0; i < 500 && reloader.getReloadCount() == 0; i++) {
+					Thread.sleep(10);
+				}
+				Assert.assertEquals(1, reloader.getReloadCount());
+				Assert.assertEquals("changed", properties.get("KEYA"));
+				Assert.assertEquals("B", properties.get("KEYB"));
+
+				writer = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+				writer.write("test.KEYA=broken\\u00");
+				writer.close();
+				try {
+					reloader.reload();
+					Assert.fail("IllegalArgumentException expected");
+				} catch (final IllegalArgumentException e) {
+					// expected
+				}
+				Assert.assertEquals("changed", properties.get("KEYA"));
+			} finally {
+				reloader.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test lookups with a prefix selector instead of the local prefixes.
+	 */
+	@Test
+	public void testSelectorLookup() {
+		final String[] keys = { "key", "other", "test.key", "cache.key", "missing" };
+		final String[] prefixes = { "test.cache", "liv.db", StagingPrefixConfig.DEV, "*" };
+		for (int mode = 0; mode < 4; mode++) {
+			final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(
+					new StagingPrefixConfig(StagingPrefixConfig.LIVE), new DynamicPrefixConfig());
+			props.setProperty("test.cache.key", "tc");
+			props.setProperty("liv.cache.key", "lc");
+			props.setProperty("test.db.key", "td");
+			props.setProperty("liv.key", "l");
+			props.setProperty("dev.other", "do");
+			props.setProperty("other", "o");
+			props.setProperty("key", "k");
+			props.setMixDefaultAndLocalPrefixSettings(mode != 1);
+			props.setCompiledCascadeEnabled(mode == 2);
+			props.setResolvedValueCacheEnabled(mode == 3);
+			final PrefixSelector[] selectors = new PrefixSelector[prefixes.length];
+			for (int i = 0; i < prefixes.length; i++) {
+				selectors[i] = props.createPrefixSelector(prefixes[i]);
+			}
+			for (int i = 0; i < prefixes.length; i++) {
+				for (final String key : keys) {
+					props.setLocalPrefix(prefixes[i]);
+					final String expected = props.getProperty(key);
+					props.setLocalPrefix("dev.cache");
+					Assert.assertEquals(prefixes[i] + " " + key, expected, props.getProperty(key, selectors[i]));
+					Assert.assertEquals(expected, props.get(key, selectors[i]));
+					Assert.assertEquals("dev.cache", props.getEffectivePrefix());
+				}
+			}
+			props.clearLocalPrefixes();
+		}
+		final PrefixedProperties other = new PrefixedProperties(new StagingPrefixConfig());
+		try {
+			other.get("key", properties.createPrefixSelector(StagingPrefixConfig.LIVE));
+			Assert.fail("IllegalArgumentException expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		final PrefixSelector live = other.createPrefixSelector(StagingPrefixConfig.LIVE);
+		other.setProperty("liv.key", "l");
+		other.setPrefixConfig(new StagingPrefixConfig());
+		Assert.assertEquals("l", other.getProperty("key", live));
+	}
+
+	/**
+	 * Test resolved value cache.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testResolvedValueCache() throws IOException {
+		final PrefixedProperties serviceProperties = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV));
+		final InputStream is = Thread.currentThread().getContextClassLoader()
+				.getResourceAsStream("prefixed.properties");
+		try {
+			serviceProperties.load(is);
+		} finally {
+			is.close();
+		}
+		serviceProperties.setMixDefaultAndLocalPrefixSettings(false);
+		serviceProperties.setResolvedValueCacheEnabled(true);
+		Assert.assertEquals("property1 of service1 in environment test", serviceProperties.get("prop1"));
+		Assert.assertEquals("property1 of service1 in environment test", serviceProperties.getProperty("prop1"));
+		Assert.assertNull(serviceProperties.get("unknown"));
+		Assert.assertNull(serviceProperties.get("unknown"));
+		Assert.assertEquals(2, serviceProperties.getResolvedValueCacheHits());
+		Assert.assertEquals(2, serviceProperties.getResolvedValueCacheMisses());
+
+		serviceProperties.setProperty("test.prdsrv.prop4", "changed");
+		Assert.assertEquals("changed", serviceProperties.get("prop4"));
+		serviceProperties.remove("prop4");
+		Assert.assertEquals("property4", serviceProperties.get("prop4"));
+		serviceProperties.setProperty("unknown", "known");
+		Assert.assertEquals("known", serviceProperties.get("unknown"));
+		serviceProperties.setProperty("test.prdsrv.prop7", "seven");
+		Assert.assertEquals("seven", serviceProperties.get("prop7"));
+		Assert.assertEquals("seven", serviceProperties.get("prdsrv.prop7"));
+		serviceProperties.remove("test.prdsrv.prop7");
+		Assert.assertNull(serviceProperties.get("prop7"));
+		Assert.assertNull(serviceProperties.get("prdsrv.prop7"));
+		serviceProperties.setProperty("test.prdsrv.prop7", "seven");
+		Assert.assertEquals("seven", serviceProperties.get("test.prdsrv.prop7"));
+		serviceProperties.remove("prop7");
+		Assert.assertNull(serviceProperties.get("test.prdsrv.prop7"));
+
+		serviceProperties.setLocalPrefix(ServicePrefixConfig.ACCOUNTING_SRV);
+		Assert.assertEquals("property3 of service2", serviceProperties.get("prop3"));
+		serviceProperties.clearLocalPrefixes();
+		Assert.assertEquals("property3 of service1", serviceProperties.get("prop3"));
+		serviceProperties.setDefaultPrefix(StagingPrefixConfig.TEST + "." + ServicePrefixConfig.ACCOUNTING_SRV);
+		Assert.assertEquals("property3 of service2 in environment test", serviceProperties.get("prop3"));
+
+		serviceProperties.setResolvedValueCacheEnabled(false);
+		Assert.assertEquals(0, serviceProperties.getResolvedValueCacheHits());
+		Assert.assertEquals("property3 of service2 in environment test", serviceProperties.get("prop3"));
+	}
+
 	@Test
 	public void testSerialization() throws IOException, ClassNotFoundException {
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -900,6 +1818,54 @@ public final class PrefixedPropertiesTest {
 		Assert.assertEquals(6, result[2]);
 	}
 
+	/**
+	 * Test snapshot.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testSnapshot() throws IOException {
+		final PrefixedProperties serviceProperties = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.TEST),
+				new ServicePrefixConfig(ServicePrefixConfig.PRODUCT_SRV));
+		final InputStream is = Thread.currentThread().getContextClassLoader()
+				.getResourceAsStream("prefixed.properties");
+		try {
+			serviceProperties.load(is);
+		} finally {
+			is.close();
+		}
+		serviceProperties.setMixDefaultAndLocalPrefixSettings(false);
+		final PrefixedProperties snapshot = serviceProperties.snapshot();
+		for (final String key : new String[] { "prop1", "prop2", "prop3", "prop4", "prop5", "prdsrv.prop6",
+				"test.prdsrv.prop1", "unknown" }) {
+			Assert.assertEquals(serviceProperties.get(key), snapshot.get(key));
+			Assert.assertEquals(serviceProperties.containsKey(key), snapshot.containsKey(key));
+		}
+		Assert.assertEquals(serviceProperties.size(), snapshot.size());
+		Assert.assertEquals(serviceProperties.keySet(), snapshot.keySet());
+		Assert.assertEquals(serviceProperties.getEffectivePrefix(), snapshot.getEffectivePrefix());
+
+		serviceProperties.setDefaultPrefix(StagingPrefixConfig.TEST + "." + ServicePrefixConfig.ACCOUNTING_SRV);
+		serviceProperties.setProperty("prop4", "changed");
+		Assert.assertEquals("property1 of service1 in environment test", snapshot.get("prop1"));
+		Assert.assertEquals("property4", snapshot.get("prop4"));
+		Assert.assertEquals("test.prdsrv", snapshot.getEffectivePrefix());
+		try {
+			snapshot.setProperty("prop4", "changed");
+			Assert.fail("A snapshot must not be modifiable.");
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			snapshot.setLocalPrefix(ServicePrefixConfig.ACCOUNTING_SRV);
+			Assert.fail("A snapshot must not be modifiable.");
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void testStringPropertyNames() {
 		properties.setProperty(getPrefixKey("KEYA"), "TEST-A");
@@ -922,6 +1888,247 @@ public final class PrefixedPropertiesTest {
 
 	}
 
+	/**
+	 * Test switching the local prefix back and forth.
+	 */
+	@Test
+	public void testSwitchLocalPrefix() {
+		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(new StagingPrefixConfig(),
+				new DynamicPrefixConfig());
+		props.setProperty("test.cache.key", "tc");
+		props.setProperty("liv.cache.key", "lc");
+		props.setProperty("test.db.key", "td");
+		for (int i = 0; i < 3; i++) {
+			props.setLocalPrefix("test.cache");
+			Assert.assertEquals("tc", props.getProperty("key"));
+			props.setLocalPrefix("liv.cache");
+			Assert.assertEquals("lc", props.getProperty("key"));
+			props.setLocalPrefix("test.db");
+			Assert.assertEquals("td", props.getProperty("key"));
+			props.setLocalPrefix("liv.db");
+			Assert.assertNull(props.getProperty("key"));
+		}
+		props.setPrefixConfig(new DynamicPrefixConfig("cache"));
+		props.setLocalPrefix("test.cache");
+		Assert.assertEquals("tc", props.getProperty("key"));
+		props.setLocalPrefix("liv.db");
+		Assert.assertNull(props.getProperty("key"));
+		props.setLocalPrefix("test.cache");
+		Assert.assertEquals("tc", props.getProperty("key"));
+		properties.setProperty(getPrefixKey("KEYA"), "TEST-A");
+		properties.setProperty(StagingPrefixConfig.LIVE + PrefixConfig.PREFIXDELIMITER + "KEYA", "LIVE-A");
+		for (int i = 0; i < 3; i++) {
+			properties.setLocalPrefix(StagingPrefixConfig.LIVE);
+			Assert.assertEquals("LIVE-A", properties.getProperty("KEYA"));
+			properties.setLocalPrefix(StagingPrefixConfig.TEST);
+			Assert.assertEquals("TEST-A", properties.getProperty("KEYA"));
+		}
+	}
+
+	/**
+	 * Test views with a fixed prefix.
+	 */
+	@Test
+	public void testView() {
+		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(
+				new StagingPrefixConfig(StagingPrefixConfig.DEV), new DynamicPrefixConfig());
+		props.setProperty("test.cache.key", "tc");
+		props.setProperty("liv.cache.key", "lc");
+		props.setProperty("test.other", "to");
+		props.setProperty("other", "o");
+		props.setProperty("plain", "p");
+		final PrefixedPropertiesView view = props.view("test.cache");
+		Assert.assertEquals("test.cache", view.getPrefix());
+		Assert.assertSame(props, view.getPrefixedProperties());
+		final String[] keys = { "key", "other", "plain", "missing", "test.cache.key", "cache.key", "liv.cache.key" };
+		props.setLocalPrefix("test.cache");
+		for (final String key : keys) {
+			Assert.assertEquals(key, props.getProperty(key), view.getProperty(key));
+		}
+		props.clearLocalPrefixes();
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("key", "other", "plain")), view.stringPropertyNames());
+		Assert.assertEquals(3, view.size());
+		Assert.assertEquals("default", view.getProperty("missing", "default"));
+
+		props.setProperty("test.cache.other", "tco");
+		props.setProperty("test.new", "tn");
+		props.remove("plain");
+		props.setLocalPrefix("liv.cache");
+		props.remove("key");
+		props.clearLocalPrefixes();
+		Assert.assertEquals("tco", view.getProperty("other"));
+		Assert.assertEquals("tn", view.getProperty("new"));
+		Assert.assertNull(view.getProperty("plain"));
+		Assert.assertEquals("tc", view.getProperty("key"));
+		Assert.assertNull(view.getProperty("liv.cache.key"));
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("key", "other", "new")), view.stringPropertyNames());
+
+		props.setProperty("dev.cache.key", "dc");
+		final PrefixedPropertiesView liveView = props.view("liv.cache");
+		Assert.assertNull(liveView.getProperty("key"));
+		Assert.assertEquals("o", liveView.getProperty("other"));
+		final PrefixedPropertiesView dbView = props.view("test.db");
+		Assert.assertEquals("to", dbView.getProperty("other"));
+		props.clear();
+		Assert.assertTrue(view.isEmpty());
+		Assert.assertNull(dbView.getProperty("other"));
+		try {
+			view.put("key", "value");
+			Assert.fail("UnsupportedOperationException expected");
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			view.setProperty("key", "value");
+			Assert.fail("UnsupportedOperationException expected");
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test propagating the local prefixes to other threads.
+	 */
+	@Test
+	public void testWrapTask() throws Exception {
+		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(new StagingPrefixConfig(),
+				new DynamicPrefixConfig());
+		props.setProperty("test.cache.key", "tc");
+		props.setProperty("liv.cache.key", "lc");
+		props.setProperty("key", "k");
+		final Callable<String> lookup = new Callable<String>() {
+			@Override
+			public String call() {
+				return props.getProperty("key");
+			}
+		};
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final ExecutorService wrapped = props.wrapExecutorService(executor);
+			props.setLocalPrefix("test.cache");
+			Assert.assertEquals("tc", wrapped.submit(lookup).get());
+			Assert.assertEquals("k", executor.submit(lookup).get());
+			props.setLocalPrefix("liv.cache");
+			final Callable<String> livLookup = props.wrapTask(lookup);
+			props.setLocalPrefix("test.cache");
+			Assert.assertEquals("lc", executor.submit(livLookup).get());
+			Assert.assertEquals("lc", livLookup.call());
+			Assert.assertEquals("tc", props.getProperty("key"));
+			for (final Future<String> future : wrapped.invokeAll(Arrays.asList(lookup, lookup))) {
+				Assert.assertEquals("tc", future.get());
+			}
+			final AtomicReference<String> result = new AtomicReference<String>();
+			final CountDownLatch done = new CountDownLatch(1);
+			props.wrapExecutor(executor).execute(new Runnable() {
+				@Override
+				public void run() {
+					result.set(props.getProperty("key"));
+					done.countDown();
+				}
+			});
+			done.await();
+			Assert.assertEquals("tc", result.get());
+			props.clearLocalPrefixes();
+			Assert.assertEquals("k", wrapped.submit(lookup).get());
+			Assert.assertFalse(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return props.hasLocalPrefixConfigurations();
+				}
+			}).get());
+
+			// a prefix removed after capturing leaves the worker untouched
+			class ShrinkingPrefixConfig extends GenderPrefixConfig {
+
+				private static final long serialVersionUID = 1L;
+
+				void removeFemale() {
+					setPrefixes(MALE);
+				}
+			}
+			final ShrinkingPrefixConfig genders = new ShrinkingPrefixConfig();
+			final PrefixedProperties genderProps = PrefixedProperties.createCascadingPrefixProperties(genders,
+					new DynamicPrefixConfig());
+			genderProps.setLocalPrefix("f.cache");
+			final Callable<String> femaleLookup = genderProps.wrapTask(lookup);
+			genders.removeFemale();
+			try {
+				executor.submit(femaleLookup).get();
+				Assert.fail("ExecutionException expected");
+			} catch (final ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+			Assert.assertFalse(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return genderProps.hasLocalPrefixConfigurations();
+				}
+			}).get());
+			wrapped.shutdown();
+			Assert.assertTrue(executor.isShutdown());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test the parsed values.
+	 */
+	@Test
+	public void testTypedValues() {
+		properties.setProperty("Limit", "10");
+		properties.setProperty(getPrefixKey("Limits"), "1, 2,3 ");
+		Assert.assertEquals(10, properties.getInt("Limit"));
+		Assert.assertEquals(10, properties.getInt("Limit", 5));
+		Assert.assertEquals(10L, properties.getLong("Limit"));
+
+		// the returned arrays can be changed by the caller
+		final int[] limits = properties.getIntArray("Limits");
+		Assert.assertTrue(Arrays.equals(new int[] { 1, 2, 3 }, limits));
+		limits[0] = 5;
+		Assert.assertEquals(1, properties.getIntArray("Limits")[0]);
+
+		// changed values and prefixes are parsed again
+		properties.setProperty("Limit", "20");
+		Assert.assertEquals(20, properties.getInt("Limit"));
+		properties.setProperty(getPrefixKey("Limit"), "30");
+		Assert.assertEquals(30, properties.getInt("Limit"));
+		properties.setLocalPrefix(StagingPrefixConfig.LIVE);
+		Assert.assertEquals(20, properties.getInt("Limit"));
+		Assert.assertNull(properties.getIntArray("Limits"));
+		properties.clearLocalPrefixes();
+
+		// alternating prefixes keep their parsed values
+		final TypedValueCache cache = new TypedValueCache();
+		final TypedValueCache.Node live = cache.getRoot().getChild(StagingPrefixConfig.LIVE);
+		final TypedValueCache.Node test = cache.getRoot().getChild(StagingPrefixConfig.TEST);
+		final String liveValue = "20";
+		final String testValue = "30";
+		final TypedValueCache.Value liveParsed = cache.get(live, TypedValueCache.INT, "Limit", liveValue);
+		final TypedValueCache.Value testParsed = cache.get(test, TypedValueCache.INT, "Limit", testValue);
+		Assert.assertSame(liveParsed, cache.get(live, TypedValueCache.INT, "Limit", liveValue));
+		Assert.assertSame(testParsed, cache.get(test, TypedValueCache.INT, "Limit", testValue));
+		cache.invalidate(getPrefixKey("Limit"));
+		Assert.assertNotSame(testParsed, cache.get(test, TypedValueCache.INT, "Limit", testValue));
+
+		properties.setProperty("Invalid", "ten");
+		for (int i = 0; i < 2; i++) {
+			Assert.assertEquals(5, properties.getInt("Invalid", 5));
+			Assert.assertEquals(5, properties.getInt("Missing", 5));
+			try {
+				properties.getInt("Invalid");
+				Assert.fail("NumberFormatException expected");
+			} catch (final NumberFormatException e) {
+				// expected
+			}
+		}
+
+		for (final String value : new String[] { "", " ", "a", "a,", "a, ", ",a", "a ,b", "a,,b", "a,\tb\n",
+				" a, b ,c  " }) {
+			Assert.assertTrue(value, Arrays.equals(value.split(",[\\s]*|[\\s]*$"), TypedValueCache.split(value)));
+		}
+	}
+
 	@Test
 	public void testWrongPrefixConfig() {
 		final PrefixedProperties props = PrefixedProperties.createCascadingPrefixProperties(new StagingPrefixConfig(),
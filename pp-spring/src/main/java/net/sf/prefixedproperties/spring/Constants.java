@@ -27,6 +27,8 @@ package net.sf.prefixedproperties.spring;
 
 public class Constants {
 	
+	/** The Constant BINARY_FILE_EXTENSION. */
+	protected final static String BINARY_FILE_EXTENSION = "ppb";
 	/** The Constant JSON_FILE_EXTENSION. */
 	protected final static String JSON_FILE_EXTENSION = "json";
 	/** The Constant XML_FILE_EXTENSION. */
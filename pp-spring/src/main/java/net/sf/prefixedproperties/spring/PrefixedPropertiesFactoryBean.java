@@ -25,26 +25,24 @@
  */
 package net.sf.prefixedproperties.spring;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PropertiesLoaderSupport;
 
 import net.sf.prefixedproperties.PrefixedProperties;
+import net.sf.prefixedproperties.PrefixedPropertiesReloader;
 import net.sf.prefixedproperties.config.PrefixConfig;
 
-public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport implements FactoryBean<Properties>, InitializingBean {
+public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport implements FactoryBean<Properties>, InitializingBean,
+		DisposableBean {
 
 	private boolean singleton = true;
 
@@ -65,6 +63,12 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 	/** The ignore resource not found. */
 	protected boolean ignoreResourceNotFound = false;
 
+	/** The parallel loading of the locations. */
+	protected boolean parallelLoading = false;
+
+	/** The interval in milliseconds to check the locations for changes. */
+	protected long reloadInterval = 0;
+
 	/** The prefix config list. */
 	protected List<PrefixConfig> prefixConfigList;
 
@@ -79,6 +83,8 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 
 	protected EnvironmentFactory environmentFactory = null;
 
+	private PrefixedPropertiesReloader reloader;
+
 	/**
 	 * Creates the prefixed properties.
 	 * 
@@ -115,6 +121,17 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 		return myProperties;
 	}
 
+	/**
+	 * Stops watching the locations for changes.
+	 */
+	@Override
+	public synchronized void destroy() {
+		if (reloader != null) {
+			reloader.close();
+			reloader = null;
+		}
+	}
+
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public Class getObjectType() {
@@ -131,61 +148,8 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 	 */
 	@Override
 	protected void loadProperties(final Properties props) throws IOException {
-		if (locations != null) {
-			for (int i = 0; i < locations.length; i++) {
-				final Resource location = locations[i];
-				if (logger.isInfoEnabled()) {
-					logger.info("Loading properties file from " + location);
-				}
-				File file = null;
-				InputStream is = null;
-				try {
-					try {
-						file = location.getFile();
-						is = new BufferedInputStream(new FileInputStream(file));
-					} catch (final IOException ie) {// ignore
-					} finally {
-						if (file == null) {
-							is = location.getInputStream();
-						}
-					}
-
-					if (location.getFilename().toLowerCase().endsWith(Constants.XML_FILE_EXTENSION)) {
-						persister.loadFromXml(props, is);
-					} else if (location.getFilename().toLowerCase().endsWith(Constants.JSON_FILE_EXTENSION)) {
-						if (fileEncoding != null) {
-							persister.loadFromJson(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.loadFromJson(props, is);
-						}
-					} else if (location.getFilename().toLowerCase().endsWith(Constants.YAML_FILE_EXTENSION)) {
-						if (fileEncoding != null) {
-							persister.loadFromYAML(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.loadFromYAML(props, is);
-						}
-					} else {
-						if (fileEncoding != null) {
-							persister.load(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.load(props, is);
-						}
-					}
-				} catch (final IOException ex) {
-					if (ignoreResourceNotFound) {
-						if (logger.isWarnEnabled()) {
-							logger.warn(String.format("Could not load properties from %1s", location), ex);
-						}
-					} else {
-						throw ex;
-					}
-				} finally {
-					if (is != null) {
-						is.close();
-					}
-				}
-			}
-		}
+		new PrefixedPropertiesLocationLoader(logger, persister).load(props, locations, fileEncoding,
+				ignoreResourceNotFound, parallelLoading);
 	}
 
 	/*
@@ -196,9 +160,13 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 	 */
 	@Override
 	protected Properties mergeProperties() throws IOException {
-
 		final PrefixedProperties myProperties = createProperties();
+		mergeInto(myProperties);
+		startReloading(myProperties);
+		return myProperties;
+	}
 
+	private void mergeInto(final PrefixedProperties myProperties) throws IOException {
 		if (localOverride) {
 			// Load properties from file upfront, to let local properties
 			// override.
@@ -220,8 +188,19 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 			// override.
 			loadProperties(myProperties);
 		}
+	}
 
-		return myProperties;
+	private synchronized void startReloading(final PrefixedProperties myProperties) {
+		if (reloadInterval > 0 && reloader == null) {
+			reloader = new PrefixedPropertiesLocationLoader(logger, persister).createReloader(myProperties,
+					locations, reloadInterval, new PrefixedPropertiesReloader.Loader() {
+
+						@Override
+						public void load(final PrefixedProperties properties) throws IOException {
+							mergeInto(properties);
+						}
+					});
+		}
 	}
 
 	/**
@@ -292,8 +271,8 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 	/**
 	 * Set a location of a properties file to be loaded.
 	 * <p>
-	 * Can point to a classic properties, json or XML file that follows JDK
-	 * 1.5's properties XML format.
+	 * Can point to a classic properties, json, binary (.ppb) or XML file that
+	 * follows JDK 1.5's properties XML format.
 	 * 
 	 * @param location
 	 *            the new location
@@ -315,6 +294,19 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 		this.locations = locations;
 	}
 
+	/**
+	 * Enables the parallel loading of the locations. The locations will be
+	 * parsed concurrently into separate buffers which get merged in the order
+	 * of the locations afterwards, so the result is the same as loading them
+	 * one after another. Default is false
+	 * 
+	 * @param parallelLoading
+	 *            true if the locations should be loaded in parallel
+	 */
+	public void setParallelLoading(final boolean parallelLoading) {
+		this.parallelLoading = parallelLoading;
+	}
+
 	/**
 	 * Sets the prefix configs to build up a {@link PrefixedProperties}
 	 * -Structure.
@@ -326,6 +318,22 @@ public class PrefixedPropertiesFactoryBean extends PropertiesLoaderSupport imple
 		prefixConfigList = configList;
 	}
 
+	/**
+	 * Enables reloading the properties when a location changes. Locations
+	 * which are files are checked for changes in the given interval. Once
+	 * they have stopped changing, all locations are loaded again into
+	 * separate properties, which then replace the content of the
+	 * {@link PrefixedProperties} at once. Values which have already been
+	 * injected keep their value. Default is 0, which disables reloading.
+	 * 
+	 * @param reloadInterval
+	 *            the interval in milliseconds to check the locations for
+	 *            changes or 0
+	 */
+	public void setReloadInterval(final long reloadInterval) {
+		this.reloadInterval = reloadInterval;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
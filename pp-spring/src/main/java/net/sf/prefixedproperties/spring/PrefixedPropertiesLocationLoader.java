@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2010, Marco Brade
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sf.prefixedproperties.spring;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.prefixedproperties.PrefixedProperties;
+import net.sf.prefixedproperties.PrefixedPropertiesReloader;
+
+import org.apache.commons.logging.Log;
+import org.springframework.core.io.Resource;
+
+/**
+ * Loads the configured locations of the spring configurers into the given
+ * properties. The locations will be read one after another or - if parallel
+ * loading is enabled - concurrently into separate buffers which are merged in
+ * the declaration order of the locations afterwards. So in both modes a later
+ * location overrides the values of an earlier one.
+ */
+class PrefixedPropertiesLocationLoader {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	private final Log logger;
+
+	private final PrefixedPropertiesPersister persister;
+
+	/**
+	 * Instantiates a new location loader.
+	 * 
+	 * @param logger
+	 *            the logger of the configurer
+	 * @param persister
+	 *            the persister to be used for parsing the locations
+	 */
+	PrefixedPropertiesLocationLoader(final Log logger, final PrefixedPropertiesPersister persister) {
+		this.logger = logger;
+		this.persister = persister;
+	}
+
+	/**
+	 * Creates and starts a reloader of the given properties watching those
+	 * locations which are files. Other locations, e.g. within jar files, are
+	 * reloaded along with them, but their changes aren't noticed.
+	 * 
+	 * @param props
+	 *            the properties to reload
+	 * @param locations
+	 *            the locations, might be null
+	 * @param pollInterval
+	 *            the interval in milliseconds between two checks of the files
+	 * @param loader
+	 *            the loader of the complete content of the properties
+	 * @return the started reloader or null if no location is a file
+	 */
+	PrefixedPropertiesReloader createReloader(final PrefixedProperties props, final Resource[] locations,
+			final long pollInterval, final PrefixedPropertiesReloader.Loader loader) {
+		final List<File> files = new ArrayList<File>();
+		if (locations != null) {
+			for (final Resource location : locations) {
+				try {
+					files.add(location.getFile());
+				} catch (final IOException ex) {
+					if (logger.isInfoEnabled()) {
+						logger.info("Changes of " + location + " are not watched, it is no file: " + ex.getMessage());
+					}
+				}
+			}
+		}
+		if (files.isEmpty()) {
+			return null;
+		}
+		final PrefixedPropertiesReloader reloader = new PrefixedPropertiesReloader(props, files, loader,
+				pollInterval, PrefixedPropertiesReloader.DEFAULT_QUIET_PERIOD);
+		reloader.start();
+		if (logger.isInfoEnabled()) {
+			logger.info(String.format("Watching %1s properties file(s) for changes every %2s ms", files.size(),
+					pollInterval));
+		}
+		return reloader;
+	}
+
+	private void handleException(final Resource location, final IOException ex, final boolean ignoreResourceNotFound)
+			throws IOException {
+		if (ignoreResourceNotFound) {
+			if (logger.isWarnEnabled()) {
+				logger.warn(String.format("Could not load properties from %1s", location), ex);
+			}
+		} else {
+			throw ex;
+		}
+	}
+
+	/**
+	 * Loads the given locations into the properties.
+	 * 
+	 * @param props
+	 *            the properties to load the locations into
+	 * @param locations
+	 *            the locations, might be null
+	 * @param fileEncoding
+	 *            the file encoding, might be null
+	 * @param ignoreResourceNotFound
+	 *            true if a location which cannot be read should only be logged
+	 * @param parallel
+	 *            true if the locations should be parsed concurrently
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void load(final Properties props, final Resource[] locations, final String fileEncoding,
+			final boolean ignoreResourceNotFound, final boolean parallel) throws IOException {
+		if (locations != null) {
+			final long start = System.nanoTime();
+			if (parallel && locations.length > 1) {
+				loadParallel(props, locations, fileEncoding, ignoreResourceNotFound);
+			} else {
+				for (final Resource location : locations) {
+					try {
+						loadLocation(props, location, fileEncoding);
+					} catch (final IOException ex) {
+						handleException(location, ex, ignoreResourceNotFound);
+					}
+				}
+			}
+			if (logger.isInfoEnabled()) {
+				logger.info(String.format("Loaded %1s properties file(s) %2s in %3s ms", locations.length,
+						parallel ? "in parallel" : "sequentially", toMillis(start)));
+			}
+		}
+	}
+
+	private void loadLocation(final Properties props, final Resource location, final String fileEncoding)
+			throws IOException {
+		if (logger.isInfoEnabled()) {
+			logger.info("Loading properties file from " + location);
+		}
+		final long start = System.nanoTime();
+		File file = null;
+		InputStream is = null;
+		try {
+			try {
+				file = location.getFile();
+				is = new BufferedInputStream(new FileInputStream(file));
+			} catch (final IOException ie) {// ignore
+			} finally {
+				if (file == null) {
+					is = location.getInputStream();
+				}
+			}
+
+			if (location.getFilename().toLowerCase().endsWith(Constants.BINARY_FILE_EXTENSION)) {
+				persister.loadFromBinary(props, is);
+			} else if (location.getFilename().toLowerCase().endsWith(Constants.XML_FILE_EXTENSION)) {
+				persister.loadFromXml(props, is);
+			} else if (location.getFilename().toLowerCase().endsWith(Constants.JSON_FILE_EXTENSION)) {
+				if (fileEncoding != null) {
+					persister.loadFromJson(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
+				} else {
+					persister.loadFromJson(props, is);
+				}
+			} else if (location.getFilename().toLowerCase().endsWith(Constants.YAML_FILE_EXTENSION)) {
+				if (fileEncoding != null) {
+					persister.loadFromYAML(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
+				} else {
+					persister.loadFromYAML(props, is);
+				}
+			} else {
+				if (fileEncoding != null) {
+					persister.load(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
+				} else {
+					persister.load(props, is);
+				}
+			}
+		} finally {
+			if (is != null) {
+				is.close();
+			}
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info(String.format("Loaded properties file from %1s in %2s ms", location, toMillis(start)));
+		}
+	}
+
+	private void loadParallel(final Properties props, final Resource[] locations, final String fileEncoding,
+			final boolean ignoreResourceNotFound) throws IOException {
+		final int threads = Math.min(locations.length, Runtime.getRuntime().availableProcessors());
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable,
+						"prefixedproperties-loader-" + THREAD_COUNTER.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			final List<Future<PrefixedProperties>> buffers = new ArrayList<Future<PrefixedProperties>>(
+					locations.length);
+			for (final Resource location : locations) {
+				buffers.add(executor.submit(new Callable<PrefixedProperties>() {
+					@Override
+					public PrefixedProperties call() throws IOException {
+						// a buffer without prefix configuration keeps the
+						// keys as they are stored within the location.
+						final PrefixedProperties buffer = new PrefixedProperties();
+						loadLocation(buffer, location, fileEncoding);
+						return buffer;
+					}
+				}));
+			}
+			for (int i = 0; i < locations.length; i++) {
+				try {
+					props.putAll(buffers.get(i).get());
+				} catch (final ExecutionException ex) {
+					final Throwable cause = ex.getCause();
+					if (cause instanceof IOException) {
+						handleException(locations[i], (IOException) cause, ignoreResourceNotFound);
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					} else {
+						throw new IOException(cause);
+					}
+				}
+			}
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading properties files");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static long toMillis(final long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+}
@@ -40,6 +40,25 @@ import org.springframework.util.DefaultPropertiesPersister;
  */
 public class PrefixedPropertiesPersister extends DefaultPropertiesPersister {
 
+	/**
+	 * Loads from the binary format.
+	 * 
+	 * @param props
+	 *            the props
+	 * @param is
+	 *            the is
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void loadFromBinary(final Properties props, final InputStream is) throws IOException {
+		try {
+			((PrefixedProperties) props).loadFromBinary(is);
+		} catch (final ClassCastException err) {
+			throw new IOException(
+					"Cannot load binary properties file - not using PrefixedProperties: " + err.getMessage());
+		}
+	}
+
 	/**
 	 * Loads from json.
 	 * 
@@ -115,6 +134,25 @@ public class PrefixedPropertiesPersister extends DefaultPropertiesPersister {
 		}
 	}
 
+	/**
+	 * Store to the binary format.
+	 * 
+	 * @param props
+	 *            the props
+	 * @param os
+	 *            the os
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void storeToBinary(final Properties props, final OutputStream os) throws IOException {
+		try {
+			((PrefixedProperties) props).storeToBinary(os);
+		} catch (final ClassCastException err) {
+			throw new IOException(
+					"Cannot store binary properties file - not using PrefixedProperties: " + err.getMessage());
+		}
+	}
+
 	/**
 	 * Store to json.
 	 * 
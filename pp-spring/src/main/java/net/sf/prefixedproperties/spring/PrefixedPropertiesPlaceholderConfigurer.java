@@ -25,12 +25,7 @@
  */
 package net.sf.prefixedproperties.spring;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.Enumeration;
 import java.util.LinkedList;
@@ -38,11 +33,13 @@ import java.util.List;
 import java.util.Properties;
 
 import net.sf.prefixedproperties.PrefixedProperties;
+import net.sf.prefixedproperties.PrefixedPropertiesReloader;
 import net.sf.prefixedproperties.config.PrefixConfig;
 
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
 import org.springframework.core.io.Resource;
@@ -64,7 +61,7 @@ import org.springframework.util.PropertyPlaceholderHelper;
  */
 @ManagedResource("prefixedproperties:name=PrefixedPropertiesPlaceholderConfigurer")
 public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholderConfigurer
-		implements BeanFactoryAware, BeanNameAware, BeanPostProcessor {
+		implements BeanFactoryAware, BeanNameAware, BeanPostProcessor, DisposableBean {
 
 	/** The locations. */
 	protected Resource[] locations = null;
@@ -81,6 +78,12 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 	/** The ignore resource not found. */
 	protected boolean ignoreResourceNotFound = false;
 
+	/** The parallel loading of the locations. */
+	protected boolean parallelLoading = false;
+
+	/** The interval in milliseconds to check the locations for changes. */
+	protected long reloadInterval = 0;
+
 	/** The prefix config list. */
 	protected List<PrefixConfig> prefixConfigList;
 
@@ -95,6 +98,8 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 
 	protected EnvironmentFactory environmentFactory = null;
 
+	private PrefixedPropertiesReloader reloader;
+
 	private boolean processOtherProperties = false;
 
 	private String placeholderPrefix;
@@ -147,6 +152,17 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 		return myProperties;
 	}
 
+	/**
+	 * Stops watching the locations for changes.
+	 */
+	@Override
+	public synchronized void destroy() {
+		if (reloader != null) {
+			reloader.close();
+			reloader = null;
+		}
+	}
+
 	/**
 	 * Gets the effective properties.
 	 * 
@@ -185,61 +201,8 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 
 	@Override
 	protected void loadProperties(final Properties props) throws IOException {
-		if (locations != null) {
-			for (int i = 0; i < locations.length; i++) {
-				final Resource location = locations[i];
-				if (logger.isInfoEnabled()) {
-					logger.info("Loading properties file from " + location);
-				}
-				File file = null;
-				InputStream is = null;
-				try {
-					try {
-						file = location.getFile();
-						is = new BufferedInputStream(new FileInputStream(file));
-					} catch (final IOException ie) {// ignore
-					} finally {
-						if (file == null) {
-							is = location.getInputStream();
-						}
-					}
-
-					if (location.getFilename().toLowerCase().endsWith(Constants.XML_FILE_EXTENSION)) {
-						persister.loadFromXml(props, is);
-					} else if (location.getFilename().toLowerCase().endsWith(Constants.JSON_FILE_EXTENSION)) {
-						if (fileEncoding != null) {
-							persister.loadFromJson(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.loadFromJson(props, is);
-						}
-					} else if (location.getFilename().toLowerCase().endsWith(Constants.YAML_FILE_EXTENSION)) {
-						if (fileEncoding != null) {
-							persister.loadFromYAML(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.loadFromYAML(props, is);
-						}
-					} else {
-						if (fileEncoding != null) {
-							persister.load(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.load(props, is);
-						}
-					}
-				} catch (final IOException ex) {
-					if (ignoreResourceNotFound) {
-						if (logger.isWarnEnabled()) {
-							logger.warn("Could not load properties from " + location + ": " + ex.getMessage());
-						}
-					} else {
-						throw ex;
-					}
-				} finally {
-					if (is != null) {
-						is.close();
-					}
-				}
-			}
-		}
+		new PrefixedPropertiesLocationLoader(logger, persister).load(props, locations, fileEncoding,
+				ignoreResourceNotFound, parallelLoading);
 	}
 
 	/*
@@ -250,9 +213,13 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 	 */
 	@Override
 	protected Properties mergeProperties() throws IOException {
-
 		final PrefixedProperties myProperties = createProperties();
+		mergeInto(myProperties);
+		startReloading(myProperties);
+		return myProperties;
+	}
 
+	private void mergeInto(final PrefixedProperties myProperties) throws IOException {
 		if (localOverride) {
 			// Load properties from file upfront, to let local properties
 			// override.
@@ -274,8 +241,6 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 			// override.
 			loadProperties(myProperties);
 		}
-
-		return myProperties;
 	}
 
 	/*
@@ -309,6 +274,19 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 		return bean;
 	}
 
+	private synchronized void startReloading(final PrefixedProperties myProperties) {
+		if (reloadInterval > 0 && reloader == null) {
+			reloader = new PrefixedPropertiesLocationLoader(logger, persister).createReloader(myProperties,
+					locations, reloadInterval, new PrefixedPropertiesReloader.Loader() {
+
+						@Override
+						public void load(final PrefixedProperties properties) throws IOException {
+							mergeInto(properties);
+						}
+					});
+		}
+	}
+
 	/**
 	 * Sets the default prefix.
 	 * 
@@ -383,8 +361,8 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 	/**
 	 * Set a location of a properties file to be loaded.
 	 * <p>
-	 * Can point to a classic properties, json or XML file that follows JDK
-	 * 1.5's properties XML format.
+	 * Can point to a classic properties, json, binary (.ppb) or XML file that
+	 * follows JDK 1.5's properties XML format.
 	 * 
 	 * @param location
 	 *            the new location
@@ -422,6 +400,19 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 		super.setPlaceholderSuffix(placeholderSuffix);
 	}
 
+	/**
+	 * Enables the parallel loading of the locations. The locations will be
+	 * parsed concurrently into separate buffers which get merged in the order
+	 * of the locations afterwards, so the result is the same as loading them
+	 * one after another. Default is false
+	 * 
+	 * @param parallelLoading
+	 *            true if the locations should be loaded in parallel
+	 */
+	public void setParallelLoading(final boolean parallelLoading) {
+		this.parallelLoading = parallelLoading;
+	}
+
 	/**
 	 * Sets the prefix configs to build up a {@link PrefixedProperties}
 	 * -Structure.
@@ -453,6 +444,22 @@ public class PrefixedPropertiesPlaceholderConfigurer extends PropertyPlaceholder
 		this.processOtherProperties = value;
 	}
 
+	/**
+	 * Enables reloading the properties when a location changes. Locations
+	 * which are files are checked for changes in the given interval. Once
+	 * they have stopped changing, all locations are loaded again into
+	 * separate properties, which then replace the content of the
+	 * {@link PrefixedProperties} at once. Values which have already been
+	 * injected keep their value. Default is 0, which disables reloading.
+	 * 
+	 * @param reloadInterval
+	 *            the interval in milliseconds to check the locations for
+	 *            changes or 0
+	 */
+	public void setReloadInterval(final long reloadInterval) {
+		this.reloadInterval = reloadInterval;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -25,13 +25,7 @@
  */
 package net.sf.prefixedproperties.spring;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -69,6 +63,9 @@ public class PrefixedPropertyOverrideConfigurer extends PropertyOverrideConfigur
 	/** The ignore resource not found. */
 	protected boolean ignoreResourceNotFound;
 
+	/** The parallel loading of the locations. */
+	protected boolean parallelLoading = false;
+
 	/** The file encoding. */
 	protected String fileEncoding;
 
@@ -162,61 +159,8 @@ public class PrefixedPropertyOverrideConfigurer extends PropertyOverrideConfigur
 	 */
 	@Override
 	protected void loadProperties(final Properties props) throws IOException {
-		if (locations != null) {
-			for (int i = 0; i < locations.length; i++) {
-				final Resource location = locations[i];
-				if (logger.isInfoEnabled()) {
-					logger.info("Loading properties file from " + location);
-				}
-				File file = null;
-				InputStream is = null;
-				try {
-					try {
-						file = location.getFile();
-						is = new BufferedInputStream(new FileInputStream(file));
-					} catch (final IOException ie) {// ignore
-					} finally {
-						if (file == null) {
-							is = location.getInputStream();
-						}
-					}
-
-					if (location.getFilename().toLowerCase().endsWith(Constants.XML_FILE_EXTENSION)) {
-						persister.loadFromXml(props, is);
-					} else if (location.getFilename().toLowerCase().endsWith(Constants.JSON_FILE_EXTENSION)) {
-						if (fileEncoding != null) {
-							persister.loadFromJson(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.loadFromJson(props, is);
-						}
-					} else if (location.getFilename().toLowerCase().endsWith(Constants.YAML_FILE_EXTENSION)) {
-						if (fileEncoding != null) {
-							persister.loadFromYAML(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.loadFromYAML(props, is);
-						}
-					} else {
-						if (fileEncoding != null) {
-							persister.load(props, new InputStreamReader(is, Charset.forName(fileEncoding)));
-						} else {
-							persister.load(props, is);
-						}
-					}
-				} catch (final IOException ex) {
-					if (ignoreResourceNotFound) {
-						if (logger.isWarnEnabled()) {
-							logger.warn("Could not load properties from " + location + ": " + ex.getMessage());
-						}
-					} else {
-						throw ex;
-					}
-				} finally {
-					if (is != null) {
-						is.close();
-					}
-				}
-			}
-		}
+		new PrefixedPropertiesLocationLoader(logger, persister).load(props, locations, fileEncoding,
+				ignoreResourceNotFound, parallelLoading);
 	}
 
 	/*
@@ -337,6 +281,19 @@ public class PrefixedPropertyOverrideConfigurer extends PropertyOverrideConfigur
 		this.mixDefaultAndLocalPrefixConfigurations = mixDefaultAndLocalPrefixConfigurations;
 	}
 
+	/**
+	 * Enables the parallel loading of the locations. The locations will be
+	 * parsed concurrently into separate buffers which get merged in the order
+	 * of the locations afterwards, so the result is the same as loading them
+	 * one after another. Default is false
+	 * 
+	 * @param parallelLoading
+	 *            true if the locations should be loaded in parallel
+	 */
+	public void setParallelLoading(final boolean parallelLoading) {
+		this.parallelLoading = parallelLoading;
+	}
+
 	/**
 	 * Sets the prefix configs.
 	 * 
@@ -25,15 +25,41 @@
  */
 package net.sf.prefixedproperties;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import net.sf.prefixedproperties.spring.PrefixedPropertiesFactoryBean;
+import net.sf.prefixedproperties.spring.PrefixedPropertiesPersister;
 
 public class PropertyPlaceHolderTest {
 
+	private static class LoadingFactoryBean extends PrefixedPropertiesFactoryBean {
+
+		private Properties load() throws IOException {
+			return mergeProperties();
+		}
+	}
+
+	private static Properties load(final boolean parallel, final Resource... locations) throws IOException {
+		final LoadingFactoryBean factoryBean = new LoadingFactoryBean();
+		factoryBean.setDefaultPrefix("test");
+		factoryBean.setIgnoreResourceNotFound(true);
+		factoryBean.setParallelLoading(parallel);
+		factoryBean.setLocations(locations);
+		return factoryBean.load();
+	}
+
 	@Test
 	public void testPrefixedPropertiesPlaceholderConfigurer() {
 		System.setProperty("environment", "test");
@@ -53,4 +79,73 @@ public class PropertyPlaceHolderTest {
 		Assert.assertEquals("overriddenValue", bean1.getValue());
 	}
 
+	@Test
+	public void testParallelLoading() throws IOException {
+		final Resource properties = new ClassPathResource("application.properties");
+		final Resource json = new ClassPathResource("application.json");
+		final Resource missing = new ClassPathResource("missing.properties");
+		final Properties sequential = load(false, properties, missing, json);
+		final Properties parallel = load(true, properties, missing, json);
+		Assert.assertEquals(sequential.toString(), parallel.toString());
+		Assert.assertEquals("jsonValue", parallel.getProperty("key2"));
+		Assert.assertEquals("value3", parallel.getProperty("key3"));
+		Assert.assertEquals("CONSOLE1", parallel.getProperty("ROOTLOGGER"));
+		Assert.assertEquals("testvalue", load(true, json, properties).getProperty("key2"));
+		try {
+			final LoadingFactoryBean factoryBean = new LoadingFactoryBean();
+			factoryBean.setDefaultPrefix("test");
+			factoryBean.setParallelLoading(true);
+			factoryBean.setLocations(properties, missing);
+			factoryBean.load();
+			Assert.fail("IOException expected");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBinaryLocation() throws IOException {
+		final File file = File.createTempFile("application", ".ppb");
+		file.deleteOnExit();
+		final Properties source = load(false, new ClassPathResource("application.properties"));
+		final OutputStream os = new FileOutputStream(file);
+		try {
+			new PrefixedPropertiesPersister().storeToBinary(source, os);
+		} finally {
+			os.close();
+		}
+		final Properties binary = load(false, new FileSystemResource(file));
+		Assert.assertEquals(source.toString(), binary.toString());
+		Assert.assertEquals("testvalue", binary.getProperty("key2"));
+	}
+
+	@Test
+	public void testReloadInterval() throws IOException, InterruptedException {
+		final File file = File.createTempFile("application", ".properties");
+		try {
+			OutputStream os = new FileOutputStream(file);
+			os.write("test.key=before\n".getBytes("ISO-8859-1"));
+			os.close();
+			final LoadingFactoryBean factoryBean = new LoadingFactoryBean();
+			factoryBean.setDefaultPrefix("test");
+			factoryBean.setReloadInterval(10);
+			factoryBean.setLocations(new FileSystemResource(file));
+			final Properties properties = factoryBean.load();
+			try {
+				Assert.assertEquals("before", properties.getProperty("key"));
+				os = new FileOutputStream(file);
+				os.write("test.key=after reloading\n".getBytes("ISO-8859-1"));
+				os.close();
+				for (int i = 0; i < 500 && "before".equals(properties.getProperty("key")); i++) {
+					Thread.sleep(10);
+				}
+				Assert.assertEquals("after reloading", properties.getProperty("key"));
+			} finally {
+				factoryBean.destroy();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
 }